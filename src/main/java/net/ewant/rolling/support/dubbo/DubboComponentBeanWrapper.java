@@ -83,7 +83,12 @@ public class DubboComponentBeanWrapper implements TransactionBeanWrapper {
             String transactionId = RpcContext.getContext().getAttachment(TransactionContext.TRANSACTION_ID_PARAMETER_NAME);
             if(transactionId != null){
                 TransactionContext.getContext().setTransactionId(transactionId);
-                return method.invoke(target, args);
+                try {
+                    return method.invoke(target, args);
+                } finally {
+                    // 调用结束，不把上下文带到线程处理的下一个调用
+                    TransactionContext.completeRequest();
+                }
             }else{
                 TransactionContext.getContext().beforeRemoter(target, method, args);
                 Throwable exception = null;
@@ -29,8 +29,10 @@ public class ExtendsJavassistProxyFactory extends JavassistProxyFactory {
         public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
             // 传递事务ID
             TransactionContext.getContext().beforeRemoter(invoker, method, args);
-            String transactionId = TransactionContext.getContext().getTransactionId();
-            RpcContext.getContext().setAttachment(TransactionContext.TRANSACTION_ID_PARAMETER_NAME, transactionId);
+            String transactionId = TransactionContext.getContext().getTransactionToken();
+            if(transactionId != null){// 降级为仅本地执行时不传递
+                RpcContext.getContext().setAttachment(TransactionContext.TRANSACTION_ID_PARAMETER_NAME, transactionId);
+            }
             Throwable exception = null;
             Object invoke = null;
             try {
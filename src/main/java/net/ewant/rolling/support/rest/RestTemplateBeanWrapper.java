@@ -32,14 +32,16 @@ public class RestTemplateBeanWrapper implements TransactionBeanWrapper {
                         URI uri = (URI) args[0];
                         // 传递事务ID
                         TransactionContext.getContext().beforeRemoter(uri, method, args);
-                        String transactionId = TransactionContext.getContext().getTransactionId();
-                        String uriStr = uri.toString();
-                        if(uriStr.indexOf("?") != -1){
-                            uriStr += "&" + TransactionContext.TRANSACTION_ID_PARAMETER_NAME + "=" + transactionId;
-                        }else{
-                            uriStr += "?" + TransactionContext.TRANSACTION_ID_PARAMETER_NAME + "=" + transactionId;
+                        String transactionId = TransactionContext.getContext().getTransactionToken();
+                        if(transactionId != null){// 降级为仅本地执行时不传递
+                            String uriStr = uri.toString();
+                            if(uriStr.indexOf("?") != -1){
+                                uriStr += "&" + TransactionContext.TRANSACTION_ID_PARAMETER_NAME + "=" + transactionId;
+                            }else{
+                                uriStr += "?" + TransactionContext.TRANSACTION_ID_PARAMETER_NAME + "=" + transactionId;
+                            }
+                            args[0] = uri.resolve(uriStr);
                         }
-                        args[0] = uri.resolve(uriStr);
 
                         Throwable exception = null;
                         Object invoke = null;
@@ -10,17 +10,44 @@ import java.io.IOException;
 @WebFilter(displayName = "transactionServletInterceptFilter", urlPatterns = "/*" ,dispatcherTypes = {DispatcherType.REQUEST, DispatcherType.FORWARD})
 public class ServletInterceptFilter implements Filter {
 
+    /**
+     * 当前线程处理的请求，入口地址只在创建事务上下文时才拼接
+     */
+    private static final ThreadLocal<HttpServletRequest> CURRENT_REQUEST = new ThreadLocal<>();
+
     @Override
     public void init(FilterConfig filterConfig) throws ServletException {
+        TransactionContext.setEnterUrlResolver(new TransactionContext.EnterUrlResolver() {
+            @Override
+            public String resolve() {
+                HttpServletRequest request = CURRENT_REQUEST.get();
+                return request == null ? null : enterUrl(request);
+            }
+        });
     }
 
     @Override
     public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain filterChain) throws IOException, ServletException {
-        String currentTransactionId = servletRequest.getParameter(TransactionContext.TRANSACTION_ID_PARAMETER_NAME);
-        if(currentTransactionId != null && currentTransactionId.trim().length() > 0){
-            TransactionContext.getContext().setTransactionId(currentTransactionId.trim());
-        }
         HttpServletRequest request = (HttpServletRequest) servletRequest;
+        HttpServletRequest outer = CURRENT_REQUEST.get();
+        CURRENT_REQUEST.set(request);
+        try {
+            String currentTransactionId = servletRequest.getParameter(TransactionContext.TRANSACTION_ID_PARAMETER_NAME);
+            if(currentTransactionId != null && currentTransactionId.trim().length() > 0){
+                TransactionContext.getContext().setTransactionId(currentTransactionId.trim());
+            }
+            filterChain.doFilter(servletRequest, servletResponse);
+        } finally {
+            // set 而非 remove，保留线程本地变量条目，非事务请求不产生分配
+            CURRENT_REQUEST.set(outer);
+            if(outer == null){
+                // 请求结束，不把上下文带到线程处理的下一个请求
+                TransactionContext.completeRequest();
+            }
+        }
+    }
+
+    private static String enterUrl(HttpServletRequest request) {
         String queryString = request.getQueryString();
         StringBuilder builder = new StringBuilder(request.getScheme());
         builder.append("://");
@@ -32,9 +59,7 @@ public class ServletInterceptFilter implements Filter {
             builder.append("?");
             builder.append(queryString);
         }
-        TransactionContext.getContext().setHttpEnterUrl(builder.toString());
-
-        filterChain.doFilter(servletRequest, servletResponse);
+        return builder.toString();
     }
 
     @Override
@@ -27,10 +27,12 @@ import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.EnvironmentAware;
 import org.springframework.core.Ordered;
 import org.springframework.core.PriorityOrdered;
+import org.springframework.core.annotation.AnnotationUtils;
 import org.springframework.core.env.ConfigurableEnvironment;
 import org.springframework.core.env.Environment;
 import org.springframework.core.env.MutablePropertySources;
 import org.springframework.core.type.filter.AnnotationTypeFilter;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.interceptor.TransactionInterceptor;
 import org.springframework.util.ClassUtils;
 import org.springframework.validation.DataBinder;
@@ -58,6 +60,7 @@ public class TransactionBeanPostProcessor extends InstantiationAwareBeanPostProc
 
     @Override
     public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+        registerTransactionalMethods(bean);
         Object result = bean;
         for(TransactionBeanWrapper wrapper : wrappers){
             result = wrapper.wrapIfNecessary(result);
@@ -68,6 +71,30 @@ public class TransactionBeanPostProcessor extends InstantiationAwareBeanPostProc
         return result;
     }
 
+    /**
+     * 登记事务方法签名（含接口方法，jdk代理时拦截到的是接口方法）
+     */
+    private void registerTransactionalMethods(Object bean) {
+        Class<?> targetClass = AopUtils.getTargetClass(bean);
+        boolean transactionalClass = AnnotationUtils.findAnnotation(targetClass, Transactional.class) != null;
+        List<Method> methods = new ArrayList<>();
+        for (Method method : targetClass.getMethods()){
+            if(method.getDeclaringClass() == Object.class){
+                continue;
+            }
+            if(transactionalClass || AnnotationUtils.findAnnotation(method, Transactional.class) != null){
+                methods.add(method);
+                for (Class<?> interfaceClass : ClassUtils.getAllInterfacesForClassAsSet(targetClass)){
+                    Method interfaceMethod = ClassUtils.getMethodIfAvailable(interfaceClass, method.getName(), method.getParameterTypes());
+                    if(interfaceMethod != null){
+                        methods.add(interfaceMethod);
+                    }
+                }
+            }
+        }
+        TransactionContext.registerMethods(methods);
+    }
+
     private void registryFilterBean(BeanDefinitionRegistry registry){
 
         String name = "transactionServletInterceptFilter";
@@ -129,10 +156,10 @@ public class TransactionBeanPostProcessor extends InstantiationAwareBeanPostProc
     }
 
     private void initTransactionContextComponent() {
-        TransactionContext.setConfiguration(configuration);
-
         TransactionContext.setBeanFactory(beanFactory);
 
+        TransactionContext.setConfiguration(configuration);
+
         ExecutionFailedChecker executionFailedChecker;
         try {
             executionFailedChecker = beanFactory.getBean(ExecutionFailedChecker.class);
@@ -0,0 +1,96 @@
+package net.ewant.rolling.transaction;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+/**
+ * 事务执行链，按执行顺序以数组下标访问（下标即事务链中的index），容量不足时扩容。
+ * 未加入全局事务的上下文结束后，执行链连同其中的 ExecutionHolder 回收到当前线程，供下一个上下文复用；
+ * 已登记为全局事务的上下文在收到通知前仍会被访问，不回收
+ */
+final class ExecutionChain {
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    /**
+     * 超过该长度的执行链不回收，避免个别长调用链一直占用内存
+     */
+    private static final int MAX_RECYCLE_CAPACITY = 64;
+
+    /**
+     * 每个线程保留一个空闲执行链
+     */
+    private static final ThreadLocal<ExecutionChain> SPARE = new ThreadLocal<>();
+
+    private ExecutionHolder[] holders = new ExecutionHolder[INITIAL_CAPACITY];
+
+    private int size;
+
+    private boolean inUse;
+
+    private ExecutionChain() {
+    }
+
+    /**
+     * 取当前线程的空闲执行链，没有时新建
+     */
+    static ExecutionChain acquire() {
+        ExecutionChain chain = SPARE.get();
+        if(chain == null || chain.inUse){
+            chain = new ExecutionChain();
+        }
+        chain.inUse = true;
+        return chain;
+    }
+
+    /**
+     * 追加执行节点，复用已回收的 ExecutionHolder
+     * @return 新节点，下标为 size() - 1
+     */
+    ExecutionHolder add(boolean local, Object target, Method method, Object[] args) {
+        if(size == holders.length){
+            holders = Arrays.copyOf(holders, size << 1);
+        }
+        ExecutionHolder holder = holders[size];
+        if(holder == null){
+            holder = new ExecutionHolder(local);
+            holders[size] = holder;
+        }
+        holder.reset(local, target, method, args);
+        size++;
+        return holder;
+    }
+
+    ExecutionHolder get(int index) {
+        return index >= 0 && index < size ? holders[index] : null;
+    }
+
+    ExecutionHolder last() {
+        return size == 0 ? null : holders[size - 1];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * 释放所有节点对业务对象的引用
+     */
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            holders[i].release();
+        }
+        size = 0;
+    }
+
+    /**
+     * 清空并回收到当前线程，之后不能再访问
+     */
+    void recycle() {
+        clear();
+        inUse = false;
+        if(holders.length <= MAX_RECYCLE_CAPACITY && SPARE.get() != this){
+            SPARE.set(this);
+        }
+    }
+}
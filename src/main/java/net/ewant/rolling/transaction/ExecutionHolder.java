@@ -57,6 +57,31 @@ public class ExecutionHolder {
         this.local = local;
     }
 
+    /**
+     * 复用前重新初始化
+     */
+    void reset(boolean local, Object target, Method method, Object[] args) {
+        this.local = local;
+        this.target = target;
+        this.method = method;
+        this.args = args;
+        this.transactionState = 0;
+        this.startTime = System.currentTimeMillis();
+        this.endTime = 0;
+    }
+
+    /**
+     * 回收时释放对业务对象的引用
+     */
+    void release() {
+        this.target = null;
+        this.method = null;
+        this.args = null;
+        this.result = null;
+        this.throwable = null;
+        this.extraParameters = null;
+    }
+
     public boolean isLocal() {
         return local;
     }
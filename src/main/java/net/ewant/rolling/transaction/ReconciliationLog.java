@@ -0,0 +1,107 @@
+package net.ewant.rolling.transaction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 待对账记录：协调中心不可用时降级为本地执行的事务、未能送达的全局提交/回滚。
+ * 每条记录输出到独立的日志（net.ewant.rolling.reconciliation，可单独配置输出文件），
+ * 同时在内存中保留最近的记录供运维接口查询
+ */
+public class ReconciliationLog {
+
+    private static Logger logger = LoggerFactory.getLogger("net.ewant.rolling.reconciliation");
+
+    /**
+     * 内存中保留的最近记录数
+     */
+    private static final int MAX_ENTRIES = 1000;
+
+    private static final Deque<Entry> ENTRIES = new ConcurrentLinkedDeque<>();
+
+    private static final AtomicInteger SIZE = new AtomicInteger();
+
+    private static final LongAdder TOTAL = new LongAdder();
+
+    private ReconciliationLog() {
+    }
+
+    /**
+     * @param key 事务id，降级执行（无事务id）时为方法签名
+     * @param action degrade / commit / rollback
+     * @param detail
+     */
+    public static void record(String key, String action, String detail) {
+        Entry entry = new Entry(key, action, detail, System.currentTimeMillis());
+        logger.warn("pending reconciliation. action: {}, key: [{}], detail: {}", action, key, detail);
+        ENTRIES.addLast(entry);
+        TOTAL.increment();
+        if(SIZE.incrementAndGet() > MAX_ENTRIES && ENTRIES.pollFirst() != null){
+            SIZE.decrementAndGet();
+        }
+    }
+
+    /**
+     * 取出内存中的记录（取出后移除）
+     * @return
+     */
+    public static List<Entry> drain() {
+        List<Entry> entries = new ArrayList<>();
+        Entry entry;
+        while ((entry = ENTRIES.pollFirst()) != null){
+            SIZE.decrementAndGet();
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    public static long getTotalCount() {
+        return TOTAL.sum();
+    }
+
+    public static class Entry {
+
+        private final String key;
+
+        private final String action;
+
+        private final String detail;
+
+        private final long time;
+
+        Entry(String key, String action, String detail, long time) {
+            this.key = key;
+            this.action = action;
+            this.detail = detail;
+            this.time = time;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getAction() {
+            return action;
+        }
+
+        public String getDetail() {
+            return detail;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        @Override
+        public String toString() {
+            return "{key:\"" + key + "\", action:\"" + action + "\", detail:\"" + detail + "\", time:" + time + "}";
+        }
+    }
+}
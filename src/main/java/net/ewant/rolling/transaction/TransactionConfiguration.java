@@ -8,6 +8,7 @@ import org.springframework.context.annotation.Configuration;
 public class TransactionConfiguration {
     /**
      * 事务协调中间件地址，zk://192.168.1.101:2181?backup=192.168.1.102:2181,192.168.1.103:2181
+     * 多个集群以 ; 分隔，事务按id一致性哈希路由，所有节点的集群配置必须一致
      */
     private String mediator;
 
@@ -26,6 +27,87 @@ public class TransactionConfiguration {
      */
     private String rollbackPackage;
 
+    /**
+     * 全局提交/回滚通知处理线程（分片）数，默认为CPU核数
+     */
+    private int dispatchThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * 每个通知处理分片的积压告警阈值。队列不限长度，超过时只记录告警，不阻塞协调客户端事件线程
+     */
+    private int dispatchQueueSize = 1024;
+
+    /**
+     * 事务链、状态节点分桶数，0为平铺布局（默认）。开启后 /rolling-tx/state/{hash(id) mod N}/{id}，所有节点必须配置一致
+     */
+    private int mediatorBuckets;
+
+    /**
+     * 协调中心节点数据格式：text 文本（默认），compact 二进制精简格式。两种格式均可读取，所有节点升级后再开启compact
+     */
+    private String mediatorPayload;
+
+    /**
+     * 事务令牌签名密钥，配置后事务id以签名令牌形式传递，提供方本地验证，不再同步访问协调中心。所有节点必须配置一致
+     */
+    private String tokenSecret;
+
+    /**
+     * 事务令牌有效期（毫秒），0为不限制
+     */
+    private long tokenTtl = 600000;
+
+    /**
+     * 协调中心断路器打开后的策略：reject 拒绝新的全局事务，degrade 降级为仅本地执行并记录待对账；不配置则不启用断路器
+     */
+    private String breakerPolicy;
+
+    /**
+     * 断路器失败率、慢请求率阈值（百分比）
+     */
+    private int breakerFailureRate = 50;
+
+    /**
+     * 断路器慢请求耗时阈值（毫秒）
+     */
+    private long breakerSlowMillis = 1000;
+
+    /**
+     * 断路器打开后放行探测请求的间隔（毫秒）
+     */
+    private long breakerOpenMillis = 5000;
+
+    /**
+     * 全局事务超时时间（毫秒），从当前节点加入事务起计算，到期仍未收到全局提交或回滚时发起全局回滚；0为不超时。
+     * 方法或类上 @GlobalTimeout 指定的超时（毫秒）优先
+     */
+    private long transactionTimeout;
+
+    /**
+     * 事务超时检测精度（毫秒）
+     */
+    private long timeoutTickMillis = 100;
+
+    /**
+     * 超时处理（查询协调中心决议、发起回滚）线程数
+     */
+    private int expiryThreads = 4;
+
+    /**
+     * 当前节点最多同时持有的全局事务上下文数，超出时清理最早登记的（记录为孤立事务）
+     */
+    private int registryCapacity = 100000;
+
+    /**
+     * 全局事务上下文无活动超过该时间（毫秒）后清理并记录为孤立事务，0为不清理
+     */
+    private long registryIdleMillis;
+
+    /**
+     * 全局事务上下文登记超过该时间（毫秒）后清理并记录为孤立事务，0为不清理
+     */
+    private long registryMaxAgeMillis;
+
     public String getMediator() {
         return mediator;
     }
@@ -57,4 +139,132 @@ public class TransactionConfiguration {
     public void setRollbackPackage(String rollbackPackage) {
         this.rollbackPackage = rollbackPackage;
     }
+
+    public int getDispatchThreads() {
+        return dispatchThreads;
+    }
+
+    public void setDispatchThreads(int dispatchThreads) {
+        this.dispatchThreads = dispatchThreads;
+    }
+
+    public int getDispatchQueueSize() {
+        return dispatchQueueSize;
+    }
+
+    public void setDispatchQueueSize(int dispatchQueueSize) {
+        this.dispatchQueueSize = dispatchQueueSize;
+    }
+
+    public int getMediatorBuckets() {
+        return mediatorBuckets;
+    }
+
+    public void setMediatorBuckets(int mediatorBuckets) {
+        this.mediatorBuckets = mediatorBuckets;
+    }
+
+    public String getMediatorPayload() {
+        return mediatorPayload;
+    }
+
+    public void setMediatorPayload(String mediatorPayload) {
+        this.mediatorPayload = mediatorPayload;
+    }
+
+    public String getTokenSecret() {
+        return tokenSecret;
+    }
+
+    public void setTokenSecret(String tokenSecret) {
+        this.tokenSecret = tokenSecret;
+    }
+
+    public long getTokenTtl() {
+        return tokenTtl;
+    }
+
+    public void setTokenTtl(long tokenTtl) {
+        this.tokenTtl = tokenTtl;
+    }
+
+    public String getBreakerPolicy() {
+        return breakerPolicy;
+    }
+
+    public void setBreakerPolicy(String breakerPolicy) {
+        this.breakerPolicy = breakerPolicy;
+    }
+
+    public int getBreakerFailureRate() {
+        return breakerFailureRate;
+    }
+
+    public void setBreakerFailureRate(int breakerFailureRate) {
+        this.breakerFailureRate = breakerFailureRate;
+    }
+
+    public long getBreakerSlowMillis() {
+        return breakerSlowMillis;
+    }
+
+    public void setBreakerSlowMillis(long breakerSlowMillis) {
+        this.breakerSlowMillis = breakerSlowMillis;
+    }
+
+    public long getBreakerOpenMillis() {
+        return breakerOpenMillis;
+    }
+
+    public void setBreakerOpenMillis(long breakerOpenMillis) {
+        this.breakerOpenMillis = breakerOpenMillis;
+    }
+
+    public long getTransactionTimeout() {
+        return transactionTimeout;
+    }
+
+    public void setTransactionTimeout(long transactionTimeout) {
+        this.transactionTimeout = transactionTimeout;
+    }
+
+    public long getTimeoutTickMillis() {
+        return timeoutTickMillis;
+    }
+
+    public void setTimeoutTickMillis(long timeoutTickMillis) {
+        this.timeoutTickMillis = timeoutTickMillis;
+    }
+
+    public int getExpiryThreads() {
+        return expiryThreads;
+    }
+
+    public void setExpiryThreads(int expiryThreads) {
+        this.expiryThreads = expiryThreads;
+    }
+
+    public int getRegistryCapacity() {
+        return registryCapacity;
+    }
+
+    public void setRegistryCapacity(int registryCapacity) {
+        this.registryCapacity = registryCapacity;
+    }
+
+    public long getRegistryIdleMillis() {
+        return registryIdleMillis;
+    }
+
+    public void setRegistryIdleMillis(long registryIdleMillis) {
+        this.registryIdleMillis = registryIdleMillis;
+    }
+
+    public long getRegistryMaxAgeMillis() {
+        return registryMaxAgeMillis;
+    }
+
+    public void setRegistryMaxAgeMillis(long registryMaxAgeMillis) {
+        this.registryMaxAgeMillis = registryMaxAgeMillis;
+    }
 }
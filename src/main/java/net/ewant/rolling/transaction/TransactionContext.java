@@ -1,18 +1,42 @@
 package net.ewant.rolling.transaction;
 
+import net.ewant.rolling.transaction.annotation.GlobalTimeout;
 import net.ewant.rolling.transaction.annotation.RollbackBy;
-import net.ewant.rolling.transaction.concert.MediatorClient;
+import net.ewant.rolling.transaction.concert.AsyncMediatorClient;
+import net.ewant.rolling.transaction.concert.BlockingAsyncMediatorClient;
+import net.ewant.rolling.transaction.concert.CircuitBreakerMediatorClient;
+import net.ewant.rolling.transaction.concert.MediatorUnavailableException;
+import net.ewant.rolling.transaction.concert.MediatorTransporter;
 import net.ewant.rolling.transaction.concert.MediatorWatcher;
+import net.ewant.rolling.transaction.concert.PayloadCodec;
+import net.ewant.rolling.transaction.concert.ShardedMediatorClient;
+import net.ewant.rolling.transaction.concert.StripedMediatorWatcher;
+import net.ewant.rolling.transaction.concert.TransactionResult;
 import net.ewant.rolling.transaction.concert.URL;
 import net.ewant.rolling.transaction.concert.zookeeper.CuratorZookeeperClient;
+import net.ewant.rolling.utils.HashedTimingWheel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.core.annotation.AnnotationUtils;
 
 import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
 
 /**
  * 分布式事务核心上下文
@@ -29,18 +53,60 @@ public class TransactionContext {
 
     public static final String TRANSACTION_STATE_ROOT = "/rolling-tx/state";
 
+    public static final String TRANSACTION_DICT_ROOT = "/rolling-tx/dict";
+
     public static final String TRANSACTION_ID_PARAMETER_NAME = "_rtxId";
 
-    private static final Map<String, TransactionContext> GLOBAL_CONTEXT = new ConcurrentHashMap<>();
+    public static final String MEDIATOR_SPLIT_CHAR = ";";
 
-    private static final ThreadLocal<TransactionContext> LOCAL_CONTEXT = new ThreadLocal<TransactionContext>() {
-        @Override
-        protected TransactionContext initialValue() {
-            return new TransactionContext();
-        }
-    };
+    /**
+     * 等待事务链注册完成的最长时间
+     */
+    private static final long REGISTRATION_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * 登记表空闲、过期清理间隔
+     */
+    private static final long REGISTRY_SWEEP_MILLIS = 1000;
+
+    /**
+     * 上下文、每个执行节点（含执行链条目）的内存估算（字节）
+     */
+    private static final int CONTEXT_SIZE = 96;
+
+    private static final int EXECUTION_SIZE = 144;
+
+    /**
+     * 未发生远程调用、不经过协调中心完成的事务数
+     */
+    private static final LongAdder LOCAL_ONLY_COUNT = new LongAdder();
+
+    /**
+     * 方法签名缓存，Method.toString() 开销较大，每个方法只计算一次
+     */
+    private static final Map<Method, String> SIGNATURES = new ConcurrentHashMap<>();
+
+    /**
+     * 方法上 @GlobalTimeout 指定的超时（毫秒），0为未指定，已缓存
+     */
+    private static final Map<Method, Long> METHOD_TIMEOUTS = new ConcurrentHashMap<>();
+
+    /**
+     * 时间轮槽数
+     */
+    private static final int TIMEOUT_WHEEL_SIZE = 512;
 
-    private static MediatorClient client;
+    /**
+     * 等待处理的超时任务数上限，超出时推迟一个tick再提交
+     */
+    private static final int EXPIRY_QUEUE_SIZE = 10000;
+
+    /**
+     * 只在进入事务方法、远程调用或收到上游事务id时创建上下文，非事务请求不创建
+     */
+    private static final ThreadLocal<TransactionContext> LOCAL_CONTEXT = new ThreadLocal<>();
+
+    private static AsyncMediatorClient client;
 
     private static ExecutionFailedChecker checker;
 
@@ -50,12 +116,50 @@ public class TransactionContext {
 
     private static BeanFactory beanFactory;
 
-    private Map<Integer, ExecutionHolder> executionChain = new LinkedHashMap<>();
+    private static StripedMediatorWatcher dispatcher;
+
+    /**
+     * 入口地址解析，创建上下文时调用
+     */
+    private static volatile EnterUrlResolver enterUrlResolver;
+
+    /**
+     * 当前JVM持有的全局事务上下文（尚未收到全局提交或回滚通知）
+     */
+    private static TransactionRegistry registry;
+
+    /**
+     * 全局事务超时定时
+     */
+    private static HashedTimingWheel timer;
+
+    /**
+     * 超时处理（查询决议、发起回滚），不在时间轮线程上执行；查询决议可能阻塞，多线程有界执行
+     */
+    private static ExecutorService expiryExecutor;
+
+    /**
+     * 登记表清理，单独的线程，不被超时处理占用
+     */
+    private static ExecutorService sweepExecutor;
 
-    private int executionIndex;
+    /**
+     * 事务令牌签名密钥，未配置时直接传递事务id
+     */
+    private static byte[] tokenSecret;
+
+    /**
+     * 执行链，下标即事务链中的index
+     */
+    private ExecutionChain executionChain = ExecutionChain.acquire();
 
     private ExecutionHolder currentExecution;
 
+    /**
+     * 进行中的本地事务方法层数，嵌套的事务方法结束时回到外层方法，最外层结束时事务才结束
+     */
+    private int depth;
+
     private String httpEnterUrl;
 
     private boolean rollback;
@@ -67,32 +171,183 @@ public class TransactionContext {
 
     private String transactionId;
 
+    /**
+     * 协调中心不可用，已降级为仅本地执行
+     */
+    private boolean degraded;
+
+    /**
+     * 传递给下游的签名令牌
+     */
+    private String transactionToken;
+
+    /**
+     * 已发出但尚未确认的事务链注册
+     */
+    private CompletableFuture<Void> pendingRegistration;
+
+    /**
+     * 尚未发出的事务链注册（执行链下标），在事务id传出前或本地事务结束时一次批量写入
+     */
+    private int[] deferredIndexes;
+
+    private int deferredCount;
+
+    /**
+     * 尚未发出的事务链验证（下游进程在事务方法外收到事务id）
+     */
+    private boolean deferredValidation;
+
+    /**
+     * 事务超时定时，收到全局提交或回滚通知清理上下文时取消
+     */
+    private volatile HashedTimingWheel.Timeout timeout;
+
+    /**
+     * 当前超时是否由方法上的 @GlobalTimeout 指定
+     */
+    private boolean methodTimeout;
+
+    /**
+     * 已超时并发起全局回滚，等待通知
+     */
+    private volatile boolean expired;
+
+    /**
+     * 最后活动时间，用于登记表空闲清理
+     */
+    private volatile long lastActiveTime;
+
+    /**
+     * 当前线程的事务上下文，没有时创建
+     * @return
+     */
     public static TransactionContext getContext() {
+        TransactionContext context = LOCAL_CONTEXT.get();
+        if(context == null){
+            context = new TransactionContext();
+            EnterUrlResolver resolver = enterUrlResolver;
+            if(resolver != null){
+                context.httpEnterUrl = resolver.resolve();
+            }
+            LOCAL_CONTEXT.set(context);
+        }
+        return context;
+    }
+
+    /**
+     * 当前线程的事务上下文，不创建
+     * @return 当前线程未进入事务时为null
+     */
+    public static TransactionContext currentContext() {
         return LOCAL_CONTEXT.get();
     }
 
+    /**
+     * 解除当前线程与事务上下文的关联，防止线程池中的线程把上下文带到下一个请求。
+     * 已登记的全局事务仍由登记表持有，等待全局通知
+     */
+    public static void clearContext() {
+        if(LOCAL_CONTEXT.get() != null){
+            // set(null) 保留线程本地变量条目，之后的请求不再分配
+            LOCAL_CONTEXT.set(null);
+        }
+    }
+
+    /**
+     * 入口请求（http请求、dubbo调用）结束时调用，解除当前线程与事务上下文的关联。
+     * 收到签名令牌后既未执行事务方法也未发生远程调用的，本节点没有加入事务链、没有需要回滚的操作，也不会收到通知，撤销登记。
+     * 仍在事务方法内的（方法结束时处理）不做任何事
+     */
+    public static void completeRequest() {
+        TransactionContext context = LOCAL_CONTEXT.get();
+        if(context == null || context.currentExecution != null){
+            return;
+        }
+        LOCAL_CONTEXT.set(null);
+        if(context.deferredValidation){
+            context.deferredValidation = false;
+            context.untrack();
+            logger.info("rolling transaction remote process end with id [{}], no transactional execution, untracked.", context.transactionId);
+        }
+    }
+
+    /**
+     * 设置入口地址解析，只在创建上下文时解析入口地址（如http请求地址），非事务请求不产生开销
+     * @param resolver
+     */
+    public static void setEnterUrlResolver(EnterUrlResolver resolver) {
+        enterUrlResolver = resolver;
+    }
+
+    /**
+     * 当前JVM是否持有该全局事务（尚未收到全局提交或回滚通知）
+     * @param transactionId
+     * @return
+     */
+    public static boolean isActive(String transactionId) {
+        return registry != null && registry.contains(transactionId);
+    }
+
+    /**
+     * @param transactionId 上游传递的事务id或签名令牌
+     */
     public void setTransactionId(String transactionId){
+        boolean verified = false;
+        if(tokenSecret != null && TransactionToken.isToken(transactionId)){
+            // 本地验证签名即可拒绝伪造的id，无需等待协调中心确认
+            this.transactionToken = transactionId;
+            transactionId = TransactionToken.verify(transactionId, tokenSecret, configuration.getTokenTtl()).getTransactionId();
+            verified = true;
+        }
         this.transactionId = transactionId;
+        this.lastActiveTime = System.currentTimeMillis();
         this.isNew = false;// 防止人为传参，有必要在zk验证下
         // 加入全局事务
         if(currentExecution != null){
-            client.joinChain(transactionId, configuration.getGroup(), configuration.getPeer(), executionIndex - 1, currentExecution.getMethod().toString());
-            logger.info("rolling transaction {} with id [{}], info [{}:{}-{}]", "local process join", transactionId, configuration.getGroup(), configuration.getPeer(), currentExecution.getMethod().toString());
+            defer(executionChain.size() - 1);
+            logger.info("rolling transaction {} with id [{}], info [{}:{}-{}]", "local process join", transactionId, configuration.getGroup(), configuration.getPeer(), signature(currentExecution.getMethod()));
         }else{
-            client.joinChain(transactionId, configuration.getGroup(), configuration.getPeer(), 0, null);
+            deferredValidation = true;
             logger.info("rolling transaction {} with id [{}], info [{}:{}]", "remote process start", transactionId, configuration.getGroup(), configuration.getPeer());
         }
-        GLOBAL_CONTEXT.put(transactionId, this);
+        // 先登记再加入：加入时事务已有决议的，通知到达时能找到上下文
+        track(currentExecution != null ? currentExecution.getMethod() : null);
+        if(!verified){
+            // 业务执行前必须确认事务id有效；已验证签名的令牌延迟注册，在事务id再次传出前或本地事务结束时写入
+            flushRegistrations();
+            try {
+                awaitRegistration();
+            } catch (RuntimeException e) {
+                untrack();
+                throw e;
+            }
+        }
     }
 
     public String getTransactionId() {
         return transactionId;
     }
 
+    /**
+     * 远程调用时传递的事务标识：配置了签名密钥时为签名令牌（沿用上游令牌，发起方首次签发），否则为事务id
+     * @return
+     */
+    public String getTransactionToken() {
+        if(transactionToken == null && tokenSecret != null && transactionId != null && isNew){
+            transactionToken = TransactionToken.sign(transactionId, configuration.getPeer(), tokenSecret);
+        }
+        return transactionToken != null ? transactionToken : transactionId;
+    }
+
     public void setHttpEnterUrl(String httpEnterUrl) {
         this.httpEnterUrl = httpEnterUrl;
     }
 
+    public String getHttpEnterUrl() {
+        return httpEnterUrl;
+    }
+
     public void markRollback() {
         this.rollback = true;
     }
@@ -113,15 +368,15 @@ public class TransactionContext {
      * @param args
      */
     public void prepareTransaction(Object target, Method method, Object[] args){
-        currentExecution = new ExecutionHolder(true);
-        currentExecution.setTarget(target);
-        currentExecution.setMethod(method);
-        currentExecution.setArgs(args);
+        currentExecution = executionChain.add(true, target, method, args);
+        depth++;
+        lastActiveTime = currentExecution.getStartTime();
         if(transactionId != null){
-            client.joinChain(transactionId, configuration.getGroup(), configuration.getPeer(), executionIndex, method.toString());
-            logger.info("rolling transaction local {} with id [{}], info [{}:{}-{}]", isNew?"call":"process", transactionId, configuration.getGroup(), configuration.getPeer(), method.toString());
+            // 嵌套的本地方法先缓存，在事务id传出前或本地事务结束时一次批量写入
+            defer(executionChain.size() - 1);
+            logger.info("rolling transaction local {} with id [{}], info [{}:{}-{}]", isNew?"call":"process", transactionId, configuration.getGroup(), configuration.getPeer(), signature(method));
+            armTimeout(method);
         }
-        executionChain.put(executionIndex++, currentExecution);
     }
 
 
@@ -134,58 +389,339 @@ public class TransactionContext {
         currentExecution.setResult(result);
         currentExecution.setThrowable(throwable);
         currentExecution.setEndTime(System.currentTimeMillis());
+        lastActiveTime = currentExecution.getEndTime();
 
         currentExecution.setTransactionState(throwable != null || rollback ? -1 : 1);
+        boolean outermost = --depth == 0;
+
+        if(transactionId != null && !degraded){
+            flushRegistrations();
+        }
+        if(pendingRegistration != null){
+            // 后续的提交或回滚在同一会话内排在注册之后，发起方无需等待
+            CompletableFuture<Void> registration = pendingRegistration;
+            pendingRegistration = null;
+            registration.whenComplete(abandonOnFailure(transactionId, this));
+            if(!isNew){
+                // 参与方返回响应后上游随时可能决议，返回前确认已加入事务链并注册了状态监听
+                awaitQuietly(registration);
+            }
+        }
 
-        if(currentExecution.getTransactionState() < 0){
+        if(degraded){
+            // 仅本地执行，协调中心无此事务
+            logger.warn("rolling transaction local {} degraded, info [{}:{}-{}], state {}", isNew?"call":"process", configuration.getGroup(), configuration.getPeer(), signature(currentExecution.getMethod()), currentExecution.getTransactionState());
+        }else if(transactionId == null){
+            // 没有远程调用，全局事务未在协调中心创建，本地事务即全部，无需提交或回滚全局事务
+            if(outermost){
+                LOCAL_ONLY_COUNT.increment();
+            }
+        }else if(currentExecution.getTransactionState() < 0){
             // 回滚全局事务（当前不是事务链尾时执行）
-            if(executionChain.get(executionIndex - 1) != currentExecution){
-                client.rollback(transactionId, configuration.getGroup(), configuration.getPeer(), currentExecution.getMethod().toString() + (throwable == null ? "" : FIELD_SPLIT_CHAR + throwable.getClass().getName()));
-                logger.info("rolling transaction local {} with id [{}], info [{}:{}-{}], state {}, is local rollback: {}, exception: {}", isNew?"call rollback":"process rollback", transactionId, configuration.getGroup(), configuration.getPeer(), currentExecution.getMethod().toString(), currentExecution.getTransactionState(), rollback, throwable != null ? throwable.toString() : "");
+            if(executionChain.last() != currentExecution){
+                client.rollbackAsync(transactionId, configuration.getGroup(), configuration.getPeer(), signature(currentExecution.getMethod()) + (throwable == null ? "" : FIELD_SPLIT_CHAR + throwable.getClass().getName()))
+                        .whenComplete(logFailure("rollback", transactionId));
+                logger.info("rolling transaction local {} with id [{}], info [{}:{}-{}], state {}, is local rollback: {}, exception: {}", isNew?"call rollback":"process rollback", transactionId, configuration.getGroup(), configuration.getPeer(), signature(currentExecution.getMethod()), currentExecution.getTransactionState(), rollback, throwable != null ? throwable.toString() : "");
             }
-        }else if(isNew){
-            // 提交全局事务
-            client.commit(transactionId, configuration.getGroup(), configuration.getPeer());
-            logger.info("rolling transaction local {} with id [{}], info [{}:{}-{}], state {}, result: {}", isNew?"call commit":"process commit", transactionId, configuration.getGroup(), configuration.getPeer(), currentExecution.getMethod().toString(), currentExecution.getTransactionState(), result);
+        }else if(isNew && outermost){
+            // 最外层方法结束，提交全局事务
+            client.commitAsync(transactionId, configuration.getGroup(), configuration.getPeer())
+                    .whenComplete(logFailure("commit", transactionId));
+            logger.info("rolling transaction local {} with id [{}], info [{}:{}-{}], state {}, result: {}", isNew?"call commit":"process commit", transactionId, configuration.getGroup(), configuration.getPeer(), signature(currentExecution.getMethod()), currentExecution.getTransactionState(), result);
+        }
+        if(outermost){
+            // 解除线程本地变量
+            clearContext();
         }
-        // 移除线程本地变量
-        LOCAL_CONTEXT.remove();
         // 处理其他事情
         logger.info("rolling transaction local {} with id [{}], info [{}:{}], execute time {}ms, state {}, result: {}", isNew?"call end":"process end", transactionId, configuration.getGroup(), configuration.getPeer(), (currentExecution.getEndTime() - currentExecution.getStartTime()), currentExecution.getTransactionState(), result);
+        if(!outermost){
+            // 嵌套的事务方法结束，回到外层方法，上下文仍由外层使用
+            currentExecution = outerExecution();
+            return;
+        }
+        if(transactionId == null){
+            // 未登记为全局事务，执行链不会再被访问，回收供当前线程的下一个上下文复用
+            currentExecution = null;
+            executionChain.recycle();
+        }
     }
 
     /**
-     * rpc、http 远程调用前，执行完这个方法后，transactionId肯定不为空
+     * 外层进行中的本地事务方法：执行链中最后一个尚未结束的本地节点
+     */
+    private ExecutionHolder outerExecution() {
+        for (int i = executionChain.size() - 1; i >= 0; i--) {
+            ExecutionHolder execution = executionChain.get(i);
+            if(execution.isLocal() && execution.getEndTime() == 0){
+                return execution;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * rpc、http 远程调用前，执行完这个方法后，除非已降级为仅本地执行，transactionId肯定不为空
      * @param target 当为http时，值为 URI 对象
      * @param method 当为http时，为http的请求方式
      * @param args
      */
     public void beforeRemoter(Object target, Method method, Object[] args){
+        lastActiveTime = System.currentTimeMillis();
+        if(degraded){
+            executionChain.add(false, target, method, args);
+            return;
+        }
+        int index = executionChain.size();
         boolean join = true;
+        boolean start = transactionId == null;
         if(transactionId == null){
             // 生成id，并加入全局事务
             if(currentExecution == null){// 远程调用没在事务内
                 this.transactionId = idGenerator.generateTransactionId(method, args);
-                client.joinChain(transactionId, configuration.getGroup(), configuration.getPeer(), executionIndex, method.toString());
+                register(client.startChainAsync(transactionId, configuration.getGroup(), configuration.getPeer(), index, signature(method)));
                 join = false;
-                logger.info("rolling transaction remote {} with id [{}], info [{}:{}-{}]", isNew?"call":"process", transactionId, configuration.getGroup(), configuration.getPeer(), method.toString());
+                logger.info("rolling transaction remote {} with id [{}], info [{}:{}-{}]", isNew?"call":"process", transactionId, configuration.getGroup(), configuration.getPeer(), signature(method));
 
             }else{
                 this.transactionId = idGenerator.generateTransactionId(currentExecution.getMethod(), currentExecution.getArgs());
-                client.joinChain(transactionId, configuration.getGroup(), configuration.getPeer(), executionIndex - 1, currentExecution.getMethod().toString());
-                logger.info("rolling transaction local {} with id [{}], info [{}:{}-{}]", isNew?"call":"process", transactionId, configuration.getGroup(), configuration.getPeer(), currentExecution.getMethod().toString());
+                register(client.startChainAsync(transactionId, configuration.getGroup(), configuration.getPeer(), index - 1, signature(currentExecution.getMethod())));
+                logger.info("rolling transaction local {} with id [{}], info [{}:{}-{}]", isNew?"call":"process", transactionId, configuration.getGroup(), configuration.getPeer(), signature(currentExecution.getMethod()));
             }
-            GLOBAL_CONTEXT.put(transactionId, this);
         }
-        ExecutionHolder executionHolder = new ExecutionHolder(false);
-        executionHolder.setTarget(target);
-        executionHolder.setMethod(method);
-        executionHolder.setArgs(args);
+        executionChain.add(false, target, method, args);
         if(join){
-            client.joinChain(transactionId, configuration.getGroup(), configuration.getPeer(), executionIndex, method.toString());
-            logger.info("rolling transaction remote {} with id [{}], info [{}:{}-{}]", isNew?"call":"process", transactionId, configuration.getGroup(), configuration.getPeer(), method.toString());
+            defer(index);
+            logger.info("rolling transaction remote {} with id [{}], info [{}:{}-{}]", isNew?"call":"process", transactionId, configuration.getGroup(), configuration.getPeer(), signature(method));
+        }
+        // 事务id传出前，写入缓存的注册并确认所有注册已生效
+        try {
+            flushRegistrations();
+            awaitRegistration();
+        } catch (RuntimeException e) {
+            if(!start){
+                throw e;
+            }
+            // 全局事务未创建成功，不登记、不计时，上下文恢复为仅本地事务
+            String failedId = transactionId;
+            transactionId = null;
+            if(!(e instanceof MediatorUnavailableException) || !CircuitBreakerMediatorClient.POLICY_DEGRADE.equals(configuration.getBreakerPolicy())){
+                throw e;
+            }
+            // 协调中心不可用，新的全局事务降级为仅本地执行，不传递事务id
+            ReconciliationLog.record(signature(method), "degrade", "transaction [" + failedId + "] not started. " + e.getMessage());
+            degraded = true;
+            return;
+        }
+        if(start){
+            // 确认事务链已创建后才登记为全局事务
+            track(currentExecution != null ? currentExecution.getMethod() : null);
+        }
+    }
+
+    /**
+     * 登记为当前JVM持有的全局事务，并开始超时计时
+     * @param method 事务入口方法，可为null
+     */
+    private void track(Method method) {
+        registry.put(transactionId, this);
+        armTimeout(method);
+    }
+
+    /**
+     * 撤销登记，取消超时计时
+     */
+    private void untrack() {
+        if(registry.get(transactionId) == this){
+            registry.remove(transactionId);
+        }
+        if(timeout != null){
+            timeout.cancel();
+            timeout = null;
         }
-        executionChain.put(executionIndex++, executionHolder);
+    }
+
+    /**
+     * 方法指定了超时时，以最先进入的该类方法的超时为准（覆盖全局超时）；否则使用全局超时
+     */
+    private void armTimeout(Method method) {
+        long millis = method == null ? 0 : methodTimeout(method);
+        if(millis > 0){
+            if(methodTimeout){
+                return;
+            }
+            methodTimeout = true;
+        }else if(timeout != null || (millis = configuration.getTransactionTimeout()) <= 0){
+            return;
+        }
+        if(timeout != null){
+            timeout.cancel();
+        }
+        String detail = (method == null ? configuration.getGroup() + ":" + configuration.getPeer() : signature(method)) + FIELD_SPLIT_CHAR + TimeoutException.class.getName();
+        timeout = timer.newTimeout(new Expiry(transactionId, this, detail, millis), millis);
+    }
+
+    static long methodTimeout(Method method) {
+        Long millis = METHOD_TIMEOUTS.get(method);
+        if(millis == null){
+            // 不使用 @Transactional(timeout)：那是本地数据库事务的超时，不能作为整个全局事务的期限
+            GlobalTimeout globalTimeout = AnnotationUtils.findAnnotation(method, GlobalTimeout.class);
+            if(globalTimeout == null){
+                globalTimeout = AnnotationUtils.findAnnotation(method.getDeclaringClass(), GlobalTimeout.class);
+            }
+            millis = globalTimeout != null && globalTimeout.value() > 0 ? globalTimeout.value() : 0L;
+            METHOD_TIMEOUTS.put(method, millis);
+        }
+        return millis;
+    }
+
+    /**
+     * 全局事务超时：协调中心已有决议（通知丢失）时重新分发该决议；否则发起全局回滚，
+     * 回滚后再等待一个超时周期仍未收到通知时只清理本地上下文并记录待对账
+     */
+    private static void expire(final Expiry expiry) {
+        final String transactionId = expiry.transactionId;
+        TransactionContext context = expiry.context;
+        if(registry.get(transactionId) != context){
+            return;
+        }
+        if(context.expired){
+            ReconciliationLog.record(transactionId, "timeout", "no decision notification after timeout rollback. " + expiry.detail);
+            clear(transactionId);
+            return;
+        }
+        context.expired = true;
+        TransactionResult result = null;
+        try {
+            result = client.getResults(transactionId);
+        } catch (RuntimeException e) {
+            logger.warn("global transaction [{}] timeout, query results failed. {}", transactionId, e.getMessage());
+        }
+        if(result != null && result.getEndTime() > 0){
+            logger.warn("global transaction [{}] timeout, decision already made, redeliver.", transactionId);
+            dispatcher.change(transactionId, result.getRollback() == null ? PayloadCodec.STATE_COMMIT_TEXT : result.getRollback());
+            return;
+        }
+        logger.warn("global transaction [{}] timeout after {}ms, rollback. detail [{}]", transactionId, expiry.millis, expiry.detail);
+        context.timeout = timer.newTimeout(expiry, expiry.millis);
+        client.rollbackAsync(transactionId, configuration.getGroup(), configuration.getPeer(), expiry.detail).whenComplete(new BiConsumer<Void, Throwable>() {
+            @Override
+            public void accept(Void aVoid, Throwable throwable) {
+                if(throwable != null){
+                    ReconciliationLog.record(transactionId, "timeout", "rollback failed. " + throwable.getMessage());
+                    clear(transactionId);
+                }
+            }
+        });
+    }
+
+    /**
+     * 缓存执行链中下标为index的节点的注册
+     */
+    private void defer(int index) {
+        if(deferredIndexes == null){
+            deferredIndexes = new int[4];
+        }else if(deferredCount == deferredIndexes.length){
+            deferredIndexes = Arrays.copyOf(deferredIndexes, deferredCount << 1);
+        }
+        deferredIndexes[deferredCount++] = index;
+    }
+
+    /**
+     * 发出缓存的注册：一个节点时单独加入，多个节点时批量加入。写入节点的同时完成了事务链验证
+     */
+    private void flushRegistrations() {
+        int count = deferredCount;
+        if(count == 0){
+            if(deferredValidation){
+                deferredValidation = false;
+                register(client.joinChainAsync(transactionId, configuration.getGroup(), configuration.getPeer(), 0, null));
+            }
+            return;
+        }
+        deferredCount = 0;
+        deferredValidation = false;
+        if(count == 1){
+            int index = deferredIndexes[0];
+            register(client.joinChainAsync(transactionId, configuration.getGroup(), configuration.getPeer(), index, signature(executionChain.get(index).getMethod())));
+            return;
+        }
+        int[] indexes = Arrays.copyOf(deferredIndexes, count);
+        String[] data = new String[count];
+        for (int i = 0; i < count; i++) {
+            data[i] = signature(executionChain.get(indexes[i]).getMethod());
+        }
+        register(client.joinChainBatchAsync(transactionId, configuration.getGroup(), configuration.getPeer(), indexes, data));
+    }
+
+    private void register(CompletableFuture<Void> registration) {
+        pendingRegistration = pendingRegistration == null ? registration : CompletableFuture.allOf(pendingRegistration, registration);
+    }
+
+    private void awaitRegistration() {
+        CompletableFuture<Void> registration = pendingRegistration;
+        if(registration == null){
+            return;
+        }
+        pendingRegistration = null;
+        try {
+            registration.get(REGISTRATION_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof RuntimeException){
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause.getMessage(), cause);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Transaction join timeout, id [" + transactionId + "]", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Transaction join interrupted, id [" + transactionId + "]", e);
+        }
+    }
+
+    /**
+     * 等待注册完成，失败由注册的回调处理，这里不再抛出
+     */
+    private void awaitQuietly(CompletableFuture<Void> registration) {
+        try {
+            registration.get(REGISTRATION_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            // 已由回调处理
+        } catch (TimeoutException e) {
+            logger.warn("rolling transaction join not confirmed in {}ms, id [{}]", REGISTRATION_TIMEOUT_MILLIS, transactionId);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 结束时发出的注册失败（如发起方已清理事务）：协调中心没有本节点的监听，上下文不会再收到通知，
+     * 记录为孤立事务（回滚方法不会被调用）并撤销登记
+     */
+    private static BiConsumer<Void, Throwable> abandonOnFailure(final String transactionId, final TransactionContext context) {
+        return new BiConsumer<Void, Throwable>() {
+            @Override
+            public void accept(Void aVoid, Throwable throwable) {
+                if(throwable == null){
+                    return;
+                }
+                logger.error("rolling transaction join failed with id [{}]. {}", transactionId, throwable.getMessage());
+                ReconciliationLog.record(transactionId, "orphan", "join failed at completion, new: " + context.isNew + ", executions: " + context.executionChain.size() + ". " + throwable.getMessage());
+                context.untrack();
+            }
+        };
+    }
+
+    private static BiConsumer<Void, Throwable> logFailure(final String action, final String transactionId) {
+        return new BiConsumer<Void, Throwable>() {
+            @Override
+            public void accept(Void aVoid, Throwable throwable) {
+                if(throwable != null){
+                    logger.error("rolling transaction {} failed with id [{}]. {}", action, transactionId, throwable.getMessage());
+                }
+            }
+        };
     }
 
     /**
@@ -194,10 +730,11 @@ public class TransactionContext {
      * @param throwable
      */
     public void afterRemoter(Object result, Throwable throwable){
-        ExecutionHolder executionHolder = executionChain.get(executionIndex - 1);
+        ExecutionHolder executionHolder = executionChain.last();
         executionHolder.setResult(result);
         executionHolder.setThrowable(throwable);
         executionHolder.setEndTime(System.currentTimeMillis());
+        lastActiveTime = executionHolder.getEndTime();
 
         executionHolder.setTransactionState(checker.executionFailed(result, throwable) ? -1 : 1);
 
@@ -214,17 +751,26 @@ public class TransactionContext {
 
     public static void setConfiguration(TransactionConfiguration configuration) {
         TransactionContext.configuration = configuration;
-        final MediatorClient client = new CuratorZookeeperClient(URL.valueOf(configuration.getMediator()));
-        client.addWatcher(new MediatorWatcher() {
+        tokenSecret = configuration.getTokenSecret() == null || configuration.getTokenSecret().isEmpty() ? null : configuration.getTokenSecret().getBytes(StandardCharsets.UTF_8);
+        final AsyncMediatorClient client = createClient(configuration);
+        MediatorWatcher watcher = new MediatorWatcher() {
+            @Override
+            public boolean isWatching(String transactionId) {
+                return isActive(transactionId);
+            }
+
             @Override
             public void change(String transactionId, String data) {
-                if("1".equals(data)){
+                if(data == null){
+                    // 状态节点已不存在（断线期间事务已结束并被清理），决议未知，只清理本地上下文，不执行回滚
+                    logger.warn("global transaction [{}] state lost while disconnected, clear local context only.", transactionId);
+                }else if("1".equals(data)){
                     // global commit
                     logger.info("global transaction [{}] commit.", transactionId);
                 }else{
                     // rollback
                     logger.info("global transaction [{}] rollback. detail [{}]", transactionId, data);
-                    TransactionContext context = TransactionContext.GLOBAL_CONTEXT.get(transactionId);
+                    TransactionContext context = registry.get(transactionId);
                     if(context != null){
                         Method method = context.currentExecution.getMethod();
                         Class<?> targetClass = method.getDeclaringClass();
@@ -252,24 +798,256 @@ public class TransactionContext {
                 }
                 TransactionContext.clear(transactionId);
             }
+        };
+        // 通知处理（回滚方法调用等）不在协调客户端事件线程上执行
+        dispatcher = new StripedMediatorWatcher(watcher, configuration.getDispatchThreads(), configuration.getDispatchQueueSize());
+        // 时间轮线程在首个定时加入时启动
+        timer = new HashedTimingWheel("rolling-tx-timeout", configuration.getTimeoutTickMillis(), TIMEOUT_WHEEL_SIZE);
+        final AtomicInteger expiryThreadCount = new AtomicInteger();
+        int expiryThreads = Math.max(configuration.getExpiryThreads(), 1);
+        expiryExecutor = new ThreadPoolExecutor(expiryThreads, expiryThreads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(EXPIRY_QUEUE_SIZE), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "rolling-tx-expiry-" + expiryThreadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        sweepExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "rolling-tx-sweep");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        registry = new TransactionRegistry(configuration.getRegistryCapacity(), configuration.getRegistryIdleMillis(), configuration.getRegistryMaxAgeMillis(), new TransactionRegistry.EvictionListener() {
+            @Override
+            public void evicted(TransactionContext context, String cause) {
+                HashedTimingWheel.Timeout timeout = context.timeout;
+                if(timeout != null){
+                    timeout.cancel();
+                }
+                // 之后的全局通知找不到上下文，不会调用回滚方法
+                ReconciliationLog.record(context.transactionId, "orphan", "context evicted from registry, cause: " + cause + ", new: " + context.isNew + ", executions: " + context.executionChain.size());
+            }
         });
+        if(configuration.getRegistryIdleMillis() > 0 || configuration.getRegistryMaxAgeMillis() > 0){
+            timer.newTimeout(new Runnable() {
+                @Override
+                public void run() {
+                    sweepExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            registry.sweep();
+                        }
+                    });
+                    timer.newTimeout(this, REGISTRY_SWEEP_MILLIS);
+                }
+            }, REGISTRY_SWEEP_MILLIS);
+        }
+        client.addWatcher(dispatcher);
         client.init();
         TransactionContext.client = client;
     }
 
+    /**
+     * 全局事务上下文登记表，可获取登记数、淘汰数、内存估算等监控指标
+     * @return
+     */
+    public static TransactionRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * 未发生远程调用、不经过协调中心完成的事务数
+     * @return
+     */
+    public static long getLocalOnlyCount() {
+        return LOCAL_ONLY_COUNT.sum();
+    }
+
+    long getLastActiveTime() {
+        return lastActiveTime;
+    }
+
+    /**
+     * 上下文及执行链占用内存估算（字节），不包括业务参数、返回值对象本身
+     */
+    int estimateSize() {
+        return CONTEXT_SIZE + executionChain.size() * EXECUTION_SIZE;
+    }
+
+    /**
+     * 方法签名（Method.toString()），已缓存
+     * @param method
+     * @return
+     */
+    public static String signature(Method method) {
+        String signature = SIGNATURES.get(method);
+        if(signature == null){
+            signature = method.toString();
+            SIGNATURES.put(method, signature);
+        }
+        return signature;
+    }
+
+    /**
+     * 启动时向协调中心登记本组的事务方法签名，之后事务链中只传递方法id
+     * @param methods
+     */
+    public static void registerMethods(Collection<Method> methods) {
+        if(client == null || methods.isEmpty()){
+            return;
+        }
+        List<String> signatures = new ArrayList<>(methods.size());
+        for (Method method : methods){
+            signatures.add(signature(method));
+        }
+        client.registerMethods(configuration.getGroup(), signatures);
+    }
+
+    /**
+     * 多个协调集群以 ; 分隔时，事务按id一致性哈希路由到其中一个集群
+     */
+    private static AsyncMediatorClient createClient(TransactionConfiguration configuration) {
+        String[] mediators = configuration.getMediator().split(MEDIATOR_SPLIT_CHAR);
+        if(mediators.length == 1){
+            return connect(mediatorUrl(configuration, mediators[0]));
+        }
+        Map<String, AsyncMediatorClient> ensembles = new LinkedHashMap<>();
+        for (String mediator : mediators){
+            if(mediator.trim().isEmpty()){
+                continue;
+            }
+            URL url = mediatorUrl(configuration, mediator);
+            ensembles.put(ShardedMediatorClient.ensembleKey(url), connect(url));
+        }
+        return new ShardedMediatorClient(ensembles);
+    }
+
+    /**
+     * 按协议选择 META-INF/services 中注册的 MediatorTransporter 创建协调客户端
+     */
+    private static AsyncMediatorClient connect(URL url) {
+        MediatorTransporter transporter = loadTransporters().get(url.getProtocol());
+        if(transporter == null){
+            throw new IllegalStateException("No MediatorTransporter found for protocol [" + url.getProtocol() + "], mediator: " + url);
+        }
+        AsyncMediatorClient client = BlockingAsyncMediatorClient.wrap(transporter.connect(url));
+        if(configuration.getBreakerPolicy() != null){
+            // 每个协调集群独立熔断，一个集群故障不影响路由到其他集群的事务
+            client = new CircuitBreakerMediatorClient(client, configuration.getBreakerFailureRate(), configuration.getBreakerSlowMillis(), configuration.getBreakerOpenMillis());
+        }
+        return client;
+    }
+
+    private static Map<String, MediatorTransporter> loadTransporters() {
+        Map<String, MediatorTransporter> transporters = new HashMap<>();
+        for (MediatorTransporter transporter : ServiceLoader.load(MediatorTransporter.class, TransactionContext.class.getClassLoader())){
+            if(transporters.containsKey(transporter.getProtocol())){
+                logger.warn("Duplicate MediatorTransporter for protocol [{}], ignore {}", transporter.getProtocol(), transporter.getClass().getName());
+                continue;
+            }
+            transporters.put(transporter.getProtocol(), transporter);
+        }
+        return transporters;
+    }
+
+    /**
+     * 协调中心地址，附加 rolling-tx 下的协调相关配置
+     */
+    private static URL mediatorUrl(TransactionConfiguration configuration, String mediator) {
+        URL mediatorUrl = URL.valueOf(mediator.trim());
+        if(configuration.getMediatorBuckets() > 0){
+            mediatorUrl = mediatorUrl.addParameter(CuratorZookeeperClient.BUCKETS_KEY, configuration.getMediatorBuckets());
+        }
+        if(configuration.getMediatorPayload() != null){
+            mediatorUrl = mediatorUrl.addParameter(PayloadCodec.FORMAT_KEY, configuration.getMediatorPayload());
+        }
+        return mediatorUrl;
+    }
+
+    /**
+     * 全局事务通知分发器，可获取排队深度、处理耗时等监控指标
+     * @return
+     */
+    public static StripedMediatorWatcher getDispatcher() {
+        return dispatcher;
+    }
+
     public static void setBeanFactory(BeanFactory beanFactory) {
         TransactionContext.beanFactory = beanFactory;
     }
 
+    public static BeanFactory getBeanFactory() {
+        return beanFactory;
+    }
+
     private static void clear(String transactionId){
-        TransactionContext context = GLOBAL_CONTEXT.remove(transactionId);
+        TransactionContext context = registry.remove(transactionId);
         boolean contextExists = context != null;
         if(contextExists){
-            context.executionChain.clear();
+            HashedTimingWheel.Timeout timeout = context.timeout;
+            if(timeout != null){
+                timeout.cancel();
+            }
+            // 不在通知线程上释放执行链：所属线程可能仍在 completeTransaction 中读取当前执行节点，移出登记表后上下文随之回收
             if(context.isNew){
-                client.clear(transactionId);
+                client.clearAsync(transactionId).whenComplete(logFailure("clear", transactionId));
             }
         }
         logger.info("transaction context clear. id[{}], contextExists: {}, clear registry: {}", transactionId, contextExists, contextExists && context.isNew);
     }
+
+    /**
+     * 超时定时任务，到期后转交超时处理线程
+     */
+    private static class Expiry implements Runnable {
+
+        final String transactionId;
+
+        final TransactionContext context;
+
+        /**
+         * 回滚信息：方法签名|超时异常
+         */
+        final String detail;
+
+        final long millis;
+
+        Expiry(String transactionId, TransactionContext context, String detail, long millis) {
+            this.transactionId = transactionId;
+            this.context = context;
+            this.detail = detail;
+            this.millis = millis;
+        }
+
+        @Override
+        public void run() {
+            try {
+                expiryExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        expire(Expiry.this);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // 大量事务同时超时，推迟一个tick，不阻塞时间轮线程
+                if(registry.get(transactionId) == context){
+                    context.timeout = timer.newTimeout(this, configuration.getTimeoutTickMillis());
+                }
+            }
+        }
+    }
+
+    /**
+     * 入口地址解析
+     */
+    public interface EnterUrlResolver {
+        /**
+         * @return 当前线程正在处理的入口地址，没有时为null
+         */
+        String resolve();
+    }
 }
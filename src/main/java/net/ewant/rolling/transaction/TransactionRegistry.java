@@ -0,0 +1,323 @@
+package net.ewant.rolling.transaction;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 当前JVM持有的全局事务上下文登记表（替代无界的 ConcurrentHashMap）。
+ * <ul>
+ *     <li>以紧凑形式的事务id为键：标准UUID格式的id解析为两个long，其他格式保留字符串</li>
+ *     <li>容量有界：按键哈希分段，每段按登记顺序淘汰最早登记的事务</li>
+ *     <li>空闲过期（上下文最后活动时间）与绝对过期（登记时间）由定时清理执行</li>
+ *     <li>淘汰、过期的上下文通过回调记录为孤立事务（不会再收到全局通知，回滚方法不会被调用）</li>
+ * </ul>
+ */
+public class TransactionRegistry {
+
+    public static final String CAUSE_CAPACITY = "capacity";
+
+    public static final String CAUSE_IDLE = "idle";
+
+    public static final String CAUSE_EXPIRED = "expired";
+
+    private static final int SEGMENTS = 16;
+
+    /**
+     * 每条登记的估算开销：键、条目、哈希表节点
+     */
+    private static final int ENTRY_OVERHEAD = 32 + 24 + 48;
+
+    /**
+     * 淘汰、过期回调
+     */
+    public interface EvictionListener {
+        void evicted(TransactionContext context, String cause);
+    }
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    private final int capacity;
+
+    private final long idleMillis;
+
+    private final long maxAgeMillis;
+
+    private final EvictionListener listener;
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param capacity 最大登记事务数
+     * @param idleMillis 上下文无活动超过该时间后清理，0为不清理
+     * @param maxAgeMillis 登记超过该时间后清理，0为不清理
+     * @param listener
+     */
+    TransactionRegistry(int capacity, long idleMillis, long maxAgeMillis, EvictionListener listener) {
+        if(capacity <= 0){
+            throw new IllegalArgumentException("registry capacity must be greater than 0: " + capacity);
+        }
+        this.capacity = capacity;
+        this.idleMillis = idleMillis;
+        this.maxAgeMillis = maxAgeMillis;
+        this.listener = listener;
+        int segmentCapacity = (capacity + SEGMENTS - 1) / SEGMENTS;
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentCapacity);
+        }
+    }
+
+    void put(String transactionId, TransactionContext context) {
+        Key key = Key.of(transactionId);
+        Entry evicted;
+        Segment segment = segmentFor(key);
+        synchronized (segment){
+            Entry previous = segment.entries.put(key, new Entry(context, System.currentTimeMillis()));
+            if(previous == null){
+                size.incrementAndGet();
+            }
+            evicted = segment.evicted;
+            segment.evicted = null;
+        }
+        if(evicted != null){
+            size.decrementAndGet();
+            evicted(evicted, CAUSE_CAPACITY);
+        }
+    }
+
+    TransactionContext get(String transactionId) {
+        Key key = Key.of(transactionId);
+        Segment segment = segmentFor(key);
+        synchronized (segment){
+            Entry entry = segment.entries.get(key);
+            return entry == null ? null : entry.context;
+        }
+    }
+
+    boolean contains(String transactionId) {
+        return get(transactionId) != null;
+    }
+
+    TransactionContext remove(String transactionId) {
+        Key key = Key.of(transactionId);
+        Segment segment = segmentFor(key);
+        Entry entry;
+        synchronized (segment){
+            entry = segment.entries.remove(key);
+        }
+        if(entry == null){
+            return null;
+        }
+        size.decrementAndGet();
+        return entry.context;
+    }
+
+    /**
+     * 清理空闲、过期的上下文
+     * @return 清理数
+     */
+    int sweep() {
+        if(idleMillis <= 0 && maxAgeMillis <= 0){
+            return 0;
+        }
+        long now = System.currentTimeMillis();
+        int swept = 0;
+        for (Segment segment : segments){
+            List<Entry> idle = new ArrayList<>();
+            List<Entry> expired = new ArrayList<>();
+            synchronized (segment){
+                Iterator<Entry> iterator = segment.entries.values().iterator();
+                while (iterator.hasNext()){
+                    Entry entry = iterator.next();
+                    if(maxAgeMillis > 0 && now - entry.registeredAt >= maxAgeMillis){
+                        expired.add(entry);
+                        iterator.remove();
+                    }else if(idleMillis > 0 && now - entry.context.getLastActiveTime() >= idleMillis){
+                        idle.add(entry);
+                        iterator.remove();
+                    }
+                }
+            }
+            for (Entry entry : expired){
+                size.decrementAndGet();
+                evicted(entry, CAUSE_EXPIRED);
+            }
+            for (Entry entry : idle){
+                size.decrementAndGet();
+                evicted(entry, CAUSE_IDLE);
+            }
+            swept += expired.size() + idle.size();
+        }
+        return swept;
+    }
+
+    private void evicted(Entry entry, String cause) {
+        evictions.increment();
+        if(listener != null){
+            listener.evicted(entry.context, cause);
+        }
+    }
+
+    private Segment segmentFor(Key key) {
+        int h = key.hashCode();
+        return segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    /**
+     * 当前登记的事务数
+     * @return
+     */
+    public int size() {
+        return size.get();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * 因容量、空闲、过期被清理的事务数
+     * @return
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * 登记表占用内存估算（字节），包括上下文及其执行链，不包括业务参数、返回值对象本身。
+     * 需要遍历所有条目，仅供监控采集使用
+     * @return
+     */
+    public long getMemoryEstimate() {
+        long bytes = 0;
+        for (Segment segment : segments){
+            synchronized (segment){
+                for (Map.Entry<Key, Entry> entry : segment.entries.entrySet()){
+                    bytes += ENTRY_OVERHEAD + entry.getKey().estimateSize() + entry.getValue().context.estimateSize();
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private static final class Segment {
+
+        private final LinkedHashMap<Key, Entry> entries;
+
+        /**
+         * put时因超出容量被淘汰的条目，在锁外回调
+         */
+        private Entry evicted;
+
+        Segment(final int capacity) {
+            this.entries = new LinkedHashMap<Key, Entry>(){
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                    if(size() > capacity){
+                        evicted = eldest.getValue();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+    }
+
+    private static final class Entry {
+
+        final TransactionContext context;
+
+        final long registeredAt;
+
+        Entry(TransactionContext context, long registeredAt) {
+            this.context = context;
+            this.registeredAt = registeredAt;
+        }
+    }
+
+    /**
+     * 紧凑形式的事务id：标准UUID（8-4-4-4-12 十六进制）解析为两个long，其他格式保留原字符串
+     */
+    static final class Key {
+
+        private final long high;
+
+        private final long low;
+
+        private final String text;
+
+        private final int hash;
+
+        private Key(long high, long low, String text) {
+            this.high = high;
+            this.low = low;
+            this.text = text;
+            this.hash = text != null ? text.hashCode() : (int) (high ^ (high >>> 32) ^ low ^ (low >>> 32));
+        }
+
+        static Key of(String transactionId) {
+            if(transactionId.length() == 36){
+                long high = 0;
+                long low = 0;
+                boolean uuid = true;
+                int digits = 0;
+                for (int i = 0; i < 36 && uuid; i++) {
+                    char c = transactionId.charAt(i);
+                    if(i == 8 || i == 13 || i == 18 || i == 23){
+                        uuid = c == '-';
+                        continue;
+                    }
+                    int value = Character.digit(c, 16);
+                    // 大写十六进制与小写的字符串不同，保留字符串形式
+                    if(value < 0 || Character.isUpperCase(c)){
+                        uuid = false;
+                    }else if(digits++ < 16){
+                        high = (high << 4) | value;
+                    }else{
+                        low = (low << 4) | value;
+                    }
+                }
+                if(uuid){
+                    return new Key(high, low, null);
+                }
+            }
+            return new Key(0, 0, transactionId);
+        }
+
+        int estimateSize() {
+            return text == null ? 40 : 40 + 40 + text.length() * 2;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this == o){
+                return true;
+            }
+            if(!(o instanceof Key)){
+                return false;
+            }
+            Key other = (Key) o;
+            if(text != null || other.text != null){
+                return text != null && text.equals(other.text);
+            }
+            return high == other.high && low == other.low;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return text != null ? text : new UUID(high, low).toString();
+        }
+    }
+}
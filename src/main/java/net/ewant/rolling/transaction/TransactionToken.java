@@ -0,0 +1,147 @@
+package net.ewant.rolling.transaction;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * 签名的事务令牌：{事务id}~{发起节点}~{签发时间}~{签名}，发起节点与签名为URL安全的Base64。
+ * 由事务发起方签发，随远程调用传递；提供方用共享密钥在本地验证，无需访问协调中心即可拒绝伪造的事务id
+ */
+public class TransactionToken {
+
+    private static final char SEPARATOR = '~';
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    /**
+     * 签名截取长度（字节）
+     */
+    private static final int SIGNATURE_LENGTH = 16;
+
+    private static final ThreadLocal<KeyedMac> MACS = new ThreadLocal<KeyedMac>() {
+        @Override
+        protected KeyedMac initialValue() {
+            try {
+                return new KeyedMac(Mac.getInstance(ALGORITHM));
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+        }
+    };
+
+    private final String transactionId;
+
+    private final String peer;
+
+    private final long issueTime;
+
+    private TransactionToken(String transactionId, String peer, long issueTime) {
+        this.transactionId = transactionId;
+        this.peer = peer;
+        this.issueTime = issueTime;
+    }
+
+    public String getTransactionId() {
+        return transactionId;
+    }
+
+    public String getPeer() {
+        return peer;
+    }
+
+    public long getIssueTime() {
+        return issueTime;
+    }
+
+    public static String sign(String transactionId, String peer, byte[] secret) {
+        long issueTime = System.currentTimeMillis();
+        String encodedPeer = Base64.getUrlEncoder().withoutPadding().encodeToString(peer.getBytes(StandardCharsets.UTF_8));
+        String time = Long.toString(issueTime, 36);
+        String signature = Base64.getUrlEncoder().withoutPadding().encodeToString(mac(secret, transactionId, encodedPeer, time));
+        return transactionId + SEPARATOR + encodedPeer + SEPARATOR + time + SEPARATOR + signature;
+    }
+
+    /**
+     * 是否为令牌格式（兼容未开启签名的节点传递的原始事务id）
+     */
+    public static boolean isToken(String value) {
+        int last = value.lastIndexOf(SEPARATOR);
+        int middle = last > 0 ? value.lastIndexOf(SEPARATOR, last - 1) : -1;
+        return middle > 0 && value.lastIndexOf(SEPARATOR, middle - 1) > 0;
+    }
+
+    /**
+     * 验证签名与有效期
+     * @param token
+     * @param secret
+     * @param ttlMillis 令牌有效期，0为不限制
+     * @return
+     * @throws IllegalStateException 令牌格式错误、签名不匹配或已过期
+     */
+    public static TransactionToken verify(String token, byte[] secret, long ttlMillis) {
+        int third = token.lastIndexOf(SEPARATOR);
+        int second = third > 0 ? token.lastIndexOf(SEPARATOR, third - 1) : -1;
+        int first = second > 0 ? token.lastIndexOf(SEPARATOR, second - 1) : -1;
+        if(first <= 0){
+            throw new IllegalStateException("Transaction token malformed [" + token + "]");
+        }
+        String transactionId = token.substring(0, first);
+        String encodedPeer = token.substring(first + 1, second);
+        String time = token.substring(second + 1, third);
+        byte[] signature;
+        long issueTime;
+        try {
+            signature = Base64.getUrlDecoder().decode(token.substring(third + 1));
+            issueTime = Long.parseLong(time, 36);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("Transaction token malformed [" + token + "]", e);
+        }
+        if(!MessageDigest.isEqual(signature, mac(secret, transactionId, encodedPeer, time))){
+            throw new IllegalStateException("Transaction token signature mismatch, id [" + transactionId + "]");
+        }
+        if(ttlMillis > 0 && System.currentTimeMillis() - issueTime > ttlMillis){
+            throw new IllegalStateException("Transaction token expired, id [" + transactionId + "]");
+        }
+        return new TransactionToken(transactionId, new String(Base64.getUrlDecoder().decode(encodedPeer), StandardCharsets.UTF_8), issueTime);
+    }
+
+    private static byte[] mac(byte[] secret, String transactionId, String encodedPeer, String time) {
+        Mac mac = MACS.get().with(secret);
+        mac.update(transactionId.getBytes(StandardCharsets.UTF_8));
+        mac.update((byte) SEPARATOR);
+        mac.update(encodedPeer.getBytes(StandardCharsets.US_ASCII));
+        mac.update((byte) SEPARATOR);
+        return Arrays.copyOf(mac.doFinal(time.getBytes(StandardCharsets.US_ASCII)), SIGNATURE_LENGTH);
+    }
+
+    /**
+     * 密钥不变时复用已初始化的Mac，避免每次验证重新计算密钥
+     */
+    static class KeyedMac {
+
+        private final Mac mac;
+
+        private byte[] secret;
+
+        KeyedMac(Mac mac) {
+            this.mac = mac;
+        }
+
+        Mac with(byte[] secret) {
+            if(this.secret != secret){
+                try {
+                    mac.init(new SecretKeySpec(secret, ALGORITHM));
+                } catch (GeneralSecurityException e) {
+                    throw new IllegalStateException(e.getMessage(), e);
+                }
+                this.secret = secret;
+            }
+            return mac;
+        }
+    }
+}
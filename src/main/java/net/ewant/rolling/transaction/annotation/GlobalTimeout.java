@@ -0,0 +1,14 @@
+package net.ewant.rolling.transaction.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * 全局事务超时（毫秒），覆盖配置的 transactionTimeout。
+ * 与 @Transactional(timeout) 无关：后者只是本地数据库事务的超时
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface GlobalTimeout {
+    long value();
+}
@@ -0,0 +1,49 @@
+package net.ewant.rolling.transaction.concert;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 非阻塞协调客户端。请求发出后立即返回，由返回的future通知结果，
+ * 同一客户端发出的请求按发出顺序在协调中心执行
+ */
+public interface AsyncMediatorClient extends MediatorClient {
+
+    /**
+     * @see MediatorClient#startChain(String, String, String, int, String)
+     */
+    CompletableFuture<Void> startChainAsync(String transactionId, String group, String peer, int index, String data);
+
+    /**
+     * @see MediatorClient#joinChain(String, String, String, int, String)
+     */
+    CompletableFuture<Void> joinChainAsync(String transactionId, String group, String peer, int index, String data);
+
+    /**
+     * 同一参与方一次加入多个事务链节点，全部写入后完成。
+     * 默认逐个调用 joinChainAsync（请求同样按序执行），支持批量写入的客户端应覆盖
+     * @param indexes 事务链中的index
+     * @param data 与indexes一一对应
+     */
+    default CompletableFuture<Void> joinChainBatchAsync(String transactionId, String group, String peer, int[] indexes, String[] data) {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            futures[i] = joinChainAsync(transactionId, group, peer, indexes[i], data[i]);
+        }
+        return CompletableFuture.allOf(futures);
+    }
+
+    /**
+     * @see MediatorClient#rollback(String, String, String, String)
+     */
+    CompletableFuture<Void> rollbackAsync(String transactionId, String group, String peer, String data);
+
+    /**
+     * @see MediatorClient#commit(String, String, String)
+     */
+    CompletableFuture<Void> commitAsync(String transactionId, String group, String peer);
+
+    /**
+     * @see MediatorClient#clear(String)
+     */
+    CompletableFuture<Void> clearAsync(String transactionId);
+}
@@ -0,0 +1,148 @@
+package net.ewant.rolling.transaction.concert;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 将同步客户端适配为 {@link AsyncMediatorClient}，请求在调用线程上执行完成后返回已完成的future
+ */
+public class BlockingAsyncMediatorClient implements AsyncMediatorClient {
+
+    private final MediatorClient delegate;
+
+    public BlockingAsyncMediatorClient(MediatorClient delegate) {
+        this.delegate = delegate;
+    }
+
+    public static AsyncMediatorClient wrap(MediatorClient client) {
+        if(client instanceof AsyncMediatorClient){
+            return (AsyncMediatorClient) client;
+        }
+        return new BlockingAsyncMediatorClient(client);
+    }
+
+    @Override
+    public CompletableFuture<Void> startChainAsync(String transactionId, String group, String peer, int index, String data) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            delegate.startChain(transactionId, group, peer, index, data);
+            future.complete(null);
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<Void> joinChainAsync(String transactionId, String group, String peer, int index, String data) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            delegate.joinChain(transactionId, group, peer, index, data);
+            future.complete(null);
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<Void> rollbackAsync(String transactionId, String group, String peer, String data) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            delegate.rollback(transactionId, group, peer, data);
+            future.complete(null);
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<Void> commitAsync(String transactionId, String group, String peer) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            delegate.commit(transactionId, group, peer);
+            future.complete(null);
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<Void> clearAsync(String transactionId) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            delegate.clear(transactionId);
+            future.complete(null);
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    @Override
+    public void startChain(String transactionId, String group, String peer, int index, String data) {
+        delegate.startChain(transactionId, group, peer, index, data);
+    }
+
+    @Override
+    public void joinChain(String transactionId, String group, String peer, int index, String data) {
+        delegate.joinChain(transactionId, group, peer, index, data);
+    }
+
+    @Override
+    public void rollback(String transactionId, String group, String peer, String data) {
+        delegate.rollback(transactionId, group, peer, data);
+    }
+
+    @Override
+    public void commit(String transactionId, String group, String peer) {
+        delegate.commit(transactionId, group, peer);
+    }
+
+    @Override
+    public boolean transactionExists(String transactionId) {
+        return delegate.transactionExists(transactionId);
+    }
+
+    @Override
+    public TransactionResult getResults(String transactionId) {
+        return delegate.getResults(transactionId);
+    }
+
+    @Override
+    public void registerMethods(String group, Collection<String> signatures) {
+        delegate.registerMethods(group, signatures);
+    }
+
+    @Override
+    public void addWatcher(MediatorWatcher watcher) {
+        delegate.addWatcher(watcher);
+    }
+
+    @Override
+    public void clear(String transactionId) {
+        delegate.clear(transactionId);
+    }
+
+    @Override
+    public boolean isConnected() {
+        return delegate.isConnected();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    @Override
+    public void init() {
+        delegate.init();
+    }
+
+    @Override
+    public boolean isMediatorFault(Throwable throwable) {
+        return delegate.isMediatorFault(throwable);
+    }
+}
@@ -0,0 +1,407 @@
+package net.ewant.rolling.transaction.concert;
+
+import net.ewant.rolling.transaction.ReconciliationLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * 协调中心断路器。协调中心断开，或最近一段时间内请求失败率、慢请求率超过阈值时打开，
+ * 打开期间请求立即失败（MediatorUnavailableException），不再占用业务线程等待超时；
+ * 打开一段时间后放行单个探测请求，成功则关闭。
+ * 未能发出的全局提交/回滚记录到 ReconciliationLog 以便事后对账
+ */
+public class CircuitBreakerMediatorClient implements AsyncMediatorClient {
+
+    private static Logger logger = LoggerFactory.getLogger(CircuitBreakerMediatorClient.class);
+
+    /**
+     * 打开后拒绝新的全局事务
+     */
+    public static final String POLICY_REJECT = "reject";
+
+    /**
+     * 打开后新的全局事务降级为仅本地执行，并记录待对账信息
+     */
+    public static final String POLICY_DEGRADE = "degrade";
+
+    /**
+     * 统计窗口内的最少请求数，低于该数量不判断失败率
+     */
+    private static final int MIN_CALLS = 20;
+
+    /**
+     * 统计窗口（秒），按秒分桶滚动
+     */
+    private static final int WINDOW_SECONDS = 10;
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final AsyncMediatorClient delegate;
+
+    private final int failureRatePercent;
+
+    private final long slowCallMillis;
+
+    private final long openMillis;
+
+    private final RollingStats stats = new RollingStats(WINDOW_SECONDS);
+
+    private final AtomicBoolean probing = new AtomicBoolean();
+
+    private volatile State state = State.CLOSED;
+
+    private volatile long openedAt;
+
+    /**
+     * @param delegate
+     * @param failureRatePercent 失败率或慢请求率阈值（百分比）
+     * @param slowCallMillis 慢请求耗时阈值
+     * @param openMillis 打开后多久放行探测请求
+     */
+    public CircuitBreakerMediatorClient(AsyncMediatorClient delegate, int failureRatePercent, long slowCallMillis, long openMillis) {
+        this.delegate = delegate;
+        this.failureRatePercent = failureRatePercent;
+        this.slowCallMillis = slowCallMillis;
+        this.openMillis = openMillis;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * 是否允许请求通过，HALF_OPEN 时只放行一个探测请求
+     * @return 放行的是探测请求时为 HALF_OPEN，拒绝时为 null
+     */
+    private State acquire() {
+        if(!delegate.isConnected()){
+            trip("mediator disconnected");
+            return null;
+        }
+        State current = state;
+        if(current == State.CLOSED){
+            return current;
+        }
+        if(current == State.OPEN){
+            if(System.currentTimeMillis() - openedAt < openMillis){
+                return null;
+            }
+            state = State.HALF_OPEN;
+        }
+        return probing.compareAndSet(false, true) ? State.HALF_OPEN : null;
+    }
+
+    private void trip(String reason) {
+        if(state != State.OPEN){
+            logger.warn("mediator circuit breaker open. {}", reason);
+        }
+        openedAt = System.currentTimeMillis();
+        state = State.OPEN;
+        probing.set(false);
+    }
+
+    private void onResult(State permit, long startNanos, Throwable throwable) {
+        long costMillis = (System.nanoTime() - startNanos) / 1000000;
+        boolean failed = throwable != null && delegate.isMediatorFault(throwable);
+        boolean slow = costMillis >= slowCallMillis;
+        if(permit == State.HALF_OPEN){
+            if(failed || slow){
+                trip("probe " + (failed ? "failed. " + throwable.getMessage() : "slow, cost " + costMillis + "ms"));
+            }else{
+                stats.reset();
+                state = State.CLOSED;
+                probing.set(false);
+                logger.info("mediator circuit breaker closed.");
+            }
+            return;
+        }
+        int[] window = stats.record(failed, slow);
+        int calls = window[0];
+        if(calls >= MIN_CALLS){
+            if(window[1] * 100 >= failureRatePercent * calls){
+                trip("failure rate " + (window[1] * 100 / calls) + "% in " + calls + " calls");
+            }else if(window[2] * 100 >= failureRatePercent * calls){
+                trip("slow call rate " + (window[2] * 100 / calls) + "% in " + calls + " calls");
+            }
+        }
+    }
+
+    /**
+     * 只有协调中心本身的故障（连接、超时等）计入失败率，无效事务id、重复id等业务性失败不计入，由各实现判断
+     */
+    @Override
+    public boolean isMediatorFault(Throwable throwable) {
+        return delegate.isMediatorFault(throwable);
+    }
+
+    private MediatorUnavailableException unavailable(String action, String transactionId) {
+        return new MediatorUnavailableException("Mediator unavailable, transaction " + action + " rejected. id [" + transactionId + "]");
+    }
+
+    private CompletableFuture<Void> guard(String action, String transactionId, Supplier<CompletableFuture<Void>> call) {
+        final State permit = acquire();
+        if(permit == null){
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            future.completeExceptionally(unavailable(action, transactionId));
+            return future;
+        }
+        final long start = System.nanoTime();
+        CompletableFuture<Void> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            onResult(permit, start, e);
+            throw e;
+        }
+        return future.whenComplete(new BiConsumer<Void, Throwable>() {
+            @Override
+            public void accept(Void aVoid, Throwable throwable) {
+                onResult(permit, start, throwable);
+            }
+        });
+    }
+
+    private void guardSync(String action, String transactionId, Runnable call) {
+        State permit = acquire();
+        if(permit == null){
+            throw unavailable(action, transactionId);
+        }
+        long start = System.nanoTime();
+        try {
+            call.run();
+            onResult(permit, start, null);
+        } catch (RuntimeException e) {
+            onResult(permit, start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * 全局决议未能送达协调中心，记录待对账
+     */
+    private CompletableFuture<Void> decide(final String decision, final String transactionId, CompletableFuture<Void> future) {
+        return future.whenComplete(new BiConsumer<Void, Throwable>() {
+            @Override
+            public void accept(Void aVoid, Throwable throwable) {
+                if(throwable != null && (throwable instanceof MediatorUnavailableException || throwable.getCause() instanceof MediatorUnavailableException || delegate.isMediatorFault(throwable))){
+                    ReconciliationLog.record(transactionId, decision, throwable.getMessage());
+                }
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> startChainAsync(final String transactionId, final String group, final String peer, final int index, final String data) {
+        return guard("start", transactionId, new Supplier<CompletableFuture<Void>>() {
+            @Override
+            public CompletableFuture<Void> get() {
+                return delegate.startChainAsync(transactionId, group, peer, index, data);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> joinChainAsync(final String transactionId, final String group, final String peer, final int index, final String data) {
+        return guard("join", transactionId, new Supplier<CompletableFuture<Void>>() {
+            @Override
+            public CompletableFuture<Void> get() {
+                return delegate.joinChainAsync(transactionId, group, peer, index, data);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> joinChainBatchAsync(final String transactionId, final String group, final String peer, final int[] indexes, final String[] data) {
+        return guard("join", transactionId, new Supplier<CompletableFuture<Void>>() {
+            @Override
+            public CompletableFuture<Void> get() {
+                return delegate.joinChainBatchAsync(transactionId, group, peer, indexes, data);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> rollbackAsync(final String transactionId, final String group, final String peer, final String data) {
+        return decide("rollback", transactionId, guard("rollback", transactionId, new Supplier<CompletableFuture<Void>>() {
+            @Override
+            public CompletableFuture<Void> get() {
+                return delegate.rollbackAsync(transactionId, group, peer, data);
+            }
+        }));
+    }
+
+    @Override
+    public CompletableFuture<Void> commitAsync(final String transactionId, final String group, final String peer) {
+        return decide("commit", transactionId, guard("commit", transactionId, new Supplier<CompletableFuture<Void>>() {
+            @Override
+            public CompletableFuture<Void> get() {
+                return delegate.commitAsync(transactionId, group, peer);
+            }
+        }));
+    }
+
+    @Override
+    public CompletableFuture<Void> clearAsync(String transactionId) {
+        return delegate.clearAsync(transactionId);
+    }
+
+    @Override
+    public void startChain(final String transactionId, final String group, final String peer, final int index, final String data) {
+        guardSync("start", transactionId, new Runnable() {
+            @Override
+            public void run() {
+                delegate.startChain(transactionId, group, peer, index, data);
+            }
+        });
+    }
+
+    @Override
+    public void joinChain(final String transactionId, final String group, final String peer, final int index, final String data) {
+        guardSync("join", transactionId, new Runnable() {
+            @Override
+            public void run() {
+                delegate.joinChain(transactionId, group, peer, index, data);
+            }
+        });
+    }
+
+    @Override
+    public void rollback(String transactionId, String group, String peer, String data) {
+        await(rollbackAsync(transactionId, group, peer, data));
+    }
+
+    @Override
+    public void commit(String transactionId, String group, String peer) {
+        await(commitAsync(transactionId, group, peer));
+    }
+
+    private static void await(CompletableFuture<Void> future) {
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            if(e.getCause() instanceof RuntimeException){
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @Override
+    public boolean transactionExists(String transactionId) {
+        return delegate.transactionExists(transactionId);
+    }
+
+    @Override
+    public TransactionResult getResults(String transactionId) {
+        return delegate.getResults(transactionId);
+    }
+
+    @Override
+    public void registerMethods(String group, Collection<String> signatures) {
+        delegate.registerMethods(group, signatures);
+    }
+
+    @Override
+    public void addWatcher(MediatorWatcher watcher) {
+        delegate.addWatcher(watcher);
+    }
+
+    @Override
+    public void clear(String transactionId) {
+        delegate.clear(transactionId);
+    }
+
+    @Override
+    public boolean isConnected() {
+        return delegate.isConnected();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    @Override
+    public void init() {
+        delegate.init();
+    }
+
+    @Override
+    public String toString() {
+        return "CircuitBreaker[" + state + "]" + stats;
+    }
+
+    /**
+     * 按秒分桶的滚动窗口计数：请求数、失败数、慢请求数
+     */
+    static class RollingStats {
+
+        private final long[] seconds;
+
+        private final int[][] buckets;
+
+        RollingStats(int windowSeconds) {
+            this.seconds = new long[windowSeconds];
+            this.buckets = new int[windowSeconds][3];
+        }
+
+        /**
+         * @return 窗口内合计 {请求数, 失败数, 慢请求数}
+         */
+        synchronized int[] record(boolean failed, boolean slow) {
+            long now = System.currentTimeMillis() / 1000;
+            int index = (int) (now % seconds.length);
+            if(seconds[index] != now){
+                seconds[index] = now;
+                buckets[index][0] = 0;
+                buckets[index][1] = 0;
+                buckets[index][2] = 0;
+            }
+            buckets[index][0]++;
+            if(failed){
+                buckets[index][1]++;
+            }
+            if(slow){
+                buckets[index][2]++;
+            }
+            int[] total = new int[3];
+            for (int i = 0; i < seconds.length; i++) {
+                if(now - seconds[i] < seconds.length){
+                    total[0] += buckets[i][0];
+                    total[1] += buckets[i][1];
+                    total[2] += buckets[i][2];
+                }
+            }
+            return total;
+        }
+
+        synchronized void reset() {
+            for (int i = 0; i < seconds.length; i++) {
+                seconds[i] = 0;
+            }
+        }
+
+        @Override
+        public synchronized String toString() {
+            long now = System.currentTimeMillis() / 1000;
+            int[] total = new int[3];
+            for (int i = 0; i < seconds.length; i++) {
+                if(now - seconds[i] < seconds.length){
+                    total[0] += buckets[i][0];
+                    total[1] += buckets[i][1];
+                    total[2] += buckets[i][2];
+                }
+            }
+            return "{calls:" + total[0] + ", failures:" + total[1] + ", slow:" + total[2] + "}";
+        }
+    }
+}
@@ -1,9 +1,23 @@
 package net.ewant.rolling.transaction.concert;
 
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.TimeoutException;
+
 public interface MediatorClient {
 
     /**
-     * 加入事务链
+     * 发起新的事务链，并以发起方身份加入（链、状态、参与节点一次性创建）
+     * @param transactionId 事务id
+     * @param group 应用组标识
+     * @param peer 应用标识
+     * @param index 当前节点子链中的调用位置
+     * @param data
+     */
+    void startChain(String transactionId, String group, String peer, int index, String data);
+
+    /**
+     * 加入已存在的事务链，事务链不存在时抛出异常
      * @param transactionId 事务id
      * @param group 应用组标识
      * @param peer 应用标识
@@ -43,6 +57,13 @@ public interface MediatorClient {
      */
     TransactionResult getResults(String transactionId);
 
+    /**
+     * 登记应用组的事务方法签名，登记后事务链中可只传递方法id，不阻塞调用线程
+     * @param group 应用组标识
+     * @param signatures 方法签名
+     */
+    void registerMethods(String group, Collection<String> signatures);
+
     void addWatcher(MediatorWatcher watcher);
 
     void clear(String transactionId);
@@ -62,4 +83,22 @@ public interface MediatorClient {
      * 客户端初始化操作
      */
     void init();
+
+    /**
+     * 异常是否为协调中心本身的故障（连接断开、超时等），用于熔断统计；无效事务id、重复id等业务性失败返回false。
+     * 默认只识别IO异常与超时，各实现按自身的异常类型覆盖
+     * @param throwable 本客户端请求失败的异常
+     * @return
+     */
+    default boolean isMediatorFault(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()){
+            if(cause instanceof IOException || cause instanceof TimeoutException){
+                return true;
+            }
+            if(cause.getCause() == cause){
+                break;
+            }
+        }
+        return false;
+    }
 }
@@ -1,5 +1,14 @@
 package net.ewant.rolling.transaction.concert;
 
+/**
+ * 协调中心传输扩展点，通过 META-INF/services 注册，按 mediator 地址协议（zk、mem、jdbc...）选择实现
+ */
 public interface MediatorTransporter {
+
+    /**
+     * 支持的协议，对应 URL.getProtocol()
+     */
+    String getProtocol();
+
     MediatorClient connect(URL url);
 }
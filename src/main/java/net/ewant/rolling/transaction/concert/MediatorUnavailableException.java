@@ -0,0 +1,13 @@
+package net.ewant.rolling.transaction.concert;
+
+/**
+ * 协调中心不可用（断路器打开），请求未发出即失败
+ */
+public class MediatorUnavailableException extends IllegalStateException {
+
+    private static final long serialVersionUID = 1L;
+
+    public MediatorUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -1,5 +1,20 @@
 package net.ewant.rolling.transaction.concert;
 
 public interface MediatorWatcher {
+
+    /**
+     * @param transactionId
+     * @param data 全局提交/回滚信息；为null时表示事务状态已不存在（如断线期间已结束并被清理），决议未知
+     */
     void change(String transactionId, String data);
+
+    /**
+     * 本地是否仍持有该事务。协调客户端用于过滤共享监听（如整个状态根节点）收到的其他事务的事件，
+     * 由上下文提供，协调客户端不直接依赖上下文状态
+     * @param transactionId
+     * @return 默认 true，即不过滤
+     */
+    default boolean isWatching(String transactionId) {
+        return true;
+    }
 }
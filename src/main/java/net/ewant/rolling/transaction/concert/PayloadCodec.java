@@ -0,0 +1,378 @@
+package net.ewant.rolling.transaction.concert;
+
+import net.ewant.rolling.transaction.TransactionContext;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 协调中心节点数据的编解码。
+ * text 为原有的字符串格式；compact 为带版本号的二进制格式（变长整数、精简方法签名、方法id），
+ * 二进制数据以版本字节开头（小于0x20，不会与文本数据冲突），解码时两种格式都能识别。
+ * <pre>
+ * chain       : [version][1][varint len][group][varint len][peer][varlong startTime]
+ * participant : [version][2][varint methodId][varint len][signature]（methodId为0时携带签名）
+ * state       : [version][3][state]，回滚时追加 [varint methodId][varint len][signature][varint len][exception]
+ * </pre>
+ */
+public final class PayloadCodec {
+
+    public static final String FORMAT_KEY = "payload";
+
+    public static final String FORMAT_TEXT = "text";
+
+    public static final String FORMAT_COMPACT = "compact";
+
+    static final byte VERSION_1 = 0x01;
+
+    static final byte TYPE_CHAIN = 1;
+
+    static final byte TYPE_PARTICIPANT = 2;
+
+    static final byte TYPE_STATE = 3;
+
+    static final byte STATE_PENDING = 0;
+
+    static final byte STATE_COMMIT = 1;
+
+    static final byte STATE_ROLLBACK = 2;
+
+    public static final String STATE_PENDING_TEXT = "0";
+
+    public static final String STATE_COMMIT_TEXT = "1";
+
+    private static final byte[] EMPTY = new byte[0];
+
+    /**
+     * 组、应用标识数量有限，解码时复用同一实例
+     */
+    private static final ConcurrentMap<String, String> INTERNED = new ConcurrentHashMap<>();
+
+    private static final int MAX_INTERNED = 4096;
+
+    private final boolean compact;
+
+    public PayloadCodec(boolean compact) {
+        this.compact = compact;
+    }
+
+    public static PayloadCodec forUrl(URL url) {
+        return new PayloadCodec(FORMAT_COMPACT.equals(url.getParameter(FORMAT_KEY, FORMAT_TEXT)));
+    }
+
+    public boolean isCompact() {
+        return compact;
+    }
+
+    public byte[] encodeChain(String group, String peer, long startTime) {
+        if(!compact){
+            return bytes(group + TransactionContext.FIELD_SPLIT_CHAR + peer + TransactionContext.FIELD_SPLIT_CHAR + startTime);
+        }
+        Writer writer = new Writer(16 + group.length() + peer.length());
+        writer.writeByte(VERSION_1);
+        writer.writeByte(TYPE_CHAIN);
+        writer.writeString(group);
+        writer.writeString(peer);
+        writer.writeVarLong(startTime);
+        return writer.toByteArray();
+    }
+
+    /**
+     * @param methodId 方法id，0表示未注册，携带签名
+     * @param signature 方法签名
+     */
+    public byte[] encodeParticipant(int methodId, String signature) {
+        if(!compact){
+            return bytes(signature);
+        }
+        Writer writer = new Writer(8 + (methodId == 0 && signature != null ? signature.length() : 0));
+        writer.writeByte(VERSION_1);
+        writer.writeByte(TYPE_PARTICIPANT);
+        writeMethod(writer, methodId, signature);
+        return writer.toByteArray();
+    }
+
+    public byte[] encodePending() {
+        return compact ? new byte[]{VERSION_1, TYPE_STATE, STATE_PENDING} : bytes(STATE_PENDING_TEXT);
+    }
+
+    public byte[] encodeCommit() {
+        return compact ? new byte[]{VERSION_1, TYPE_STATE, STATE_COMMIT} : bytes(STATE_COMMIT_TEXT);
+    }
+
+    /**
+     * @param data 回滚信息：方法签名|异常类名
+     */
+    public byte[] encodeRollback(String data) {
+        return encodeRollback(0, data);
+    }
+
+    /**
+     * @param methodId 方法id，大于0时不再携带签名
+     * @param data 回滚信息：方法签名|异常类名
+     */
+    public byte[] encodeRollback(int methodId, String data) {
+        if(data == null){
+            data = "";
+        }
+        if(!compact){
+            return bytes(data);
+        }
+        int split = data.indexOf(TransactionContext.FIELD_SPLIT_CHAR);
+        String signature = split < 0 ? data : data.substring(0, split);
+        String exception = split < 0 ? "" : data.substring(split + 1);
+        Writer writer = new Writer(12 + data.length());
+        writer.writeByte(VERSION_1);
+        writer.writeByte(TYPE_STATE);
+        writer.writeByte(STATE_ROLLBACK);
+        writeMethod(writer, methodId, signature);
+        writer.writeString(exception);
+        return writer.toByteArray();
+    }
+
+    private void writeMethod(Writer writer, int methodId, String signature) {
+        writer.writeVarLong(methodId);
+        if(methodId == 0){
+            writer.writeString(compactSignature(signature));
+        }
+    }
+
+    /**
+     * 去掉 Method.toString() 中的修饰符、返回值与throws声明，只保留 类名.方法名(参数类型)
+     */
+    public static String compactSignature(String signature) {
+        if(signature == null){
+            return "";
+        }
+        int paren = signature.indexOf('(');
+        if(paren < 0){
+            return signature;
+        }
+        int start = signature.lastIndexOf(' ', paren) + 1;
+        int end = signature.indexOf(')', paren);
+        return signature.substring(start, end < 0 ? signature.length() : end + 1);
+    }
+
+    /**
+     * 是否为二进制格式
+     */
+    public static boolean isBinary(byte[] data) {
+        return data != null && data.length > 1 && data[0] == VERSION_1;
+    }
+
+    /**
+     * 将状态节点数据解码为文本格式："0" 执行中，"1" 全局提交，其他为回滚信息（方法签名|异常类名）
+     * @param data
+     * @param resolver 方法id解析，可为null
+     */
+    public static String decodeState(byte[] data, MethodResolver resolver) {
+        if(data == null){
+            return null;
+        }
+        if(!isBinary(data)){
+            return new String(data, StandardCharsets.UTF_8);
+        }
+        Reader reader = new Reader(data);
+        expectType(reader, TYPE_STATE);
+        byte state = reader.readByte();
+        if(state == STATE_PENDING){
+            return STATE_PENDING_TEXT;
+        }
+        if(state == STATE_COMMIT){
+            return STATE_COMMIT_TEXT;
+        }
+        String signature = readMethod(reader, resolver);
+        String exception = reader.readString();
+        return exception.isEmpty() ? signature : signature + TransactionContext.FIELD_SPLIT_CHAR + exception;
+    }
+
+    public static String decodeState(byte[] data) {
+        return decodeState(data, null);
+    }
+
+    /**
+     * 解码参与节点数据为方法签名
+     */
+    public static String decodeParticipant(byte[] data, MethodResolver resolver) {
+        if(data == null){
+            return null;
+        }
+        if(!isBinary(data)){
+            return new String(data, StandardCharsets.UTF_8);
+        }
+        Reader reader = new Reader(data);
+        expectType(reader, TYPE_PARTICIPANT);
+        return readMethod(reader, resolver);
+    }
+
+    /**
+     * 解码事务链根节点数据
+     * @return [group, peer, startTime]
+     */
+    public static String[] decodeChain(byte[] data) {
+        if(data == null){
+            return null;
+        }
+        if(!isBinary(data)){
+            String text = new String(data, StandardCharsets.UTF_8);
+            String[] fields = text.split("\\" + TransactionContext.FIELD_SPLIT_CHAR);
+            return fields.length == 3 ? new String[]{intern(fields[0]), intern(fields[1]), fields[2]} : new String[]{text, "", "0"};
+        }
+        Reader reader = new Reader(data);
+        expectType(reader, TYPE_CHAIN);
+        String group = intern(reader.readString());
+        String peer = intern(reader.readString());
+        return new String[]{group, peer, String.valueOf(reader.readVarLong())};
+    }
+
+    /**
+     * 可读形式，用于日志、运维工具查看任意节点数据
+     */
+    public static String describe(byte[] data) {
+        if(data == null){
+            return "null";
+        }
+        if(!isBinary(data)){
+            return "text:" + new String(data, StandardCharsets.UTF_8);
+        }
+        try {
+            switch (data[1]){
+                case TYPE_CHAIN:
+                    return "chain:" + Arrays.toString(decodeChain(data));
+                case TYPE_PARTICIPANT:
+                    return "participant:" + decodeParticipant(data, null);
+                case TYPE_STATE:
+                    return "state:" + decodeState(data, null);
+                default:
+                    return "unknown:" + Arrays.toString(data);
+            }
+        } catch (IllegalArgumentException e) {
+            return "corrupt:" + Arrays.toString(data);
+        }
+    }
+
+    private static String readMethod(Reader reader, MethodResolver resolver) {
+        int methodId = (int) reader.readVarLong();
+        if(methodId == 0){
+            return reader.readString();
+        }
+        String signature = resolver == null ? null : resolver.resolve(methodId);
+        return signature == null ? "#" + methodId : signature;
+    }
+
+    private static void expectType(Reader reader, byte type) {
+        reader.readByte();
+        byte actual = reader.readByte();
+        if(actual != type){
+            throw new IllegalArgumentException("Unexpected payload type " + actual + ", expected " + type);
+        }
+    }
+
+    private static String intern(String value) {
+        String interned = INTERNED.get(value);
+        if(interned != null){
+            return interned;
+        }
+        if(INTERNED.size() >= MAX_INTERNED){
+            return value;
+        }
+        interned = INTERNED.putIfAbsent(value, value);
+        return interned == null ? value : interned;
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? EMPTY : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 方法id到方法签名的解析
+     */
+    public interface MethodResolver {
+        String resolve(int methodId);
+    }
+
+    static final class Writer {
+
+        private byte[] buffer;
+
+        private int position;
+
+        Writer(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        void writeByte(int b) {
+            ensure(1);
+            buffer[position++] = (byte) b;
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0){
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeString(String value) {
+            byte[] bytes = bytes(value);
+            writeVarLong(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        private void ensure(int size) {
+            if(position + size > buffer.length){
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, position + size));
+            }
+        }
+
+        byte[] toByteArray() {
+            return position == buffer.length ? buffer : Arrays.copyOf(buffer, position);
+        }
+    }
+
+    static final class Reader {
+
+        private final byte[] buffer;
+
+        private int position;
+
+        Reader(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        byte readByte() {
+            if(position >= buffer.length){
+                throw new IllegalArgumentException("Payload truncated");
+            }
+            return buffer[position++];
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if((b & 0x80) == 0){
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        String readString() {
+            int length = (int) readVarLong();
+            if(length < 0 || position + length > buffer.length){
+                throw new IllegalArgumentException("Payload truncated");
+            }
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
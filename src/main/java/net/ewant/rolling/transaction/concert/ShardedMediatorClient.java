@@ -0,0 +1,195 @@
+package net.ewant.rolling.transaction.concert;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 多协调集群路由。事务id按一致性哈希映射到集群，所有参与者只凭事务id即可定位到同一集群，
+ * 增加集群即可水平扩展全局事务的协调吞吐。
+ * 注意：路由只由事务id与当前集群列表决定，不区分新旧事务。增减集群后，环上被重新映射区间内的在途事务
+ * （约 1/集群数）会被路由到新集群，那里没有它们的事务链，之后的加入因事务id无效而失败，提交、回滚通知也不会送达。
+ * 调整集群前必须等在途事务全部结束（排空），且所有节点同时切换为同一份集群列表
+ */
+public class ShardedMediatorClient implements AsyncMediatorClient {
+
+    /**
+     * 每个集群在哈希环上的虚拟节点数
+     */
+    private static final int VIRTUAL_NODES = 160;
+
+    private final List<AsyncMediatorClient> clients;
+
+    private final TreeMap<Long, AsyncMediatorClient> ring = new TreeMap<>();
+
+    /**
+     * @param ensembles 集群标识（各节点必须一致，通常为排序后的集群地址）到客户端的映射
+     */
+    public ShardedMediatorClient(Map<String, AsyncMediatorClient> ensembles) {
+        if(ensembles.isEmpty()){
+            throw new IllegalArgumentException("No mediator ensemble");
+        }
+        this.clients = new ArrayList<>(ensembles.values());
+        for (Map.Entry<String, AsyncMediatorClient> entry : ensembles.entrySet()){
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                ring.put(hash(entry.getKey() + "#" + i), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * 集群标识：地址（含备份地址）排序后拼接，与配置中的书写顺序无关
+     */
+    public static String ensembleKey(URL url) {
+        String[] addresses = url.getBackupAddress().split(",");
+        Arrays.sort(addresses);
+        StringBuilder builder = new StringBuilder(url.getProtocol()).append("://");
+        for (int i = 0; i < addresses.length; i++) {
+            if(i > 0){
+                builder.append(',');
+            }
+            builder.append(addresses[i].trim());
+        }
+        return builder.toString();
+    }
+
+    AsyncMediatorClient route(String transactionId) {
+        Map.Entry<Long, AsyncMediatorClient> entry = ring.ceilingEntry(hash(transactionId));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    /**
+     * 64位 FNV-1a 加 murmur3 末尾混合，跨JVM结果一致
+     */
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= (h >>> 33);
+        h *= 0xff51afd7ed558ccdL;
+        h ^= (h >>> 33);
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= (h >>> 33);
+        return h;
+    }
+
+    @Override
+    public CompletableFuture<Void> startChainAsync(String transactionId, String group, String peer, int index, String data) {
+        return route(transactionId).startChainAsync(transactionId, group, peer, index, data);
+    }
+
+    @Override
+    public CompletableFuture<Void> joinChainAsync(String transactionId, String group, String peer, int index, String data) {
+        return route(transactionId).joinChainAsync(transactionId, group, peer, index, data);
+    }
+
+    @Override
+    public CompletableFuture<Void> joinChainBatchAsync(String transactionId, String group, String peer, int[] indexes, String[] data) {
+        return route(transactionId).joinChainBatchAsync(transactionId, group, peer, indexes, data);
+    }
+
+    @Override
+    public CompletableFuture<Void> rollbackAsync(String transactionId, String group, String peer, String data) {
+        return route(transactionId).rollbackAsync(transactionId, group, peer, data);
+    }
+
+    @Override
+    public CompletableFuture<Void> commitAsync(String transactionId, String group, String peer) {
+        return route(transactionId).commitAsync(transactionId, group, peer);
+    }
+
+    @Override
+    public CompletableFuture<Void> clearAsync(String transactionId) {
+        return route(transactionId).clearAsync(transactionId);
+    }
+
+    @Override
+    public void startChain(String transactionId, String group, String peer, int index, String data) {
+        route(transactionId).startChain(transactionId, group, peer, index, data);
+    }
+
+    @Override
+    public void joinChain(String transactionId, String group, String peer, int index, String data) {
+        route(transactionId).joinChain(transactionId, group, peer, index, data);
+    }
+
+    @Override
+    public void rollback(String transactionId, String group, String peer, String data) {
+        route(transactionId).rollback(transactionId, group, peer, data);
+    }
+
+    @Override
+    public void commit(String transactionId, String group, String peer) {
+        route(transactionId).commit(transactionId, group, peer);
+    }
+
+    @Override
+    public boolean transactionExists(String transactionId) {
+        return route(transactionId).transactionExists(transactionId);
+    }
+
+    @Override
+    public TransactionResult getResults(String transactionId) {
+        return route(transactionId).getResults(transactionId);
+    }
+
+    @Override
+    public void registerMethods(String group, Collection<String> signatures) {
+        for (AsyncMediatorClient client : clients){
+            client.registerMethods(group, signatures);
+        }
+    }
+
+    @Override
+    public void addWatcher(MediatorWatcher watcher) {
+        for (AsyncMediatorClient client : clients){
+            client.addWatcher(watcher);
+        }
+    }
+
+    @Override
+    public void clear(String transactionId) {
+        route(transactionId).clear(transactionId);
+    }
+
+    /**
+     * 所有集群均已连接
+     */
+    @Override
+    public boolean isConnected() {
+        for (AsyncMediatorClient client : clients){
+            if(!client.isConnected()){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        for (AsyncMediatorClient client : clients){
+            client.close();
+        }
+    }
+
+    @Override
+    public void init() {
+        for (AsyncMediatorClient client : clients){
+            client.init();
+        }
+    }
+
+    /**
+     * 任一集群的客户端判定为故障即为故障
+     */
+    @Override
+    public boolean isMediatorFault(Throwable throwable) {
+        for (AsyncMediatorClient client : clients){
+            if(client.isMediatorFault(throwable)){
+                return true;
+            }
+        }
+        return false;
+    }
+}
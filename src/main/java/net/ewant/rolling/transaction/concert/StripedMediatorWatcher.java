@@ -0,0 +1,213 @@
+package net.ewant.rolling.transaction.concert;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 将全局提交/回滚通知从协调客户端事件线程转交给有界线程池处理。
+ * 按事务id分片：同一事务的通知在同一线程上按序执行，不同事务在多个线程上并行，单个耗时的回滚处理不会阻塞其他事务。
+ * 分片队列不限长度：通知在协调客户端事件线程上提交，阻塞会连同连接状态、重连处理一起停滞，也不能丢弃（回滚方法不会被调用）；
+ * 积压超过告警阈值时记录告警与积压指标
+ */
+public class StripedMediatorWatcher implements MediatorWatcher {
+
+    private static Logger logger = LoggerFactory.getLogger(StripedMediatorWatcher.class);
+
+    private final MediatorWatcher delegate;
+
+    private final ThreadPoolExecutor[] stripes;
+
+    private final LongAdder dispatched = new LongAdder();
+
+    private final LongAdder handled = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    private final LongAdder handleNanos = new LongAdder();
+
+    private final LongAdder waitNanos = new LongAdder();
+
+    private final AtomicLong maxHandleNanos = new AtomicLong();
+
+    /**
+     * 提交时分片积压超过告警阈值的次数
+     */
+    private final LongAdder backlogged = new LongAdder();
+
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+    private final int backlogThreshold;
+
+    /**
+     * @param delegate 实际的通知处理
+     * @param threads 分片（线程）数
+     * @param backlogThreshold 每个分片的积压告警阈值，超过时记录告警（不阻塞、不丢弃）
+     */
+    public StripedMediatorWatcher(MediatorWatcher delegate, int threads, int backlogThreshold) {
+        if(threads <= 0 || backlogThreshold <= 0){
+            throw new IllegalArgumentException("dispatch threads and backlog threshold must be positive");
+        }
+        this.delegate = delegate;
+        this.backlogThreshold = backlogThreshold;
+        this.stripes = new ThreadPoolExecutor[threads];
+        for (int i = 0; i < threads; i++) {
+            stripes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new DispatchThreadFactory(i));
+        }
+    }
+
+    @Override
+    public boolean isWatching(String transactionId) {
+        return delegate.isWatching(transactionId);
+    }
+
+    @Override
+    public void change(final String transactionId, final String data) {
+        final long enqueueTime = System.nanoTime();
+        dispatched.increment();
+        int stripe = stripe(transactionId);
+        ThreadPoolExecutor executor = stripes[stripe];
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                waitNanos.add(start - enqueueTime);
+                try {
+                    delegate.change(transactionId, data);
+                } catch (Throwable e) {
+                    failed.increment();
+                    logger.error("global transaction [" + transactionId + "] notification handle failed", e);
+                } finally {
+                    long cost = System.nanoTime() - start;
+                    handleNanos.add(cost);
+                    handled.increment();
+                    long max;
+                    while (cost > (max = maxHandleNanos.get()) && !maxHandleNanos.compareAndSet(max, cost)){
+                    }
+                }
+            }
+        });
+        int depth = executor.getQueue().size();
+        int maxDepth;
+        while (depth > (maxDepth = maxQueueDepth.get()) && !maxQueueDepth.compareAndSet(maxDepth, depth)){
+        }
+        if(depth > backlogThreshold){
+            backlogged.increment();
+            if(depth % backlogThreshold == 1){
+                // 每积压一个阈值告警一次
+                logger.warn("dispatch stripe {} backlog {} exceeds threshold {}, slow notification handling. {}", stripe, depth, backlogThreshold, this);
+            }
+        }
+    }
+
+    private int stripe(String transactionId) {
+        int h = transactionId == null ? 0 : transactionId.hashCode();
+        h ^= (h >>> 16);
+        return (h & Integer.MAX_VALUE) % stripes.length;
+    }
+
+    /**
+     * 所有分片排队中的通知数
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (ThreadPoolExecutor stripe : stripes){
+            depth += stripe.getQueue().size();
+        }
+        return depth;
+    }
+
+    /**
+     * 各分片排队中的通知数
+     */
+    public int[] getStripeQueueDepths() {
+        int[] depths = new int[stripes.length];
+        for (int i = 0; i < stripes.length; i++) {
+            depths[i] = stripes[i].getQueue().size();
+        }
+        return depths;
+    }
+
+    /**
+     * 分片队列曾达到的最大积压
+     */
+    public int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    /**
+     * 提交时分片积压超过告警阈值的次数
+     */
+    public long getBackloggedCount() {
+        return backlogged.sum();
+    }
+
+    public long getDispatchedCount() {
+        return dispatched.sum();
+    }
+
+    public long getHandledCount() {
+        return handled.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    /**
+     * 通知处理平均耗时（微秒）
+     */
+    public long getAverageHandleMicros() {
+        long count = handled.sum();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(handleNanos.sum() / count);
+    }
+
+    /**
+     * 通知处理最大耗时（微秒）
+     */
+    public long getMaxHandleMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxHandleNanos.get());
+    }
+
+    /**
+     * 通知平均排队时间（微秒）
+     */
+    public long getAverageWaitMicros() {
+        long count = handled.sum();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(waitNanos.sum() / count);
+    }
+
+    public void shutdown() {
+        for (ThreadPoolExecutor stripe : stripes){
+            stripe.shutdown();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "StripedMediatorWatcher{stripes=" + stripes.length + ", queueDepth=" + getQueueDepth() + ", maxQueueDepth=" + getMaxQueueDepth() + ", backlogged=" + getBackloggedCount() + ", dispatched=" + getDispatchedCount() + ", handled=" + getHandledCount() + ", failed=" + getFailedCount()
+                + ", avgHandleMicros=" + getAverageHandleMicros() + ", maxHandleMicros=" + getMaxHandleMicros() + ", avgWaitMicros=" + getAverageWaitMicros() + "}";
+    }
+
+    static class DispatchThreadFactory implements ThreadFactory {
+
+        private final int stripe;
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        DispatchThreadFactory(int stripe) {
+            this.stripe = stripe;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "rolling-tx-dispatch-" + stripe + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
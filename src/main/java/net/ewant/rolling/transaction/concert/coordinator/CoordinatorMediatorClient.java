@@ -0,0 +1,446 @@
+package net.ewant.rolling.transaction.concert.coordinator;
+
+import net.ewant.rolling.transaction.TransactionContext;
+import net.ewant.rolling.transaction.concert.*;
+import net.ewant.rolling.transaction.concert.coordinator.CoordinatorProtocol.FrameWriter;
+import net.ewant.rolling.utils.HashedTimingWheel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 协调服务客户端，rtx://host:port?backup=host2:port。
+ * 整个JVM只使用一条连接，请求无需等待上一个响应即可发送（按请求id匹配响应），
+ * 所有事务的状态订阅复用该连接，由服务端推送；断线后依次尝试备用地址重连并重新订阅未结束的事务
+ */
+public class CoordinatorMediatorClient implements AsyncMediatorClient {
+
+    private static Logger logger = LoggerFactory.getLogger(CoordinatorMediatorClient.class);
+
+    public static final String CONNECT_TIMEOUT_KEY = "connectTimeout";
+
+    public static final String REQUEST_TIMEOUT_KEY = "requestTimeout";
+
+    private final URL url;
+
+    private final List<InetSocketAddress> addresses = new ArrayList<>();
+
+    private final int connectTimeout;
+
+    /**
+     * 单个请求等待响应的最长时间，服务端停顿时请求超时失败，不会一直阻塞到连接断开
+     */
+    private final long requestTimeout;
+
+    private final HashedTimingWheel timer;
+
+    private final AtomicInteger requestIds = new AtomicInteger();
+
+    private final ConcurrentMap<Integer, CompletableFuture<ByteBuffer>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * 本节点订阅的未结束事务
+     */
+    private final ConcurrentMap<String, Boolean> watched = new ConcurrentHashMap<>();
+
+    private final Object writeLock = new Object();
+
+    private final Thread reader;
+
+    private volatile SocketChannel channel;
+
+    private volatile MediatorWatcher listener;
+
+    private volatile boolean closed;
+
+    private int addressIndex;
+
+    public CoordinatorMediatorClient(URL url) {
+        this.url = url;
+        this.connectTimeout = url.getParameter(CONNECT_TIMEOUT_KEY, 5000);
+        this.requestTimeout = url.getParameter(REQUEST_TIMEOUT_KEY, 10000L);
+        this.timer = new HashedTimingWheel("rolling-tx-coordinator-timeout", 100, 512);
+        for (URL address : url.getBackupUrls()){
+            addresses.add(new InetSocketAddress(address.getHost(), address.getPort() > 0 ? address.getPort() : CoordinatorServer.DEFAULT_PORT));
+        }
+        try {
+            connect();
+        } catch (IOException e) {
+            logger.warn("coordinator {} connect failed, retry in background. {}", url.getAddress(), e.getMessage());
+        }
+        this.reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                receive();
+            }
+        }, "rolling-tx-coordinator-client");
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    private void connect() throws IOException {
+        IOException failure = null;
+        for (int i = 0; i < addresses.size(); i++){
+            InetSocketAddress address = addresses.get((addressIndex + i) % addresses.size());
+            SocketChannel socketChannel = SocketChannel.open();
+            try {
+                socketChannel.socket().setTcpNoDelay(true);
+                socketChannel.socket().connect(address, connectTimeout);
+                addressIndex = (addressIndex + i) % addresses.size();
+                channel = socketChannel;
+                return;
+            } catch (IOException e) {
+                socketChannel.close();
+                failure = e;
+            }
+        }
+        throw failure;
+    }
+
+    private void receive() {
+        ByteBuffer header = ByteBuffer.allocate(CoordinatorProtocol.HEADER_LENGTH);
+        long backoff = 100;
+        while (!closed){
+            SocketChannel current = channel;
+            try {
+                if(current == null){
+                    connect();
+                    current = channel;
+                    backoff = 100;
+                    resubscribe();
+                }
+                header.clear();
+                readFully(current, header);
+                int length = header.getInt(0);
+                if(length < 5 || length > CoordinatorProtocol.MAX_FRAME_LENGTH){
+                    throw new IOException("Illegal frame length " + length);
+                }
+                ByteBuffer frame = ByteBuffer.allocate(length);
+                readFully(current, frame);
+                frame.flip();
+                byte op = frame.get();
+                int requestId = frame.getInt();
+                if(op == CoordinatorProtocol.EVENT){
+                    onEvent(CoordinatorProtocol.readString(frame), CoordinatorProtocol.readString(frame));
+                }else{
+                    CompletableFuture<ByteBuffer> future = pending.remove(requestId);
+                    if(future != null){
+                        future.complete(frame);
+                    }
+                }
+            } catch (IOException e) {
+                if(closed){
+                    break;
+                }
+                disconnected(current, e);
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    break;
+                }
+                backoff = Math.min(backoff * 2, 5000);
+            }
+        }
+    }
+
+    private static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()){
+            if(channel.read(buffer) < 0){
+                throw new EOFException("coordinator connection closed");
+            }
+        }
+    }
+
+    private void disconnected(SocketChannel current, IOException cause) {
+        if(current != null){
+            logger.warn("coordinator {} connection lost. {}", current.socket().getRemoteSocketAddress(), cause.getMessage());
+            try {
+                current.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+        channel = null;
+        UnavailableException failure = new UnavailableException("Coordinator connection lost. " + url.getAddress(), cause);
+        for (Integer requestId : pending.keySet()){
+            CompletableFuture<ByteBuffer> future = pending.remove(requestId);
+            if(future != null){
+                future.completeExceptionally(failure);
+            }
+        }
+    }
+
+    /**
+     * 重连后重新订阅；服务端若已有结果会立即推送，事务已不存在则不再等待
+     */
+    private void resubscribe() {
+        for (final String transactionId : watched.keySet()){
+            request(new FrameWriter(CoordinatorProtocol.SUBSCRIBE, nextRequestId()).writeString(transactionId)).whenComplete(new java.util.function.BiConsumer<ByteBuffer, Throwable>() {
+                @Override
+                public void accept(ByteBuffer response, Throwable throwable) {
+                    if(throwable == null && response.get() == 0){
+                        logger.warn("transaction [{}] not found on coordinator after reconnect.", transactionId);
+                        onEvent(transactionId, null);
+                    }
+                }
+            });
+        }
+    }
+
+    private void onEvent(String transactionId, String data) {
+        MediatorWatcher watcher = listener;
+        if(watched.remove(transactionId) != null && watcher != null){
+            try {
+                watcher.change(transactionId, data);
+            } catch (RuntimeException e) {
+                logger.error("transaction [{}] state change handle failed. {}", transactionId, e.getMessage());
+            }
+        }
+    }
+
+    private int nextRequestId() {
+        int requestId = requestIds.incrementAndGet();
+        return requestId == 0 ? requestIds.incrementAndGet() : requestId;
+    }
+
+    /**
+     * 发送请求，返回响应负载（已跳过帧头与状态字节），状态为错误时异常完成
+     */
+    private CompletableFuture<ByteBuffer> request(FrameWriter frame) {
+        ByteBuffer buffer = frame.toBuffer();
+        final int requestId = buffer.getInt(CoordinatorProtocol.HEADER_LENGTH + 1);
+        final CompletableFuture<ByteBuffer> response = new CompletableFuture<>();
+        SocketChannel current = channel;
+        if(current == null || closed){
+            response.completeExceptionally(new UnavailableException("Coordinator not connected. " + url.getAddress(), null));
+            return response;
+        }
+        pending.put(requestId, response);
+        try {
+            synchronized (writeLock){
+                while (buffer.hasRemaining()){
+                    current.write(buffer);
+                }
+            }
+        } catch (IOException e) {
+            pending.remove(requestId);
+            response.completeExceptionally(new UnavailableException("Coordinator request failed. " + url.getAddress(), e));
+            try {
+                current.close();
+            } catch (IOException ignore) {
+                // 读线程会感知并重连
+            }
+            return response;
+        }
+        if(requestTimeout > 0){
+            final HashedTimingWheel.Timeout timeout = timer.newTimeout(new Runnable() {
+                @Override
+                public void run() {
+                    // 超时后到达的响应找不到对应请求，直接丢弃
+                    if(pending.remove(requestId, response)){
+                        response.completeExceptionally(new UnavailableException("Coordinator request timeout after " + requestTimeout + "ms. " + url.getAddress(), null));
+                    }
+                }
+            }, requestTimeout);
+            response.whenComplete(new java.util.function.BiConsumer<ByteBuffer, Throwable>() {
+                @Override
+                public void accept(ByteBuffer frame, Throwable throwable) {
+                    timeout.cancel();
+                }
+            });
+        }
+        return response.thenApply(new java.util.function.Function<ByteBuffer, ByteBuffer>() {
+            @Override
+            public ByteBuffer apply(ByteBuffer frame) {
+                if(frame.get() == CoordinatorProtocol.STATUS_ERROR){
+                    throw new IllegalStateException(CoordinatorProtocol.readString(frame));
+                }
+                return frame;
+            }
+        });
+    }
+
+    private static CompletableFuture<Void> discard(CompletableFuture<ByteBuffer> response) {
+        return response.thenApply(new java.util.function.Function<ByteBuffer, Void>() {
+            @Override
+            public Void apply(ByteBuffer frame) {
+                return null;
+            }
+        });
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof RuntimeException){
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private CompletableFuture<Void> enlist(byte op, final String transactionId, String group, String peer, int index, String data) {
+        watched.put(transactionId, Boolean.TRUE);
+        String node = group + TransactionContext.NODE_SPLIT_CHAR + peer + TransactionContext.NODE_SPLIT_CHAR + index;
+        CompletableFuture<Void> future = discard(request(new FrameWriter(op, nextRequestId()).writeString(transactionId).writeString(group).writeString(peer).writeString(node).writeString(data)));
+        future.whenComplete(new java.util.function.BiConsumer<Void, Throwable>() {
+            @Override
+            public void accept(Void result, Throwable throwable) {
+                if(throwable != null){
+                    watched.remove(transactionId);
+                }
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<Void> startChainAsync(String transactionId, String group, String peer, int index, String data) {
+        return enlist(CoordinatorProtocol.START, transactionId, group, peer, index, data);
+    }
+
+    @Override
+    public CompletableFuture<Void> joinChainAsync(String transactionId, String group, String peer, int index, String data) {
+        return enlist(CoordinatorProtocol.JOIN, transactionId, group, peer, index, data);
+    }
+
+    @Override
+    public CompletableFuture<Void> rollbackAsync(String transactionId, String group, String peer, String data) {
+        return discard(request(new FrameWriter(CoordinatorProtocol.DECIDE, nextRequestId()).writeString(transactionId).writeString(data == null ? "" : data)));
+    }
+
+    @Override
+    public CompletableFuture<Void> commitAsync(String transactionId, String group, String peer) {
+        return discard(request(new FrameWriter(CoordinatorProtocol.DECIDE, nextRequestId()).writeString(transactionId).writeString(PayloadCodec.STATE_COMMIT_TEXT)));
+    }
+
+    @Override
+    public CompletableFuture<Void> clearAsync(String transactionId) {
+        watched.remove(transactionId);
+        return discard(request(new FrameWriter(CoordinatorProtocol.CLEAR, nextRequestId()).writeString(transactionId)));
+    }
+
+    @Override
+    public void startChain(String transactionId, String group, String peer, int index, String data) {
+        await(startChainAsync(transactionId, group, peer, index, data));
+    }
+
+    @Override
+    public void joinChain(String transactionId, String group, String peer, int index, String data) {
+        await(joinChainAsync(transactionId, group, peer, index, data));
+    }
+
+    @Override
+    public void rollback(String transactionId, String group, String peer, String data) {
+        await(rollbackAsync(transactionId, group, peer, data));
+    }
+
+    @Override
+    public void commit(String transactionId, String group, String peer) {
+        await(commitAsync(transactionId, group, peer));
+    }
+
+    @Override
+    public void clear(String transactionId) {
+        await(clearAsync(transactionId));
+    }
+
+    @Override
+    public boolean transactionExists(String transactionId) {
+        return await(request(new FrameWriter(CoordinatorProtocol.EXISTS, nextRequestId()).writeString(transactionId))).get() == 1;
+    }
+
+    @Override
+    public TransactionResult getResults(String transactionId) {
+        ByteBuffer response = await(request(new FrameWriter(CoordinatorProtocol.RESULTS, nextRequestId()).writeString(transactionId)));
+        if(response.get() == 0){
+            return null;
+        }
+        String state = CoordinatorProtocol.readString(response);
+        long startTime = response.getLong();
+        long endTime = response.getLong();
+        int size = response.getInt();
+        Map<String, String> executeChain = new TreeMap<>();
+        for (int i = 0; i < size; i++){
+            executeChain.put(CoordinatorProtocol.readString(response), CoordinatorProtocol.readString(response));
+        }
+        boolean rollback = !PayloadCodec.STATE_PENDING_TEXT.equals(state) && !PayloadCodec.STATE_COMMIT_TEXT.equals(state);
+        TransactionResult result = new TransactionResult(transactionId, rollback ? state : null, executeChain);
+        result.setStartTime(startTime);
+        result.setEndTime(endTime);
+        return result;
+    }
+
+    @Override
+    public void registerMethods(String group, Collection<String> signatures) {
+        // 服务端直接保存签名，无需字典
+    }
+
+    @Override
+    public void addWatcher(MediatorWatcher watcher) {
+        this.listener = watcher;
+    }
+
+    @Override
+    public boolean isConnected() {
+        SocketChannel current = channel;
+        return current != null && current.isConnected();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        SocketChannel current = channel;
+        if(current != null){
+            try {
+                current.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+        reader.interrupt();
+        timer.stop();
+    }
+
+    @Override
+    public void init() {
+    }
+
+    /**
+     * 连接断开、未连接、请求超时为协调服务故障；服务端返回的错误（无效、重复的事务id）为事务本身的问题
+     */
+    @Override
+    public boolean isMediatorFault(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null && cause.getCause() != cause; cause = cause.getCause()){
+            if(cause instanceof UnavailableException){
+                return true;
+            }
+        }
+        return AsyncMediatorClient.super.isMediatorFault(throwable);
+    }
+
+    /**
+     * 协调服务不可达或无响应
+     */
+    static class UnavailableException extends IllegalStateException {
+
+        private static final long serialVersionUID = 1L;
+
+        UnavailableException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package net.ewant.rolling.transaction.concert.coordinator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 协调服务二进制协议。
+ * 帧格式：[int 长度][byte 操作][int 请求id][负载]，长度不含自身4字节；
+ * 字符串为 [int 字节数（-1 表示null）][UTF-8]。
+ * 请求按请求id匹配响应，同一连接可连续发送多个请求而无需等待（pipelining）；
+ * 服务端推送的状态变更使用请求id 0
+ */
+final class CoordinatorProtocol {
+
+    static final byte START = 1;
+
+    static final byte JOIN = 2;
+
+    static final byte DECIDE = 3;
+
+    static final byte CLEAR = 4;
+
+    static final byte EXISTS = 5;
+
+    static final byte RESULTS = 6;
+
+    static final byte SUBSCRIBE = 7;
+
+    static final byte RESPONSE = 0x40;
+
+    static final byte EVENT = 0x41;
+
+    static final byte STATUS_OK = 0;
+
+    static final byte STATUS_ERROR = 1;
+
+    static final int HEADER_LENGTH = 4;
+
+    static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+    private CoordinatorProtocol() {
+    }
+
+    /**
+     * 帧构造器，写完负载后通过 toBuffer 得到可直接发送的帧
+     */
+    static class FrameWriter {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        FrameWriter(byte op, int requestId) {
+            try {
+                out.writeInt(0);
+                out.writeByte(op);
+                out.writeInt(requestId);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        FrameWriter writeString(String value) {
+            try {
+                if(value == null){
+                    out.writeInt(-1);
+                }else{
+                    byte[] data = value.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(data.length);
+                    out.write(data);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return this;
+        }
+
+        FrameWriter writeLong(long value) {
+            try {
+                out.writeLong(value);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return this;
+        }
+
+        FrameWriter writeInt(int value) {
+            try {
+                out.writeInt(value);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return this;
+        }
+
+        FrameWriter writeByte(int value) {
+            try {
+                out.writeByte(value);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return this;
+        }
+
+        ByteBuffer toBuffer() {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            buffer.putInt(0, buffer.capacity() - HEADER_LENGTH);
+            return buffer;
+        }
+    }
+
+    static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if(length < 0){
+            return null;
+        }
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
@@ -0,0 +1,511 @@
+package net.ewant.rolling.transaction.concert.coordinator;
+
+import net.ewant.rolling.transaction.concert.PayloadCodec;
+import net.ewant.rolling.transaction.concert.coordinator.CoordinatorProtocol.FrameWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * 独立的轻量协调服务。单线程NIO事件循环处理所有连接，事务状态保存在内存中，
+ * 所有变更先追加到日志，每轮事件循环统一刷盘一次后再回复客户端（组提交）。
+ * 每个连接可订阅任意多个事务，提交/回滚时服务端主动推送给所有订阅连接。
+ * 启动时回放日志并压缩为仅包含未清理事务的新日志。
+ *
+ * 启动：java -cp ... net.ewant.rolling.transaction.concert.coordinator.CoordinatorServer [port] [logFile]
+ */
+public class CoordinatorServer {
+
+    private static Logger logger = LoggerFactory.getLogger(CoordinatorServer.class);
+
+    public static final int DEFAULT_PORT = 7070;
+
+    private final InetSocketAddress address;
+
+    private final File logFile;
+
+    private final Map<String, Transaction> transactions = new HashMap<>();
+
+    private final List<ByteBuffer> pendingLog = new ArrayList<>();
+
+    private final Set<Connection> pendingWrite = new LinkedHashSet<>();
+
+    private FileChannel log;
+
+    private Selector selector;
+
+    private ServerSocketChannel serverChannel;
+
+    private Thread eventLoop;
+
+    private volatile boolean running;
+
+    public CoordinatorServer(InetSocketAddress address, File logFile) {
+        this.address = address;
+        this.logFile = logFile;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        File logFile = new File(args.length > 1 ? args[1] : "rolling-tx-coordinator.log");
+        final CoordinatorServer server = new CoordinatorServer(new InetSocketAddress(port), logFile);
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                server.stop();
+            }
+        }));
+        logger.info("rolling-tx coordinator started. port: {}, log: {}, transactions: {}", port, logFile.getAbsolutePath(), server.transactions.size());
+    }
+
+    public synchronized void start() throws IOException {
+        if(running){
+            return;
+        }
+        recover();
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.configureBlocking(false);
+        serverChannel.socket().setReuseAddress(true);
+        serverChannel.bind(address);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        eventLoop = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, "rolling-tx-coordinator");
+        eventLoop.start();
+    }
+
+    public synchronized void stop() {
+        if(!running){
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        try {
+            eventLoop.join(3000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    private void loop() {
+        try {
+            while (running){
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()){
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if(!key.isValid()){
+                            continue;
+                        }
+                        if(key.isAcceptable()){
+                            accept();
+                        }
+                        if(key.isValid() && key.isReadable()){
+                            read((Connection) key.attachment());
+                        }
+                        if(key.isValid() && key.isWritable()){
+                            pendingWrite.add((Connection) key.attachment());
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        if(key.attachment() != null){
+                            close((Connection) key.attachment());
+                        }
+                    }
+                }
+                flushLog();
+                flushConnections();
+            }
+        } catch (IOException e) {
+            logger.error("coordinator event loop failed. {}", e.getMessage(), e);
+        } finally {
+            shutdown();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if(channel == null){
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Connection connection = new Connection(channel);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+    }
+
+    private void read(Connection connection) throws IOException {
+        if(connection.channel.read(connection.in) < 0){
+            close(connection);
+            return;
+        }
+        ByteBuffer in = connection.in;
+        in.flip();
+        while (in.remaining() >= CoordinatorProtocol.HEADER_LENGTH){
+            int length = in.getInt(in.position());
+            if(length < 5 || length > CoordinatorProtocol.MAX_FRAME_LENGTH){
+                throw new IOException("Illegal frame length " + length);
+            }
+            if(in.remaining() < CoordinatorProtocol.HEADER_LENGTH + length){
+                if(in.capacity() < CoordinatorProtocol.HEADER_LENGTH + length){
+                    ByteBuffer larger = ByteBuffer.allocate(CoordinatorProtocol.HEADER_LENGTH + length);
+                    larger.put(in);
+                    connection.in = larger;
+                    return;
+                }
+                break;
+            }
+            in.getInt();
+            ByteBuffer frame = in.slice();
+            frame.limit(length);
+            in.position(in.position() + length);
+            handle(connection, frame);
+        }
+        in.compact();
+    }
+
+    private void handle(Connection connection, ByteBuffer frame) {
+        byte op = frame.get();
+        int requestId = frame.getInt();
+        String transactionId = CoordinatorProtocol.readString(frame);
+        Transaction transaction = transactions.get(transactionId);
+        long now = System.currentTimeMillis();
+        switch (op){
+            case CoordinatorProtocol.START: {
+                String group = CoordinatorProtocol.readString(frame);
+                String peer = CoordinatorProtocol.readString(frame);
+                String node = CoordinatorProtocol.readString(frame);
+                String data = CoordinatorProtocol.readString(frame);
+                if(transaction != null){
+                    error(connection, requestId, "Transaction start failed, duplicate id [" + transactionId + "] in chain");
+                    return;
+                }
+                transaction = new Transaction(group, peer, now);
+                transactions.put(transactionId, transaction);
+                appendLog(new FrameWriter(CoordinatorProtocol.START, 0).writeString(transactionId).writeString(group).writeString(peer).writeLong(now));
+                join(connection, transactionId, transaction, node, data);
+                ok(connection, requestId);
+                return;
+            }
+            case CoordinatorProtocol.JOIN: {
+                CoordinatorProtocol.readString(frame);
+                CoordinatorProtocol.readString(frame);
+                String node = CoordinatorProtocol.readString(frame);
+                String data = CoordinatorProtocol.readString(frame);
+                if(transaction == null){
+                    error(connection, requestId, "Transaction join failed, invalid id [" + transactionId + "] in chain");
+                    return;
+                }
+                join(connection, transactionId, transaction, node, data);
+                ok(connection, requestId);
+                if(!PayloadCodec.STATE_PENDING_TEXT.equals(transaction.state)){
+                    // 决议后才加入的参与方（如延迟注册）同样立即收到结果
+                    connection.send(new FrameWriter(CoordinatorProtocol.EVENT, 0).writeString(transactionId).writeString(transaction.state).toBuffer());
+                }
+                return;
+            }
+            case CoordinatorProtocol.DECIDE: {
+                String data = CoordinatorProtocol.readString(frame);
+                if(transaction == null){
+                    error(connection, requestId, "Transaction decide failed, invalid id [" + transactionId + "]");
+                    return;
+                }
+                transaction.state = data;
+                transaction.endTime = now;
+                appendLog(new FrameWriter(CoordinatorProtocol.DECIDE, 0).writeString(transactionId).writeString(data).writeLong(now));
+                ByteBuffer event = new FrameWriter(CoordinatorProtocol.EVENT, 0).writeString(transactionId).writeString(data).toBuffer();
+                for (Connection subscriber : transaction.subscribers){
+                    subscriber.send(event.duplicate());
+                }
+                ok(connection, requestId);
+                return;
+            }
+            case CoordinatorProtocol.CLEAR: {
+                if(transaction != null){
+                    transactions.remove(transactionId);
+                    for (Connection subscriber : transaction.subscribers){
+                        subscriber.subscriptions.remove(transactionId);
+                    }
+                    appendLog(new FrameWriter(CoordinatorProtocol.CLEAR, 0).writeString(transactionId));
+                }
+                ok(connection, requestId);
+                return;
+            }
+            case CoordinatorProtocol.EXISTS: {
+                connection.send(new FrameWriter(CoordinatorProtocol.RESPONSE, requestId).writeByte(CoordinatorProtocol.STATUS_OK).writeByte(transaction == null ? 0 : 1).toBuffer());
+                return;
+            }
+            case CoordinatorProtocol.RESULTS: {
+                FrameWriter response = new FrameWriter(CoordinatorProtocol.RESPONSE, requestId).writeByte(CoordinatorProtocol.STATUS_OK).writeByte(transaction == null ? 0 : 1);
+                if(transaction != null){
+                    response.writeString(transaction.state).writeLong(transaction.startTime).writeLong(transaction.endTime).writeInt(transaction.participants.size());
+                    for (Map.Entry<String, String> participant : transaction.participants.entrySet()){
+                        response.writeString(participant.getKey()).writeString(participant.getValue());
+                    }
+                }
+                connection.send(response.toBuffer());
+                return;
+            }
+            case CoordinatorProtocol.SUBSCRIBE: {
+                connection.send(new FrameWriter(CoordinatorProtocol.RESPONSE, requestId).writeByte(CoordinatorProtocol.STATUS_OK).writeByte(transaction == null ? 0 : 1).toBuffer());
+                if(transaction != null){
+                    subscribe(connection, transactionId, transaction);
+                    if(!PayloadCodec.STATE_PENDING_TEXT.equals(transaction.state)){
+                        connection.send(new FrameWriter(CoordinatorProtocol.EVENT, 0).writeString(transactionId).writeString(transaction.state).toBuffer());
+                    }
+                }
+                return;
+            }
+            default:
+                error(connection, requestId, "Unsupported operation " + op);
+        }
+    }
+
+    private void join(Connection connection, String transactionId, Transaction transaction, String node, String data) {
+        if(data != null && !transaction.participants.containsKey(node)){
+            transaction.participants.put(node, data);
+            appendLog(new FrameWriter(CoordinatorProtocol.JOIN, 0).writeString(transactionId).writeString(node).writeString(data));
+        }
+        subscribe(connection, transactionId, transaction);
+    }
+
+    private void subscribe(Connection connection, String transactionId, Transaction transaction) {
+        if(transaction.subscribers.add(connection)){
+            connection.subscriptions.add(transactionId);
+        }
+    }
+
+    private void ok(Connection connection, int requestId) {
+        connection.send(new FrameWriter(CoordinatorProtocol.RESPONSE, requestId).writeByte(CoordinatorProtocol.STATUS_OK).toBuffer());
+    }
+
+    private void error(Connection connection, int requestId, String message) {
+        connection.send(new FrameWriter(CoordinatorProtocol.RESPONSE, requestId).writeByte(CoordinatorProtocol.STATUS_ERROR).writeString(message).toBuffer());
+    }
+
+    private void appendLog(FrameWriter record) {
+        pendingLog.add(record.toBuffer());
+    }
+
+    /**
+     * 本轮所有变更一次写入并刷盘，之后才发送响应，保证已确认的变更不会丢失
+     */
+    private void flushLog() throws IOException {
+        if(pendingLog.isEmpty()){
+            return;
+        }
+        ByteBuffer[] records = pendingLog.toArray(new ByteBuffer[pendingLog.size()]);
+        pendingLog.clear();
+        long remaining = 0;
+        for (ByteBuffer record : records){
+            remaining += record.remaining();
+        }
+        while (remaining > 0){
+            remaining -= log.write(records);
+        }
+        log.force(false);
+    }
+
+    private void flushConnections() {
+        for (Connection connection : pendingWrite){
+            try {
+                ByteBuffer[] buffers = connection.out.toArray(new ByteBuffer[connection.out.size()]);
+                connection.channel.write(buffers);
+                while (!connection.out.isEmpty() && !connection.out.peek().hasRemaining()){
+                    connection.out.poll();
+                }
+                if(connection.key.isValid()){
+                    connection.key.interestOps(connection.out.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                }
+            } catch (IOException e) {
+                close(connection);
+            }
+        }
+        pendingWrite.clear();
+    }
+
+    private void close(Connection connection) {
+        for (String transactionId : connection.subscriptions){
+            Transaction transaction = transactions.get(transactionId);
+            if(transaction != null){
+                transaction.subscribers.remove(connection);
+            }
+        }
+        connection.subscriptions.clear();
+        connection.out.clear();
+        connection.key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    private void shutdown() {
+        for (SelectionKey key : selector.keys()){
+            try {
+                key.channel().close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+        try {
+            selector.close();
+            log.close();
+        } catch (IOException e) {
+            logger.warn("coordinator shutdown failed. {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 回放日志恢复内存状态（尾部不完整的记录视为崩溃时未写完，丢弃），然后压缩日志
+     */
+    private void recover() throws IOException {
+        if(logFile.getParentFile() != null){
+            logFile.getParentFile().mkdirs();
+        }
+        if(logFile.exists()){
+            try (RandomAccessFile file = new RandomAccessFile(logFile, "r"); FileChannel channel = file.getChannel()){
+                ByteBuffer data = ByteBuffer.allocate((int) channel.size());
+                while (data.hasRemaining() && channel.read(data) >= 0){
+                }
+                data.flip();
+                while (data.remaining() >= CoordinatorProtocol.HEADER_LENGTH){
+                    int length = data.getInt(data.position());
+                    if(length < 5 || data.remaining() < CoordinatorProtocol.HEADER_LENGTH + length){
+                        logger.warn("coordinator log truncated at {}, discard the tail.", data.position());
+                        break;
+                    }
+                    data.getInt();
+                    ByteBuffer record = data.slice();
+                    record.limit(length);
+                    data.position(data.position() + length);
+                    replay(record);
+                }
+            }
+        }
+        File compacted = new File(logFile.getPath() + ".tmp");
+        try (RandomAccessFile file = new RandomAccessFile(compacted, "rw"); FileChannel channel = file.getChannel()){
+            channel.truncate(0);
+            for (Map.Entry<String, Transaction> entry : transactions.entrySet()){
+                String transactionId = entry.getKey();
+                Transaction transaction = entry.getValue();
+                write(channel, new FrameWriter(CoordinatorProtocol.START, 0).writeString(transactionId).writeString(transaction.group).writeString(transaction.peer).writeLong(transaction.startTime));
+                for (Map.Entry<String, String> participant : transaction.participants.entrySet()){
+                    write(channel, new FrameWriter(CoordinatorProtocol.JOIN, 0).writeString(transactionId).writeString(participant.getKey()).writeString(participant.getValue()));
+                }
+                if(!PayloadCodec.STATE_PENDING_TEXT.equals(transaction.state)){
+                    write(channel, new FrameWriter(CoordinatorProtocol.DECIDE, 0).writeString(transactionId).writeString(transaction.state).writeLong(transaction.endTime));
+                }
+            }
+            channel.force(true);
+        }
+        Files.move(compacted.toPath(), logFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        RandomAccessFile file = new RandomAccessFile(logFile, "rw");
+        log = file.getChannel();
+        log.position(log.size());
+    }
+
+    private static void write(FileChannel channel, FrameWriter record) throws IOException {
+        ByteBuffer buffer = record.toBuffer();
+        while (buffer.hasRemaining()){
+            channel.write(buffer);
+        }
+    }
+
+    private void replay(ByteBuffer record) {
+        byte op = record.get();
+        record.getInt();
+        String transactionId = CoordinatorProtocol.readString(record);
+        switch (op){
+            case CoordinatorProtocol.START:
+                transactions.put(transactionId, new Transaction(CoordinatorProtocol.readString(record), CoordinatorProtocol.readString(record), record.getLong()));
+                break;
+            case CoordinatorProtocol.JOIN: {
+                Transaction transaction = transactions.get(transactionId);
+                if(transaction != null){
+                    transaction.participants.put(CoordinatorProtocol.readString(record), CoordinatorProtocol.readString(record));
+                }
+                break;
+            }
+            case CoordinatorProtocol.DECIDE: {
+                Transaction transaction = transactions.get(transactionId);
+                if(transaction != null){
+                    transaction.state = CoordinatorProtocol.readString(record);
+                    transaction.endTime = record.getLong();
+                }
+                break;
+            }
+            case CoordinatorProtocol.CLEAR:
+                transactions.remove(transactionId);
+                break;
+            default:
+                logger.warn("coordinator log contains unknown record type {}, skip.", op);
+        }
+    }
+
+    class Connection {
+
+        final SocketChannel channel;
+
+        SelectionKey key;
+
+        ByteBuffer in = ByteBuffer.allocate(64 * 1024);
+
+        final Deque<ByteBuffer> out = new ArrayDeque<>();
+
+        final Set<String> subscriptions = new HashSet<>();
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void send(ByteBuffer frame) {
+            out.add(frame);
+            pendingWrite.add(this);
+        }
+    }
+
+    static class Transaction {
+
+        final String group;
+
+        final String peer;
+
+        final long startTime;
+
+        long endTime;
+
+        String state = PayloadCodec.STATE_PENDING_TEXT;
+
+        final Map<String, String> participants = new LinkedHashMap<>();
+
+        final Set<Connection> subscribers = new HashSet<>();
+
+        Transaction(String group, String peer, long startTime) {
+            this.group = group;
+            this.peer = peer;
+            this.startTime = startTime;
+        }
+    }
+}
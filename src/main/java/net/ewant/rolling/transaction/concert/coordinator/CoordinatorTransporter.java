@@ -0,0 +1,18 @@
+package net.ewant.rolling.transaction.concert.coordinator;
+
+import net.ewant.rolling.transaction.concert.MediatorClient;
+import net.ewant.rolling.transaction.concert.MediatorTransporter;
+import net.ewant.rolling.transaction.concert.URL;
+
+public class CoordinatorTransporter implements MediatorTransporter {
+
+    @Override
+    public String getProtocol() {
+        return "rtx";
+    }
+
+    @Override
+    public MediatorClient connect(URL url) {
+        return new CoordinatorMediatorClient(url);
+    }
+}
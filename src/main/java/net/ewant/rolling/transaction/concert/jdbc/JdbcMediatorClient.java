@@ -0,0 +1,703 @@
+package net.ewant.rolling.transaction.concert.jdbc;
+
+import net.ewant.rolling.transaction.TransactionContext;
+import net.ewant.rolling.transaction.concert.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 基于应用自身数据库的协调客户端，jdbc://{dataSourceBeanName}。
+ * 事务链、参与者、状态变更分别保存在 rtx_chain、rtx_participant、rtx_event 表中（见 META-INF/rolling-tx/schema-jdbc.sql）。
+ * 写操作由单个写线程合并为一个数据库事务提交（参与者批量插入）；
+ * 状态通知不使用逐事务监听，而是由轮询线程按共享游标顺序扫描 rtx_event
+ */
+public class JdbcMediatorClient implements AsyncMediatorClient {
+
+    private static Logger logger = LoggerFactory.getLogger(JdbcMediatorClient.class);
+
+    /**
+     * 状态变更轮询间隔（毫秒）
+     */
+    public static final String POLL_INTERVAL_KEY = "pollInterval";
+
+    /**
+     * 每次合并提交的最大写操作数
+     */
+    public static final String BATCH_KEY = "batch";
+
+    /**
+     * 事件id空洞的最长等待时间（毫秒），超过后视为空洞不会再被填补
+     */
+    public static final String GAP_TIMEOUT_KEY = "gapTimeout";
+
+    /**
+     * 状态变更事件保留时间（毫秒）
+     */
+    public static final String EVENT_RETENTION_KEY = "eventRetention";
+
+    /**
+     * 首次使用时执行建表脚本
+     */
+    public static final String INIT_SCHEMA_KEY = "initSchema";
+
+    public static final String SCHEMA_LOCATION = "META-INF/rolling-tx/schema-jdbc.sql";
+
+    private static final String INSERT_CHAIN = "insert into rtx_chain (tx_id, tx_group, peer, state, start_time, end_time) values (?, ?, ?, ?, ?, 0)";
+
+    private static final String SELECT_CHAIN = "select tx_group, peer, state, start_time, end_time from rtx_chain where tx_id = ?";
+
+    private static final String UPDATE_STATE = "update rtx_chain set state = ?, end_time = ? where tx_id = ?";
+
+    private static final String DELETE_CHAIN = "delete from rtx_chain where tx_id = ?";
+
+    private static final String INSERT_PARTICIPANT = "insert into rtx_participant (tx_id, node, data) values (?, ?, ?)";
+
+    private static final String SELECT_PARTICIPANTS = "select node, data from rtx_participant where tx_id = ?";
+
+    private static final String DELETE_PARTICIPANTS = "delete from rtx_participant where tx_id = ?";
+
+    private static final String INSERT_EVENT = "insert into rtx_event (tx_id, data, create_time) values (?, ?, ?)";
+
+    private static final String SELECT_EVENTS = "select event_id, tx_id, data from rtx_event where event_id > ? order by event_id";
+
+    private static final String SELECT_MAX_EVENT = "select max(event_id) from rtx_event";
+
+    /**
+     * 不是所有数据库都支持 create index if not exists，建索引前先按元数据判断是否已存在
+     */
+    private static final Pattern CREATE_INDEX = Pattern.compile("create\\s+index\\s+(\\w+)\\s+on\\s+(\\w+)", Pattern.CASE_INSENSITIVE);
+
+    private static final String DELETE_EVENTS = "delete from rtx_event where create_time < ?";
+
+    private final URL url;
+
+    private final Supplier<DataSource> dataSourceSupplier;
+
+    private volatile DataSource dataSource;
+
+    private final int batchSize;
+
+    private final long pollInterval;
+
+    private final long gapTimeout;
+
+    private final long eventRetention;
+
+    private final BlockingQueue<WriteTask> writeQueue = new LinkedBlockingQueue<>();
+
+    private final Thread writer;
+
+    private final ScheduledExecutorService poller;
+
+    /**
+     * 本节点加入的未结束事务，轮询到对应事件后回调
+     */
+    private final ConcurrentMap<String, Boolean> watched = new ConcurrentHashMap<>();
+
+    /**
+     * 共享游标：已连续处理到的事件id，仅轮询线程访问
+     */
+    private long cursor;
+
+    /**
+     * 游标之后已处理的事件id，用于跨越空洞时避免重复通知
+     */
+    private final TreeSet<Long> delivered = new TreeSet<>();
+
+    private long gapSince;
+
+    private long lastPurge;
+
+    private volatile MediatorWatcher listener;
+
+    private volatile boolean closed;
+
+    public JdbcMediatorClient(URL url, Supplier<DataSource> dataSourceSupplier) {
+        this.url = url;
+        this.dataSourceSupplier = dataSourceSupplier;
+        this.batchSize = url.getParameter(BATCH_KEY, 100);
+        this.pollInterval = url.getParameter(POLL_INTERVAL_KEY, 50L);
+        this.gapTimeout = url.getParameter(GAP_TIMEOUT_KEY, 2000L);
+        this.eventRetention = url.getParameter(EVENT_RETENTION_KEY, 600000L);
+        this.writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                write();
+            }
+        }, "rolling-tx-jdbc-writer");
+        this.writer.setDaemon(true);
+        this.poller = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "rolling-tx-jdbc-poller");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.writer.start();
+        this.poller.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                poll();
+            }
+        }, pollInterval, pollInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 数据源在首次使用时从容器获取，避免在后置处理器初始化阶段提前创建数据源。
+     * 同时初始化游标，保证之后写入的事件都能被轮询到
+     */
+    private DataSource dataSource() {
+        DataSource ds = dataSource;
+        if(ds == null){
+            synchronized (this){
+                ds = dataSource;
+                if(ds == null){
+                    ds = dataSourceSupplier.get();
+                    if(ds == null){
+                        throw new IllegalStateException("No DataSource found for mediator " + url);
+                    }
+                    try (Connection connection = ds.getConnection()){
+                        if(url.getParameter(INIT_SCHEMA_KEY, false)){
+                            initSchema(connection);
+                        }
+                        try (Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery(SELECT_MAX_EVENT)){
+                            cursor = rs.next() ? rs.getLong(1) : 0;
+                        }
+                    } catch (SQLException e) {
+                        throw new IllegalStateException("Mediator database init failed. " + url, e);
+                    }
+                    dataSource = ds;
+                }
+            }
+        }
+        return ds;
+    }
+
+    private void initSchema(Connection connection) throws SQLException {
+        InputStream in = JdbcMediatorClient.class.getClassLoader().getResourceAsStream(SCHEMA_LOCATION);
+        if(in == null){
+            throw new IllegalStateException("Schema script not found: " + SCHEMA_LOCATION);
+        }
+        StringBuilder script = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))){
+            String line;
+            while ((line = reader.readLine()) != null){
+                if(!line.trim().startsWith("--")){
+                    script.append(line).append('\n');
+                }
+            }
+        } catch (java.io.IOException e) {
+            throw new IllegalStateException("Schema script read failed: " + SCHEMA_LOCATION, e);
+        }
+        try (Statement statement = connection.createStatement()){
+            for (String sql : script.toString().split(";")){
+                if(sql.trim().isEmpty()){
+                    continue;
+                }
+                Matcher index = CREATE_INDEX.matcher(sql.trim());
+                if(index.lookingAt() && indexExists(connection, index.group(2), index.group(1))){
+                    continue;
+                }
+                statement.execute(sql);
+            }
+        }
+    }
+
+    private static boolean indexExists(Connection connection, String table, String index) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        if(metaData.storesUpperCaseIdentifiers()){
+            table = table.toUpperCase();
+        }else if(metaData.storesLowerCaseIdentifiers()){
+            table = table.toLowerCase();
+        }
+        try (ResultSet rs = metaData.getIndexInfo(connection.getCatalog(), null, table, false, true)){
+            while (rs.next()){
+                if(index.equalsIgnoreCase(rs.getString("INDEX_NAME"))){
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void startChain(String transactionId, String group, String peer, int index, String data) {
+        await(startChainAsync(transactionId, group, peer, index, data));
+    }
+
+    @Override
+    public void joinChain(String transactionId, String group, String peer, int index, String data) {
+        await(joinChainAsync(transactionId, group, peer, index, data));
+    }
+
+    @Override
+    public void rollback(String transactionId, String group, String peer, String data) {
+        await(rollbackAsync(transactionId, group, peer, data));
+    }
+
+    @Override
+    public void commit(String transactionId, String group, String peer) {
+        await(commitAsync(transactionId, group, peer));
+    }
+
+    @Override
+    public void clear(String transactionId) {
+        await(clearAsync(transactionId));
+    }
+
+    private static void await(CompletableFuture<Void> future) {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof RuntimeException){
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> startChainAsync(String transactionId, String group, String peer, int index, String data) {
+        watched.put(transactionId, Boolean.TRUE);
+        return submit(new WriteTask(WriteTask.START, transactionId, group, peer, participantNode(group, peer, index), data));
+    }
+
+    @Override
+    public CompletableFuture<Void> joinChainAsync(String transactionId, String group, String peer, int index, String data) {
+        watched.put(transactionId, Boolean.TRUE);
+        return submit(new WriteTask(WriteTask.JOIN, transactionId, group, peer, participantNode(group, peer, index), data));
+    }
+
+    @Override
+    public CompletableFuture<Void> rollbackAsync(String transactionId, String group, String peer, String data) {
+        return submit(new WriteTask(WriteTask.DECIDE, transactionId, group, peer, null, data == null ? "" : data));
+    }
+
+    @Override
+    public CompletableFuture<Void> commitAsync(String transactionId, String group, String peer) {
+        return submit(new WriteTask(WriteTask.DECIDE, transactionId, group, peer, null, PayloadCodec.STATE_COMMIT_TEXT));
+    }
+
+    @Override
+    public CompletableFuture<Void> clearAsync(String transactionId) {
+        watched.remove(transactionId);
+        return submit(new WriteTask(WriteTask.CLEAR, transactionId, null, null, null, null));
+    }
+
+    private static String participantNode(String group, String peer, int index) {
+        return group + TransactionContext.NODE_SPLIT_CHAR + peer + TransactionContext.NODE_SPLIT_CHAR + index;
+    }
+
+    private CompletableFuture<Void> submit(WriteTask task) {
+        if(closed){
+            task.future.completeExceptionally(new IllegalStateException("Mediator client closed. " + url));
+            return task.future;
+        }
+        writeQueue.add(task);
+        return task.future;
+    }
+
+    private void write() {
+        List<WriteTask> tasks = new ArrayList<>(batchSize);
+        while (!closed || !writeQueue.isEmpty()){
+            try {
+                WriteTask first = writeQueue.poll(pollInterval, TimeUnit.MILLISECONDS);
+                if(first == null){
+                    continue;
+                }
+                tasks.add(first);
+                writeQueue.drainTo(tasks, batchSize - 1);
+                flush(tasks);
+            } catch (InterruptedException e) {
+                if(closed){
+                    break;
+                }
+            } catch (RuntimeException e) {
+                for (WriteTask task : tasks){
+                    task.future.completeExceptionally(e);
+                }
+            } finally {
+                tasks.clear();
+            }
+        }
+    }
+
+    /**
+     * 一组写操作在同一个数据库事务中提交；任一语句失败则回滚，逐个重试以隔离失败的操作
+     */
+    private void flush(List<WriteTask> tasks) {
+        DataSource ds = dataSource();
+        try {
+            Map<WriteTask, RuntimeException> failed = execute(ds, tasks);
+            for (WriteTask task : tasks){
+                RuntimeException failure = failed.get(task);
+                if(failure == null){
+                    task.future.complete(null);
+                    if(task.decided != null && watched.remove(task.transactionId) != null){
+                        notifyChange(task.transactionId, task.decided);
+                    }
+                }else{
+                    task.future.completeExceptionally(failure);
+                }
+            }
+        } catch (SQLException e) {
+            if(tasks.size() == 1){
+                tasks.get(0).future.completeExceptionally(translate(tasks.get(0), e));
+                return;
+            }
+            logger.warn("mediator batch write failed, retry one by one. size: {}, {}", tasks.size(), e.getMessage());
+            for (WriteTask task : tasks){
+                flush(Collections.singletonList(task));
+            }
+        }
+    }
+
+    /**
+     * @return 因事务链不存在而失败的操作，其余操作已提交
+     */
+    private Map<WriteTask, RuntimeException> execute(DataSource ds, List<WriteTask> tasks) throws SQLException {
+        Map<WriteTask, RuntimeException> failed = new HashMap<>();
+        try (Connection connection = ds.getConnection()){
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (PreparedStatement insertChain = connection.prepareStatement(INSERT_CHAIN);
+                 PreparedStatement selectChain = connection.prepareStatement(SELECT_CHAIN);
+                 PreparedStatement insertParticipant = connection.prepareStatement(INSERT_PARTICIPANT);
+                 PreparedStatement updateState = connection.prepareStatement(UPDATE_STATE);
+                 PreparedStatement insertEvent = connection.prepareStatement(INSERT_EVENT);
+                 PreparedStatement deleteParticipants = connection.prepareStatement(DELETE_PARTICIPANTS);
+                 PreparedStatement deleteChain = connection.prepareStatement(DELETE_CHAIN)){
+                long now = System.currentTimeMillis();
+                Set<String> started = new HashSet<>();
+                int chains = 0;
+                for (WriteTask task : tasks){
+                    if(task.type == WriteTask.START){
+                        insertChain.setString(1, task.transactionId);
+                        insertChain.setString(2, task.group);
+                        insertChain.setString(3, task.peer);
+                        insertChain.setString(4, PayloadCodec.STATE_PENDING_TEXT);
+                        insertChain.setLong(5, now);
+                        insertChain.addBatch();
+                        started.add(task.transactionId);
+                        chains++;
+                    }
+                }
+                if(chains > 0){
+                    insertChain.executeBatch();
+                }
+                int participants = 0;
+                for (WriteTask task : tasks){
+                    if(task.type == WriteTask.JOIN && !started.contains(task.transactionId)){
+                        selectChain.setString(1, task.transactionId);
+                        try (ResultSet rs = selectChain.executeQuery()){
+                            if(!rs.next()){
+                                failed.put(task, new IllegalStateException("Transaction join failed, invalid id [" + task.transactionId + "] in chain"));
+                                continue;
+                            }
+                            String state = rs.getString(3);
+                            task.decided = PayloadCodec.STATE_PENDING_TEXT.equals(state) ? null : state;
+                        }
+                    }
+                    if((task.type == WriteTask.START || task.type == WriteTask.JOIN) && task.data != null){
+                        insertParticipant.setString(1, task.transactionId);
+                        insertParticipant.setString(2, task.node);
+                        insertParticipant.setString(3, task.data);
+                        insertParticipant.addBatch();
+                        participants++;
+                    }
+                }
+                if(participants > 0){
+                    insertParticipant.executeBatch();
+                }
+                List<WriteTask> decisions = new ArrayList<>();
+                for (WriteTask task : tasks){
+                    if(task.type == WriteTask.DECIDE){
+                        updateState.setString(1, task.data);
+                        updateState.setLong(2, now);
+                        updateState.setString(3, task.transactionId);
+                        updateState.addBatch();
+                        decisions.add(task);
+                    }
+                }
+                if(!decisions.isEmpty()){
+                    int[] counts = updateState.executeBatch();
+                    int events = 0;
+                    for (int i = 0; i < counts.length; i++){
+                        WriteTask task = decisions.get(i);
+                        if(counts[i] == 0){
+                            failed.put(task, new IllegalStateException("Transaction decide failed, invalid id [" + task.transactionId + "]"));
+                            continue;
+                        }
+                        insertEvent.setString(1, task.transactionId);
+                        insertEvent.setString(2, task.data);
+                        insertEvent.setLong(3, now);
+                        insertEvent.addBatch();
+                        events++;
+                    }
+                    if(events > 0){
+                        insertEvent.executeBatch();
+                    }
+                }
+                int clears = 0;
+                for (WriteTask task : tasks){
+                    if(task.type == WriteTask.CLEAR){
+                        deleteParticipants.setString(1, task.transactionId);
+                        deleteParticipants.addBatch();
+                        deleteChain.setString(1, task.transactionId);
+                        deleteChain.addBatch();
+                        clears++;
+                    }
+                }
+                if(clears > 0){
+                    deleteParticipants.executeBatch();
+                    deleteChain.executeBatch();
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+        return failed;
+    }
+
+    private static RuntimeException translate(WriteTask task, SQLException e) {
+        if(task.type == WriteTask.START && isConstraintViolation(e)){
+            return new IllegalStateException("Transaction start failed, duplicate id [" + task.transactionId + "] in chain", e);
+        }
+        return new IllegalStateException("Transaction " + task.typeName() + " failed. id [" + task.transactionId + "]", e);
+    }
+
+    /**
+     * 部分驱动（如H2）不抛出 SQLIntegrityConstraintViolationException，按 SQLState 23xxx 识别
+     */
+    private static boolean isConstraintViolation(SQLException e) {
+        return e instanceof SQLIntegrityConstraintViolationException || (e.getSQLState() != null && e.getSQLState().startsWith("23"));
+    }
+
+    /**
+     * 按共享游标顺序扫描状态事件。自增id可能因并发提交顺序而出现暂时的空洞，
+     * 游标只推进到连续已处理的位置；空洞超过 gapTimeout 仍未填补时跳过
+     */
+    private void poll() {
+        if(dataSource == null || closed){
+            return;
+        }
+        try (Connection connection = dataSource.getConnection(); PreparedStatement statement = connection.prepareStatement(SELECT_EVENTS)){
+            statement.setLong(1, cursor);
+            statement.setMaxRows(batchSize);
+            try (ResultSet rs = statement.executeQuery()){
+                while (rs.next()){
+                    long eventId = rs.getLong(1);
+                    if(delivered.add(eventId)){
+                        String transactionId = rs.getString(2);
+                        if(watched.remove(transactionId) != null){
+                            notifyChange(transactionId, rs.getString(3));
+                        }
+                    }
+                }
+            }
+            advanceCursor();
+            purge(connection);
+        } catch (SQLException e) {
+            logger.error("mediator event poll failed. cursor: {}, {}", cursor, e.getMessage());
+        }
+    }
+
+    private void advanceCursor() {
+        while (!delivered.isEmpty()){
+            if(delivered.first() == cursor + 1){
+                cursor = delivered.pollFirst();
+                gapSince = 0;
+                continue;
+            }
+            long now = System.currentTimeMillis();
+            if(gapSince == 0){
+                gapSince = now;
+                break;
+            }
+            if(now - gapSince < gapTimeout){
+                break;
+            }
+            logger.warn("mediator event gap ({}, {}) timeout, skip.", cursor, delivered.first());
+            cursor = delivered.first() - 1;
+            gapSince = 0;
+        }
+    }
+
+    private void notifyChange(String transactionId, String data) {
+        MediatorWatcher watcher = listener;
+        if(watcher != null){
+            try {
+                watcher.change(transactionId, data);
+            } catch (RuntimeException e) {
+                logger.error("transaction [{}] state change handle failed. {}", transactionId, e.getMessage());
+            }
+        }
+    }
+
+    private void purge(Connection connection) throws SQLException {
+        long now = System.currentTimeMillis();
+        if(now - lastPurge < eventRetention / 10){
+            return;
+        }
+        lastPurge = now;
+        try (PreparedStatement statement = connection.prepareStatement(DELETE_EVENTS)){
+            statement.setLong(1, now - eventRetention);
+            statement.executeUpdate();
+        }
+    }
+
+    @Override
+    public boolean transactionExists(String transactionId) {
+        try (Connection connection = dataSource().getConnection(); PreparedStatement statement = connection.prepareStatement(SELECT_CHAIN)){
+            statement.setString(1, transactionId);
+            try (ResultSet rs = statement.executeQuery()){
+                return rs.next();
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Transaction exists check failed. id [" + transactionId + "]", e);
+        }
+    }
+
+    @Override
+    public TransactionResult getResults(String transactionId) {
+        try (Connection connection = dataSource().getConnection();
+             PreparedStatement chain = connection.prepareStatement(SELECT_CHAIN);
+             PreparedStatement participants = connection.prepareStatement(SELECT_PARTICIPANTS)){
+            chain.setString(1, transactionId);
+            String state;
+            long startTime;
+            long endTime;
+            try (ResultSet rs = chain.executeQuery()){
+                if(!rs.next()){
+                    return null;
+                }
+                state = rs.getString(3);
+                startTime = rs.getLong(4);
+                endTime = rs.getLong(5);
+            }
+            Map<String, String> executeChain = new TreeMap<>();
+            participants.setString(1, transactionId);
+            try (ResultSet rs = participants.executeQuery()){
+                while (rs.next()){
+                    executeChain.put(rs.getString(1), rs.getString(2));
+                }
+            }
+            boolean rollback = !PayloadCodec.STATE_PENDING_TEXT.equals(state) && !PayloadCodec.STATE_COMMIT_TEXT.equals(state);
+            TransactionResult result = new TransactionResult(transactionId, rollback ? state : null, executeChain);
+            result.setStartTime(startTime);
+            result.setEndTime(endTime);
+            return result;
+        } catch (SQLException e) {
+            throw new IllegalStateException("Transaction results query failed. id [" + transactionId + "]", e);
+        }
+    }
+
+    @Override
+    public void registerMethods(String group, Collection<String> signatures) {
+        // 数据库中直接保存签名，无需字典
+    }
+
+    @Override
+    public void addWatcher(MediatorWatcher watcher) {
+        this.listener = watcher;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return !closed;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        poller.shutdown();
+        writer.interrupt();
+    }
+
+    @Override
+    public void init() {
+        // 数据源与游标在首次使用时初始化
+    }
+
+    /**
+     * 数据库访问异常为协调中心故障；唯一约束冲突（重复的事务id）为事务本身的问题
+     */
+    @Override
+    public boolean isMediatorFault(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null && cause.getCause() != cause; cause = cause.getCause()){
+            if(cause instanceof SQLException){
+                return !isConstraintViolation((SQLException) cause);
+            }
+        }
+        return AsyncMediatorClient.super.isMediatorFault(throwable);
+    }
+
+    static class WriteTask {
+
+        static final int START = 1;
+
+        static final int JOIN = 2;
+
+        static final int DECIDE = 3;
+
+        static final int CLEAR = 4;
+
+        final int type;
+
+        final String transactionId;
+
+        final String group;
+
+        final String peer;
+
+        final String node;
+
+        final String data;
+
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        /**
+         * 加入时事务已有的决议，写入成功后直接通知（决议事件可能已在加入前被轮询跳过）
+         */
+        String decided;
+
+        WriteTask(int type, String transactionId, String group, String peer, String node, String data) {
+            this.type = type;
+            this.transactionId = transactionId;
+            this.group = group;
+            this.peer = peer;
+            this.node = node;
+            this.data = data;
+        }
+
+        String typeName() {
+            switch (type){
+                case START: return "start";
+                case JOIN: return "join";
+                case DECIDE: return "decide";
+                default: return "clear";
+            }
+        }
+    }
+}
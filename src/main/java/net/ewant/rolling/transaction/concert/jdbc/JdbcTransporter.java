@@ -0,0 +1,35 @@
+package net.ewant.rolling.transaction.concert.jdbc;
+
+import net.ewant.rolling.transaction.TransactionContext;
+import net.ewant.rolling.transaction.concert.MediatorClient;
+import net.ewant.rolling.transaction.concert.MediatorTransporter;
+import net.ewant.rolling.transaction.concert.URL;
+import org.springframework.beans.factory.BeanFactory;
+
+import javax.sql.DataSource;
+import java.util.function.Supplier;
+
+/**
+ * jdbc://{dataSourceBeanName}，未指定名称时使用容器中唯一的 DataSource
+ */
+public class JdbcTransporter implements MediatorTransporter {
+
+    @Override
+    public String getProtocol() {
+        return "jdbc";
+    }
+
+    @Override
+    public MediatorClient connect(final URL url) {
+        return new JdbcMediatorClient(url, new Supplier<DataSource>() {
+            @Override
+            public DataSource get() {
+                BeanFactory beanFactory = TransactionContext.getBeanFactory();
+                if(beanFactory == null){
+                    throw new IllegalStateException("BeanFactory not ready, can not resolve DataSource for mediator " + url);
+                }
+                return url.getHost() == null ? beanFactory.getBean(DataSource.class) : beanFactory.getBean(url.getHost(), DataSource.class);
+            }
+        });
+    }
+}
@@ -0,0 +1,246 @@
+package net.ewant.rolling.transaction.concert.memory;
+
+import net.ewant.rolling.transaction.TransactionContext;
+import net.ewant.rolling.transaction.concert.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 进程内协调客户端，mem://{name}。同名的客户端（同一JVM内的多个应用）共享事务存储，
+ * 所有操作基于并发容器与原子引用，无锁、无网络开销。
+ * 与zookeeper实现语义一致：加入时验证事务链，提交/回滚通知在独立事件线程上回调已加入该事务的客户端
+ */
+public class InMemoryMediatorClient implements AsyncMediatorClient {
+
+    private static final ConcurrentMap<String, ConcurrentMap<String, Chain>> STORES = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Chain> chains;
+
+    private final ExecutorService eventExecutor;
+
+    private volatile MediatorWatcher listener;
+
+    private volatile boolean closed;
+
+    public InMemoryMediatorClient(URL url) {
+        String name = url.getHost() == null ? "" : url.getHost();
+        ConcurrentMap<String, Chain> store = STORES.get(name);
+        if(store == null){
+            STORES.putIfAbsent(name, new ConcurrentHashMap<String, Chain>());
+            store = STORES.get(name);
+        }
+        this.chains = store;
+        this.eventExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "rolling-tx-mem-event");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    public void startChain(String transactionId, String group, String peer, int index, String data) {
+        Chain chain = new Chain(group, peer);
+        if(chains.putIfAbsent(transactionId, chain) != null){
+            throw new IllegalStateException("Transaction start failed, duplicate id [" + transactionId + "] in chain");
+        }
+        join(transactionId, chain, group, peer, index, data);
+    }
+
+    @Override
+    public void joinChain(String transactionId, String group, String peer, int index, String data) {
+        Chain chain = chains.get(transactionId);
+        if(chain == null){
+            throw new IllegalStateException("Transaction join failed, invalid id [" + transactionId + "] in chain");
+        }
+        join(transactionId, chain, group, peer, index, data);
+    }
+
+    private void join(String transactionId, Chain chain, String group, String peer, int index, String data) {
+        if(data != null){
+            chain.participants.putIfAbsent(group + TransactionContext.NODE_SPLIT_CHAR + peer + TransactionContext.NODE_SPLIT_CHAR + index, data);
+        }
+        if(chain.subscribers.add(this)){
+            // 先订阅后读状态：decide先写状态后遍历订阅者，已决议的事务至少通知一次
+            String state = chain.state.get();
+            if(!PayloadCodec.STATE_PENDING_TEXT.equals(state)){
+                notifyChange(transactionId, state);
+            }
+        }
+    }
+
+    @Override
+    public void rollback(String transactionId, String group, String peer, String data) {
+        decide(transactionId, data == null ? "" : data);
+    }
+
+    @Override
+    public void commit(String transactionId, String group, String peer) {
+        decide(transactionId, PayloadCodec.STATE_COMMIT_TEXT);
+    }
+
+    private void decide(final String transactionId, final String data) {
+        Chain chain = chains.get(transactionId);
+        if(chain == null){
+            throw new IllegalStateException("Transaction decide failed, invalid id [" + transactionId + "]");
+        }
+        chain.state.set(data);
+        chain.endTime = System.currentTimeMillis();
+        for (InMemoryMediatorClient subscriber : chain.subscribers){
+            subscriber.notifyChange(transactionId, data);
+        }
+    }
+
+    /**
+     * 与zookeeper事件线程一致，回调不在发起提交/回滚的业务线程上执行
+     */
+    private void notifyChange(final String transactionId, final String data) {
+        if(closed){
+            return;
+        }
+        eventExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                MediatorWatcher watcher = listener;
+                if(watcher != null){
+                    watcher.change(transactionId, data);
+                }
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> startChainAsync(String transactionId, String group, String peer, int index, String data) {
+        try {
+            startChain(transactionId, group, peer, index, data);
+            return CompletableFuture.completedFuture(null);
+        } catch (RuntimeException e) {
+            return failed(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> joinChainAsync(String transactionId, String group, String peer, int index, String data) {
+        try {
+            joinChain(transactionId, group, peer, index, data);
+            return CompletableFuture.completedFuture(null);
+        } catch (RuntimeException e) {
+            return failed(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> rollbackAsync(String transactionId, String group, String peer, String data) {
+        try {
+            rollback(transactionId, group, peer, data);
+            return CompletableFuture.completedFuture(null);
+        } catch (RuntimeException e) {
+            return failed(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> commitAsync(String transactionId, String group, String peer) {
+        try {
+            commit(transactionId, group, peer);
+            return CompletableFuture.completedFuture(null);
+        } catch (RuntimeException e) {
+            return failed(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> clearAsync(String transactionId) {
+        clear(transactionId);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private static CompletableFuture<Void> failed(Throwable e) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+
+    @Override
+    public boolean transactionExists(String transactionId) {
+        return chains.containsKey(transactionId);
+    }
+
+    @Override
+    public TransactionResult getResults(String transactionId) {
+        Chain chain = chains.get(transactionId);
+        if(chain == null){
+            return null;
+        }
+        String state = chain.state.get();
+        boolean rollback = !PayloadCodec.STATE_PENDING_TEXT.equals(state) && !PayloadCodec.STATE_COMMIT_TEXT.equals(state);
+        TransactionResult result = new TransactionResult(transactionId, rollback ? state : null, new TreeMap<>(chain.participants));
+        result.setStartTime(chain.startTime);
+        result.setEndTime(chain.endTime);
+        return result;
+    }
+
+    @Override
+    public void registerMethods(String group, Collection<String> signatures) {
+        // 进程内直接保存签名，无需字典
+    }
+
+    @Override
+    public void addWatcher(MediatorWatcher watcher) {
+        this.listener = watcher;
+    }
+
+    @Override
+    public void clear(String transactionId) {
+        chains.remove(transactionId);
+    }
+
+    @Override
+    public boolean isConnected() {
+        return !closed;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        eventExecutor.shutdown();
+    }
+
+    @Override
+    public void init() {
+    }
+
+    /**
+     * 进程内存储不存在协调中心故障，失败均为无效、重复的事务id
+     */
+    @Override
+    public boolean isMediatorFault(Throwable throwable) {
+        return false;
+    }
+
+    static class Chain {
+
+        final String group;
+
+        final String peer;
+
+        final long startTime = System.currentTimeMillis();
+
+        volatile long endTime;
+
+        final AtomicReference<String> state = new AtomicReference<>(PayloadCodec.STATE_PENDING_TEXT);
+
+        final ConcurrentMap<String, String> participants = new ConcurrentHashMap<>();
+
+        final Set<InMemoryMediatorClient> subscribers = ConcurrentHashMap.newKeySet();
+
+        Chain(String group, String peer) {
+            this.group = group;
+            this.peer = peer;
+        }
+    }
+}
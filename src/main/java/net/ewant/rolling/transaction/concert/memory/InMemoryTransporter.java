@@ -0,0 +1,18 @@
+package net.ewant.rolling.transaction.concert.memory;
+
+import net.ewant.rolling.transaction.concert.MediatorClient;
+import net.ewant.rolling.transaction.concert.MediatorTransporter;
+import net.ewant.rolling.transaction.concert.URL;
+
+public class InMemoryTransporter implements MediatorTransporter {
+
+    @Override
+    public String getProtocol() {
+        return "mem";
+    }
+
+    @Override
+    public MediatorClient connect(URL url) {
+        return new InMemoryMediatorClient(url);
+    }
+}
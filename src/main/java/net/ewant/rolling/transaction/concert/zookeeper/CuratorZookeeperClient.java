@@ -20,22 +20,112 @@ import net.ewant.rolling.transaction.TransactionContext;
 import net.ewant.rolling.transaction.concert.*;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.api.BackgroundCallback;
+import org.apache.curator.framework.api.CuratorEvent;
+import org.apache.curator.framework.api.CuratorEventType;
 import org.apache.curator.framework.api.CuratorWatcher;
+import org.apache.curator.framework.api.transaction.CuratorTransaction;
+import org.apache.curator.framework.api.transaction.CuratorTransactionFinal;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.TreeCache;
+import org.apache.curator.framework.recipes.cache.TreeCacheEvent;
+import org.apache.curator.framework.recipes.cache.TreeCacheListener;
 import org.apache.curator.framework.state.ConnectionState;
 import org.apache.curator.framework.state.ConnectionStateListener;
 import org.apache.curator.retry.RetryNTimes;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.AsyncCallback;
 import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
 import org.apache.zookeeper.KeeperException.NoNodeException;
 import org.apache.zookeeper.KeeperException.NodeExistsException;
+import org.apache.zookeeper.Op;
+import org.apache.zookeeper.OpResult;
 import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.ZooDefs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.lang.reflect.Method;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
-public class CuratorZookeeperClient implements MediatorClient {
+public class CuratorZookeeperClient implements AsyncMediatorClient {
 
-    private Map<String, Integer> watcherMap = new ConcurrentHashMap<>();
+    private static Logger logger = LoggerFactory.getLogger(CuratorZookeeperClient.class);
+
+    /**
+     * 状态监听方式参数：node 每个事务单独监听状态节点（默认）；cache 共享监听整个状态根节点
+     */
+    public static final String WATCH_MODE_KEY = "watch";
+
+    public static final String WATCH_MODE_CACHE = "cache";
+
+    /**
+     * 事务链、状态根节点分桶数参数，0为平铺布局，所有节点必须配置一致
+     */
+    public static final String BUCKETS_KEY = "buckets";
+
+    /**
+     * 已结束事务后台批量回收间隔（毫秒）参数，0为在通知线程上同步删除（默认）
+     */
+    public static final String REAP_INTERVAL_KEY = "reapInterval";
+
+    /**
+     * 每次后台回收的最大事务数参数
+     */
+    public static final String REAP_BATCH_KEY = "reapBatch";
+
+    /**
+     * 全局提交/回滚状态写入组提交参数：每个multi请求最多合并的写入数，0为逐条写入（默认）
+     */
+    public static final String GROUP_COMMIT_KEY = "groupCommit";
+
+    /**
+     * 组提交等待窗口（微秒）参数，第一条写入到达后最多等待该时间再合并提交
+     */
+    public static final String GROUP_COMMIT_WINDOW_KEY = "groupCommitWindow";
+
+    /**
+     * 已确认存在的事务id本地缓存容量参数，0为不缓存
+     */
+    public static final String EXISTS_CACHE_KEY = "existsCache";
+
+    /**
+     * 事务id本地缓存有效期（毫秒）参数
+     */
+    public static final String EXISTS_CACHE_TTL_KEY = "existsCacheTtl";
+
+    /**
+     * 已结束事务结果缓存容量参数，0为不缓存
+     */
+    public static final String RESULT_CACHE_KEY = "resultCache";
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private ConcurrentMap<String, Integer> watcherMap = new ConcurrentHashMap<>();
+
+    /**
+     * 当前节点已创建的 chain/{id}/{group}/{peer} 节点，再次加入时无需重复创建
+     */
+    private ConcurrentMap<String, String> knownPeers = new ConcurrentHashMap<>();
+
+    /**
+     * 加入时发现 chain/{id}/{group} 已由同组其他节点创建的应用组，之后加入先不带group节点提交，避免一次NodeExists重试
+     */
+    private final Set<String> sharedGroups = ConcurrentHashMap.newKeySet();
 
     private MediatorWatcher listener;
 
@@ -43,6 +133,32 @@ public class CuratorZookeeperClient implements MediatorClient {
 
     private final CuratorFramework client;
 
+    private final boolean stateCacheMode;
+
+    private final TransactionNodeLayout layout;
+
+    private final TransactionReaper reaper;
+
+    private final DecisionBatcher batcher;
+
+    private final LiveTransactionCache liveCache;
+
+    private final TransactionResultReader resultReader;
+
+    private final PayloadCodec codec;
+
+    /**
+     * 方法签名字典，仅在compact格式下启用
+     */
+    private final MethodDictionary dictionary;
+
+    private TreeCache stateCache;
+
+    /**
+     * 最近一次重连后恢复所有在途事务监听的耗时（毫秒）
+     */
+    private volatile long lastReconcileMillis;
+
     public CuratorZookeeperClient(URL url) {
         try {
             CuratorFrameworkFactory.Builder builder = CuratorFrameworkFactory.builder()
@@ -54,11 +170,23 @@ public class CuratorZookeeperClient implements MediatorClient {
                 builder = builder.authorization("digest", authority.getBytes());
             }
             client = builder.build();
+            stateCacheMode = WATCH_MODE_CACHE.equals(url.getParameter(WATCH_MODE_KEY));
+            layout = new TransactionNodeLayout(url.getParameter(BUCKETS_KEY, 0));
+            codec = PayloadCodec.forUrl(url);
+            dictionary = codec.isCompact() ? new MethodDictionary(client) : null;
+            long reapInterval = url.getParameter(REAP_INTERVAL_KEY, 0L);
+            reaper = reapInterval > 0 ? new TransactionReaper(client, url.getParameter(REAP_BATCH_KEY, 100), reapInterval) : null;
+            int groupCommit = url.getParameter(GROUP_COMMIT_KEY, 0);
+            liveCache = new LiveTransactionCache(url.getParameter(EXISTS_CACHE_KEY, 10000), url.getParameter(EXISTS_CACHE_TTL_KEY, 30000L));
+            resultReader = new TransactionResultReader(client, dictionary, url.getParameter(RESULT_CACHE_KEY, 256));
+            batcher = groupCommit > 0 ? new DecisionBatcher(client, groupCommit, url.getParameter(GROUP_COMMIT_WINDOW_KEY, 200L)) : null;
             client.getConnectionStateListenable().addListener(new ConnectionStateListener() {
                 @Override
                 public void stateChanged(CuratorFramework client, ConnectionState state) {
                     if(ConnectionState.CONNECTED == state){
                         init();
+                    }else if(ConnectionState.RECONNECTED == state){
+                        reconcile();
                     }
                 }
             });
@@ -68,6 +196,21 @@ public class CuratorZookeeperClient implements MediatorClient {
         }
     }
 
+    /**
+     * 连接断开、会话过期、请求超时为协调中心故障；NoNode、NodeExists等为事务本身的问题
+     */
+    @Override
+    public boolean isMediatorFault(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null && cause.getCause() != cause; cause = cause.getCause()){
+            if(cause instanceof KeeperException){
+                KeeperException.Code code = ((KeeperException) cause).code();
+                return code == KeeperException.Code.CONNECTIONLOSS || code == KeeperException.Code.OPERATIONTIMEOUT
+                        || code == KeeperException.Code.SESSIONEXPIRED || code == KeeperException.Code.SESSIONMOVED;
+            }
+        }
+        return AsyncMediatorClient.super.isMediatorFault(throwable);
+    }
+
     @Override
     public void init() {
         if(inited){
@@ -76,6 +219,143 @@ public class CuratorZookeeperClient implements MediatorClient {
         inited = true;
         create(TransactionContext.TRANSACTION_CHAIN_ROOT, "", false);
         create(TransactionContext.TRANSACTION_STATE_ROOT, "", false);
+        if(layout.isBucketed()){
+            createBuckets(TransactionContext.TRANSACTION_CHAIN_ROOT);
+            createBuckets(TransactionContext.TRANSACTION_STATE_ROOT);
+        }
+        if(stateCacheMode){
+            startStateCache();
+        }
+    }
+
+    /**
+     * 重连（含会话过期后重建会话）后，对本地所有在途事务并行发出后台读取并重新注册监听：
+     * 已决议的立即通知，状态节点已不存在的按状态丢失通知，其余等待监听。
+     * 同一事务的通知由 watcherMap 去重，旧会话中仍有效的监听再次触发时不会重复通知
+     */
+    private void reconcile() {
+        if(stateCacheMode || listener == null){
+            // 共享监听模式下由TreeCache自行在重连后刷新
+            return;
+        }
+        List<String> paths = new ArrayList<>(watcherMap.keySet());
+        if(paths.isEmpty()){
+            return;
+        }
+        final long start = System.nanoTime();
+        final int total = paths.size();
+        final AtomicInteger remaining = new AtomicInteger(total);
+        final AtomicInteger lost = new AtomicInteger();
+        final AtomicInteger decided = new AtomicInteger();
+        BackgroundCallback callback = new BackgroundCallback() {
+            @Override
+            public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+                try {
+                    int code = event.getResultCode();
+                    if(code == KeeperException.Code.OK.intValue()){
+                        String data = PayloadCodec.decodeState(event.getData());
+                        if(!data.isEmpty() && !PayloadCodec.STATE_PENDING_TEXT.equals(data)){
+                            decided.incrementAndGet();
+                            notifyState(event.getPath(), data);
+                        }
+                    }else if(code == KeeperException.Code.NONODE.intValue()){
+                        lost.incrementAndGet();
+                        notifyState(event.getPath(), null);
+                    }else{
+                        // 保留在 watcherMap 中，下次重连时再次恢复
+                        logger.warn("transaction state reconcile failed, path [{}], code {}", event.getPath(), code);
+                    }
+                } finally {
+                    if(remaining.decrementAndGet() == 0){
+                        lastReconcileMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                        logger.info("transaction state reconciled after reconnect. total: {}, decided: {}, lost: {}, cost {}ms", total, decided.get(), lost.get(), lastReconcileMillis);
+                    }
+                }
+            }
+        };
+        for (String path : paths){
+            try {
+                client.getData().usingWatcher(new CuratorWatcherImpl()).inBackground(callback).forPath(path);
+            } catch (Exception e) {
+                logger.warn("transaction state reconcile failed, path [{}]. {}", path, e.getMessage());
+                remaining.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 通知事务状态变更，同一状态节点只通知一次
+     * @param path 状态节点
+     * @param data 为null时表示状态节点已不存在
+     */
+    private void notifyState(String path, String data) {
+        if(watcherMap.remove(path) == null){
+            return;
+        }
+        String transactionId = ZKPaths.getNodeFromPath(path);
+        knownPeers.remove(transactionId);
+        liveCache.invalidate(transactionId);
+        layout.forget(transactionId);
+        listener.change(transactionId, data);
+    }
+
+    /**
+     * 最近一次重连后恢复所有在途事务监听的耗时（毫秒）
+     * @return
+     */
+    public long getLastReconcileMillis() {
+        return lastReconcileMillis;
+    }
+
+    private void createBuckets(String root) {
+        List<String> children;
+        try {
+            children = client.getChildren().forPath(root);
+        } catch (Exception e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+        for (String bucketPath : layout.bucketPaths(root)){
+            if(!children.contains(ZKPaths.getNodeFromPath(bucketPath))){
+                createPersistent(bucketPath, "");
+            }
+        }
+    }
+
+    /**
+     * 整个状态根节点只注册一次监听，事件自带节点数据，按本地持有的事务过滤后分发
+     */
+    private void startStateCache() {
+        // 分桶布局下深度为2，同时覆盖平铺布局的旧事务（深度1）
+        stateCache = TreeCache.newBuilder(client, TransactionContext.TRANSACTION_STATE_ROOT).setCacheData(true).setMaxDepth(layout.stateDepth()).build();
+        stateCache.getListenable().addListener(new TreeCacheListener() {
+            @Override
+            public void childEvent(CuratorFramework client, TreeCacheEvent event) throws Exception {
+                if(event.getType() != TreeCacheEvent.Type.NODE_ADDED && event.getType() != TreeCacheEvent.Type.NODE_UPDATED){
+                    return;
+                }
+                ChildData childData = event.getData();
+                if(listener == null || childData == null || childData.getData() == null || TransactionContext.TRANSACTION_STATE_ROOT.equals(childData.getPath())){
+                    return;
+                }
+                String data = PayloadCodec.decodeState(childData.getData());
+                if(data.isEmpty() || PayloadCodec.STATE_PENDING_TEXT.equals(data)){
+                    // 桶节点或尚未决议的事务
+                    return;
+                }
+                String transactionId = ZKPaths.getNodeFromPath(childData.getPath());
+                liveCache.invalidate(transactionId);
+                if(listener.isWatching(transactionId)){
+                    knownPeers.remove(transactionId);
+                    layout.forget(transactionId);
+                    listener.change(transactionId, data);
+                }
+            }
+        });
+        try {
+            stateCache.start();
+        } catch (Exception e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
     }
 
     private void create(String path, String data, boolean ephemeral) {
@@ -137,6 +417,20 @@ public class CuratorZookeeperClient implements MediatorClient {
         }
     }
 
+    @Override
+    public void registerMethods(String group, Collection<String> signatures) {
+        if(dictionary != null){
+            dictionary.register(group, signatures);
+        }
+    }
+
+    /**
+     * 已登记的方法只写入方法id，未登记的携带签名（同时在后台登记）
+     */
+    private byte[] participant(String group, String signature) {
+        return codec.encodeParticipant(dictionary == null ? 0 : dictionary.idOf(group, signature), signature);
+    }
+
     @Override
     public void addWatcher(MediatorWatcher watcher) {
         this.listener = watcher;
@@ -144,47 +438,511 @@ public class CuratorZookeeperClient implements MediatorClient {
 
     @Override
     public void clear(String transactionId) {
-        String txChain = TransactionContext.TRANSACTION_CHAIN_ROOT + TransactionContext.NODE_SPLIT_CHAR + transactionId;
-        String txState = TransactionContext.TRANSACTION_STATE_ROOT + TransactionContext.NODE_SPLIT_CHAR + transactionId;
-        delete(txChain, true);
-        delete(txState, true);
+        knownPeers.remove(transactionId);
+        liveCache.invalidate(transactionId);
+        if(reaper != null){
+            reaper.enqueue(chainPath(transactionId), statePath(transactionId));
+        }else{
+            delete(chainPath(transactionId), true);
+            delete(statePath(transactionId), true);
+        }
+        layout.forget(transactionId);
+    }
+
+    @Override
+    public void startChain(String transactionId, String group, String peer, int index, String data) {
+        String txChain = chainPath(transactionId);
+        List<CreateOp> nodes = new ArrayList<>();
+        nodes.add(new CreateOp(txChain, codec.encodeChain(group, peer, System.currentTimeMillis())));
+        nodes.add(new CreateOp(statePath(transactionId), codec.encodePending()));
+        if(data != null){
+            String txGroup = txChain + TransactionContext.NODE_SPLIT_CHAR + group;
+            String txPeer = txGroup + TransactionContext.NODE_SPLIT_CHAR + peer;
+            nodes.add(new CreateOp(txGroup, EMPTY));
+            nodes.add(new CreateOp(txPeer, EMPTY));
+            nodes.add(new CreateOp(txPeer + TransactionContext.NODE_SPLIT_CHAR + index, participant(group, data)));
+            knownPeers.put(transactionId, txPeer);
+        }
+        try {
+            // 链、状态、参与节点一次multi请求创建
+            commitCreate(nodes);
+        } catch (NodeExistsException e) {
+            knownPeers.remove(transactionId);
+            throw new IllegalStateException("Transaction start failed, duplicate id [" + transactionId + "] in chain", e);
+        } catch (Exception e) {
+            knownPeers.remove(transactionId);
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+        liveCache.put(transactionId);
+        watchState(transactionId);
     }
 
     @Override
     public void joinChain(String transactionId, String group, String peer, int index, String data) {
-        String txChain = TransactionContext.TRANSACTION_CHAIN_ROOT + TransactionContext.NODE_SPLIT_CHAR + transactionId;
-        String txState = TransactionContext.TRANSACTION_STATE_ROOT + TransactionContext.NODE_SPLIT_CHAR + transactionId;
-        boolean exists = exists(txChain);
-        if(index > 0 && !exists){
-            throw new IllegalStateException("Transaction join failed, invalid id [" + transactionId + "] in chain");
-        }
-        if(index == 0){
-            // create new
-            createPersistent(txChain, group + TransactionContext.FIELD_SPLIT_CHAR + peer + TransactionContext.FIELD_SPLIT_CHAR + System.currentTimeMillis());
-            createPersistent(txState, "0");
-        }
-        // join
+        String txChain = chainPath(transactionId);
+        if(data == null){
+            // 只验证事务链，本地已确认存在时跳过
+            if(!liveCache.contains(transactionId) && !exists(txChain)){
+                if(resolveLegacy(transactionId)){
+                    joinChain(transactionId, group, peer, index, data);
+                    return;
+                }
+                throw new InvalidChainException(transactionId);
+            }
+            liveCache.put(transactionId);
+            watchState(transactionId);
+            return;
+        }
+        String txGroup = txChain + TransactionContext.NODE_SPLIT_CHAR + group;
+        String txPeer = txGroup + TransactionContext.NODE_SPLIT_CHAR + peer;
+        String txNode = txPeer + TransactionContext.NODE_SPLIT_CHAR + index;
+        // peer在组内唯一，只可能由当前节点创建；group可能已由同组其他节点创建
+        boolean peerKnown = txPeer.equals(knownPeers.get(transactionId));
+        boolean groupGuessed = !peerKnown && sharedGroups.contains(group);
+        boolean createGroup = !peerKnown && !groupGuessed;
+        while (true){
+            List<CreateOp> nodes = new ArrayList<>();
+            if(!peerKnown){
+                if(createGroup){
+                    nodes.add(new CreateOp(txGroup, EMPTY));
+                }
+                nodes.add(new CreateOp(txPeer, EMPTY));
+            }
+            nodes.add(new CreateOp(txNode, participant(group, data)));
+            try {
+                // 父节点不存在时multi整体失败（NoNode），同时完成了事务链验证
+                commitCreate(nodes);
+                knownPeers.put(transactionId, txPeer);
+                if(groupGuessed && createGroup){
+                    sharedGroups.remove(group);
+                }
+                break;
+            } catch (NoNodeException e) {
+                if(!peerKnown && !createGroup && txPeer.equals(failedPath(e, nodes))){
+                    // group尚未创建（或事务链不存在），带上group重新提交
+                    createGroup = true;
+                    continue;
+                }
+                if(resolveLegacy(transactionId)){
+                    joinChain(transactionId, group, peer, index, data);
+                    return;
+                }
+                throw new InvalidChainException(transactionId);
+            } catch (NodeExistsException e) {
+                String failedPath = failedPath(e, nodes);
+                if(createGroup && txGroup.equals(failedPath)){
+                    createGroup = false;
+                    sharedGroups.add(group);
+                }else if(!peerKnown && txPeer.equals(failedPath)){
+                    peerKnown = true;
+                }else{
+                    // 节点已注册
+                    break;
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+        }
+        liveCache.put(transactionId);
+        watchState(transactionId);
+    }
+
+    @Override
+    public CompletableFuture<Void> startChainAsync(final String transactionId, String group, String peer, int index, String data) {
+        String txChain = chainPath(transactionId);
+        List<CreateOp> nodes = new ArrayList<>();
+        nodes.add(new CreateOp(txChain, codec.encodeChain(group, peer, System.currentTimeMillis())));
+        nodes.add(new CreateOp(statePath(transactionId), codec.encodePending()));
+        final String txPeer;
         if(data != null){
-            create(txChain + TransactionContext.NODE_SPLIT_CHAR + group + TransactionContext.NODE_SPLIT_CHAR + peer + TransactionContext.NODE_SPLIT_CHAR + index, data, false);
+            String txGroup = txChain + TransactionContext.NODE_SPLIT_CHAR + group;
+            txPeer = txGroup + TransactionContext.NODE_SPLIT_CHAR + peer;
+            nodes.add(new CreateOp(txGroup, EMPTY));
+            nodes.add(new CreateOp(txPeer, EMPTY));
+            nodes.add(new CreateOp(txPeer + TransactionContext.NODE_SPLIT_CHAR + index, participant(group, data)));
+        }else{
+            txPeer = null;
         }
+        final BackgroundPipeline pipeline = new BackgroundPipeline(transactionId);
         try {
-            // watch rollback
-            if(!watcherMap.containsKey(txState)){
-                watcherMap.put(txState, 1);
-                client.getData().usingWatcher(new CuratorWatcherImpl()).forPath(txState);
+            // 链、状态、参与节点一次异步multi请求原子创建，状态监听随后在同一会话内发出，只等待一次往返
+            pipeline.expect();
+            commitCreateAsync(nodes, new MultiResult() {
+                @Override
+                public void done(KeeperException.Code code, String failedPath) {
+                    if(code == KeeperException.Code.OK){
+                        if(txPeer != null){
+                            knownPeers.put(transactionId, txPeer);
+                        }
+                        pipeline.complete(null);
+                    }else if(code == KeeperException.Code.NODEEXISTS){
+                        pipeline.complete(new IllegalStateException("Transaction start failed, duplicate id [" + transactionId + "] in chain", KeeperException.create(code, failedPath)));
+                    }else{
+                        pipeline.complete(KeeperException.create(code, failedPath));
+                    }
+                }
+            });
+            watchState(transactionId, pipeline);
+        } catch (Exception e) {
+            pipeline.fail(e);
+        }
+        return remember(transactionId, pipeline.seal());
+    }
+
+    /**
+     * 成功后记录为已确认存在的事务
+     */
+    private CompletableFuture<Void> remember(final String transactionId, CompletableFuture<Void> future) {
+        return future.thenApply(new Function<Void, Void>() {
+            @Override
+            public Void apply(Void aVoid) {
+                liveCache.put(transactionId);
+                return null;
             }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> joinChainAsync(String transactionId, String group, String peer, int index, String data) {
+        return join(transactionId, group, peer, new int[]{index}, data == null ? null : new String[]{data});
+    }
+
+    /**
+     * group、peer节点只创建一次，各index节点在同一会话中连续发出，只等待一次往返
+     */
+    @Override
+    public CompletableFuture<Void> joinChainBatchAsync(String transactionId, String group, String peer, int[] indexes, String[] data) {
+        return join(transactionId, group, peer, indexes, data);
+    }
+
+    /**
+     * @param data 为null时只验证事务链存在
+     */
+    private CompletableFuture<Void> join(final String transactionId, final String group, final String peer, final int[] indexes, final String[] data) {
+        CompletableFuture<Void> joined = remember(transactionId, doJoinChainAsync(transactionId, group, peer, indexes, data));
+        if(!layout.mayBeLegacy(transactionId)){
+            return joined;
+        }
+        // 分桶路径下不存在时，确认是否为平铺布局的旧事务后重新加入
+        return joined.handle(new BiFunction<Void, Throwable, CompletableFuture<Void>>() {
+            @Override
+            public CompletableFuture<Void> apply(Void aVoid, Throwable throwable) {
+                if(throwable == null){
+                    return CompletableFuture.completedFuture(null);
+                }
+                final Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+                if(!(cause instanceof InvalidChainException)){
+                    return failedFuture(cause);
+                }
+                return existsAsync(layout.legacyChainPath(transactionId)).thenCompose(new Function<Boolean, CompletionStage<Void>>() {
+                    @Override
+                    public CompletionStage<Void> apply(Boolean exists) {
+                        if(!exists){
+                            return failedFuture(cause);
+                        }
+                        layout.markLegacy(transactionId);
+                        return remember(transactionId, doJoinChainAsync(transactionId, group, peer, indexes, data));
+                    }
+                });
+            }
+        }).thenCompose(Function.<CompletableFuture<Void>>identity());
+    }
+
+    private CompletableFuture<Void> doJoinChainAsync(String transactionId, String group, String peer, int[] indexes, String[] data) {
+        String txChain = chainPath(transactionId);
+        BackgroundPipeline pipeline = new BackgroundPipeline(transactionId);
+        try {
+            if(data == null){
+                if(!liveCache.contains(transactionId)){
+                    client.checkExists().inBackground(pipeline.step(null)).forPath(txChain);
+                }
+            }else{
+                String txGroup = txChain + TransactionContext.NODE_SPLIT_CHAR + group;
+                String txPeer = txGroup + TransactionContext.NODE_SPLIT_CHAR + peer;
+                List<CreateOp> indexNodes = new ArrayList<>(indexes.length);
+                for (int i = 0; i < indexes.length; i++) {
+                    indexNodes.add(new CreateOp(txPeer + TransactionContext.NODE_SPLIT_CHAR + indexes[i], participant(group, data[i])));
+                }
+                boolean peerKnown = txPeer.equals(knownPeers.get(transactionId));
+                boolean groupGuessed = !peerKnown && sharedGroups.contains(group);
+                pipeline.expect();
+                joinMulti(new JoinMulti(transactionId, group, txGroup, txPeer, indexNodes, groupGuessed, pipeline), peerKnown, !peerKnown && !groupGuessed);
+            }
+            watchState(transactionId, pipeline);
         } catch (Exception e) {
-            // TODO rollback watch error ?
-            throw new IllegalStateException(e.getMessage(), e);
+            pipeline.fail(e);
         }
+        return pipeline.seal();
+    }
+
+    /**
+     * 异步提交一次加入的multi请求，规则与同步 joinChain 一致：父节点不存在（NoNode）时整体失败，同时完成了事务链验证；
+     * 按失败的节点调整后重新提交，重试仍在同一个流水线步骤内完成
+     */
+    private void joinMulti(final JoinMulti join, final boolean peerKnown, final boolean createGroup) throws Exception {
+        List<CreateOp> nodes = new ArrayList<>(join.indexNodes.size() + 2);
+        if(!peerKnown){
+            if(createGroup){
+                nodes.add(new CreateOp(join.txGroup, EMPTY));
+            }
+            nodes.add(new CreateOp(join.txPeer, EMPTY));
+        }
+        nodes.addAll(join.indexNodes);
+        commitCreateAsync(nodes, new MultiResult() {
+            @Override
+            public void done(KeeperException.Code code, String failedPath) {
+                try {
+                    if(code == KeeperException.Code.OK){
+                        // 全部创建成功后才记录，失败时之后的加入仍会带上父节点
+                        knownPeers.put(join.transactionId, join.txPeer);
+                        if(join.groupGuessed && createGroup){
+                            sharedGroups.remove(join.group);
+                        }
+                        join.pipeline.complete(null);
+                    }else if(code == KeeperException.Code.NONODE){
+                        if(!peerKnown && !createGroup && join.txPeer.equals(failedPath)){
+                            // group尚未创建（或事务链不存在），带上group重新提交
+                            joinMulti(join, false, true);
+                        }else{
+                            join.pipeline.complete(new InvalidChainException(join.transactionId));
+                        }
+                    }else if(code == KeeperException.Code.NODEEXISTS){
+                        if(createGroup && join.txGroup.equals(failedPath)){
+                            sharedGroups.add(join.group);
+                            joinMulti(join, false, false);
+                        }else if(!peerKnown && join.txPeer.equals(failedPath)){
+                            joinMulti(join, true, false);
+                        }else if(!join.removeIndex(failedPath)){
+                            join.pipeline.complete(KeeperException.create(code, failedPath));
+                        }else if(join.indexNodes.isEmpty()){
+                            // 节点均已注册
+                            knownPeers.put(join.transactionId, join.txPeer);
+                            join.pipeline.complete(null);
+                        }else{
+                            // 移除已注册的节点，其余重新提交
+                            joinMulti(join, true, false);
+                        }
+                    }else{
+                        join.pipeline.complete(KeeperException.create(code, failedPath));
+                    }
+                } catch (Exception e) {
+                    join.pipeline.complete(e);
+                }
+            }
+        });
+    }
+
+    private CompletableFuture<Boolean> existsAsync(String path) {
+        final CompletableFuture<Boolean> future = new CompletableFuture<>();
+        try {
+            client.checkExists().inBackground(new BackgroundCallback() {
+                @Override
+                public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+                    if(event.getResultCode() == KeeperException.Code.OK.intValue() || event.getResultCode() == KeeperException.Code.NONODE.intValue()){
+                        future.complete(event.getStat() != null);
+                    }else{
+                        future.completeExceptionally(new IllegalStateException(KeeperException.create(KeeperException.Code.get(event.getResultCode()), event.getPath())));
+                    }
+                }
+            }).forPath(path);
+        } catch (Exception e) {
+            future.completeExceptionally(new IllegalStateException(e.getMessage(), e));
+        }
+        return future;
+    }
+
+    private static <T> CompletableFuture<T> failedFuture(Throwable e) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+
+    /**
+     * 分桶布局下，事务可能由未开启分桶的节点以平铺布局发起
+     * @return 确认为平铺布局的旧事务时返回true
+     */
+    private boolean resolveLegacy(String transactionId) {
+        if(layout.mayBeLegacy(transactionId) && exists(layout.legacyChainPath(transactionId))){
+            layout.markLegacy(transactionId);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public CompletableFuture<Void> rollbackAsync(String transactionId, String group, String peer, String data) {
+        if(batcher != null){
+            return batcher.submit(statePath(transactionId), codec.encodeRollback(data));
+        }
+        BackgroundPipeline pipeline = new BackgroundPipeline(transactionId);
+        try {
+            client.setData().inBackground(pipeline.step(null)).forPath(statePath(transactionId), codec.encodeRollback(data));
+        } catch (Exception e) {
+            pipeline.fail(e);
+        }
+        return pipeline.seal();
+    }
+
+    @Override
+    public CompletableFuture<Void> commitAsync(String transactionId, String group, String peer) {
+        if(batcher != null){
+            return batcher.submit(statePath(transactionId), codec.encodeCommit());
+        }
+        BackgroundPipeline pipeline = new BackgroundPipeline(transactionId);
+        try {
+            client.setData().inBackground(pipeline.step(null)).forPath(statePath(transactionId), codec.encodeCommit());
+        } catch (Exception e) {
+            pipeline.fail(e);
+        }
+        return pipeline.seal();
+    }
+
+    @Override
+    public CompletableFuture<Void> clearAsync(String transactionId) {
+        if(reaper != null){
+            clear(transactionId);
+            return CompletableFuture.completedFuture(null);
+        }
+        knownPeers.remove(transactionId);
+        liveCache.invalidate(transactionId);
+        BackgroundPipeline pipeline = new BackgroundPipeline(transactionId);
+        try {
+            client.delete().deletingChildrenIfNeeded().inBackground(pipeline.step(KeeperException.Code.NONODE)).forPath(chainPath(transactionId));
+            client.delete().deletingChildrenIfNeeded().inBackground(pipeline.step(KeeperException.Code.NONODE)).forPath(statePath(transactionId));
+            layout.forget(transactionId);
+        } catch (Exception e) {
+            pipeline.fail(e);
+        }
+        return pipeline.seal();
+    }
+
+    /**
+     * 按顺序在一个multi请求中创建节点
+     */
+    private void commitCreate(List<CreateOp> nodes) throws Exception {
+        CuratorTransaction transaction = client.inTransaction();
+        for (CreateOp node : nodes){
+            transaction = transaction.create().forPath(node.path, node.data).and();
+        }
+        ((CuratorTransactionFinal) transaction).commit();
+    }
+
+    /**
+     * 按顺序在一个异步multi请求中原子创建节点（zookeeper 3.4.7 起支持异步multi），回调在事件线程上执行
+     */
+    private void commitCreateAsync(final List<CreateOp> nodes, final MultiResult result) throws Exception {
+        List<Op> ops = new ArrayList<>(nodes.size());
+        for (CreateOp node : nodes){
+            ops.add(Op.create(node.path, node.data, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT));
+        }
+        client.getZookeeperClient().getZooKeeper().multi(ops, new AsyncCallback.MultiCallback() {
+            @Override
+            public void processResult(int rc, String path, Object ctx, List<OpResult> opResults) {
+                KeeperException.Code code = KeeperException.Code.get(rc);
+                result.done(code, code == KeeperException.Code.OK ? null : failedPath(code, opResults, nodes, path));
+            }
+        }, null);
+    }
+
+    private String failedPath(KeeperException e, List<CreateOp> nodes) {
+        return failedPath(e.code(), e.getResults(), nodes, e.getPath());
+    }
+
+    private static String failedPath(KeeperException.Code code, List<OpResult> results, List<CreateOp> nodes, String defaultPath) {
+        if(results != null){
+            for (int i = 0; i < results.size() && i < nodes.size(); i++) {
+                OpResult result = results.get(i);
+                if(result instanceof OpResult.ErrorResult && ((OpResult.ErrorResult) result).getErr() == code.intValue()){
+                    return nodes.get(i).path;
+                }
+            }
+        }
+        return defaultPath;
+    }
+
+    /**
+     * 后台注册状态节点监听，不阻塞业务线程
+     */
+    private void watchState(final String transactionId) {
+        BackgroundPipeline pipeline = new BackgroundPipeline(transactionId);
+        try {
+            watchState(transactionId, pipeline);
+        } catch (Exception e) {
+            pipeline.fail(e);
+        }
+        pipeline.seal().whenComplete(new BiConsumer<Void, Throwable>() {
+            @Override
+            public void accept(Void aVoid, Throwable throwable) {
+                if(throwable != null){
+                    logger.error("transaction [{}] state watch failed. {}", transactionId, throwable.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * 注册状态监听。加入时事务可能已有决议（如延迟注册的参与方），注册时读到的状态已决议的立即通知，
+     * 之后该监听再触发（如状态节点被删除）时由 watcherMap 去重
+     */
+    private void watchState(final String transactionId, BackgroundPipeline pipeline) throws Exception {
+        final String txState = statePath(transactionId);
+        if(stateCacheMode){
+            // 共享监听只分发之后的变更，已决议的从缓存中取当前状态
+            ChildData current = stateCache == null ? null : stateCache.getCurrentData(txState);
+            String data = current == null || current.getData() == null ? null : PayloadCodec.decodeState(current.getData());
+            if(listener != null && decided(data)){
+                liveCache.invalidate(transactionId);
+                knownPeers.remove(transactionId);
+                layout.forget(transactionId);
+                listener.change(transactionId, data);
+            }
+            return;
+        }
+        if(watcherMap.putIfAbsent(txState, 1) != null){
+            return;
+        }
+        final BackgroundCallback step = pipeline.step(null);
+        client.getData().usingWatcher(new CuratorWatcherImpl()).inBackground(new BackgroundCallback() {
+            @Override
+            public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+                if(event.getResultCode() != KeeperException.Code.OK.intValue()){
+                    watcherMap.remove(txState);
+                }
+                step.processResult(client, event);
+                if(event.getResultCode() == KeeperException.Code.OK.intValue()){
+                    String data = PayloadCodec.decodeState(event.getData());
+                    if(listener != null && decided(data)){
+                        notifyState(txState, data);
+                    }
+                }
+            }
+        }).forPath(txState);
+    }
+
+    private static boolean decided(String data) {
+        return data != null && !data.isEmpty() && !PayloadCodec.STATE_PENDING_TEXT.equals(data);
+    }
+
+    private String chainPath(String transactionId) {
+        return layout.chainPath(transactionId);
+    }
+
+    private String statePath(String transactionId) {
+        return layout.statePath(transactionId);
     }
 
     @Override
     public void rollback(String transactionId, String group, String peer, String data) {
         try {
-            String txState = TransactionContext.TRANSACTION_STATE_ROOT + TransactionContext.NODE_SPLIT_CHAR + transactionId;
+            String txState = statePath(transactionId);
+            if(batcher != null){
+                awaitDecision(batcher.submit(txState, codec.encodeRollback(data)));
+                return;
+            }
             // TODO 是否需要处理返回值？
-            client.setData().forPath(txState, data == null ? "".getBytes() : data.getBytes());
+            client.setData().forPath(txState, codec.encodeRollback(data));
+        } catch (IllegalStateException e) {
+            throw e;
         } catch (Exception e) {
             // TODO rollback error ?
             throw new IllegalStateException(e.getMessage(), e);
@@ -194,20 +952,48 @@ public class CuratorZookeeperClient implements MediatorClient {
     @Override
     public void commit(String transactionId, String group, String peer) {
         try {
-            client.setData().forPath(TransactionContext.TRANSACTION_STATE_ROOT + TransactionContext.NODE_SPLIT_CHAR + transactionId, "1".getBytes());
+            if(batcher != null){
+                awaitDecision(batcher.submit(statePath(transactionId), codec.encodeCommit()));
+                return;
+            }
+            client.setData().forPath(statePath(transactionId), codec.encodeCommit());
+        } catch (IllegalStateException e) {
+            throw e;
         } catch (Exception e) {
             throw new IllegalStateException(e.getMessage(), e);
         }
     }
 
+    private static void awaitDecision(CompletableFuture<Void> future) throws Exception {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof Exception){
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
     @Override
     public boolean transactionExists(String transactionId) {
-        return exists(TransactionContext.TRANSACTION_STATE_ROOT + TransactionContext.NODE_SPLIT_CHAR + transactionId);
+        if(liveCache.contains(transactionId)){
+            return true;
+        }
+        if(exists(statePath(transactionId)) || resolveLegacy(transactionId)){
+            liveCache.put(transactionId);
+            return true;
+        }
+        return false;
     }
 
     @Override
     public TransactionResult getResults(String transactionId) {
-        return null;
+        TransactionResult result = resultReader.read(transactionId, chainPath(transactionId), statePath(transactionId));
+        if(result == null && resolveLegacy(transactionId)){
+            result = resultReader.read(transactionId, chainPath(transactionId), statePath(transactionId));
+        }
+        return result;
     }
 
     @Override
@@ -215,28 +1001,249 @@ public class CuratorZookeeperClient implements MediatorClient {
         return client.getZookeeperClient().isConnected();
     }
 
+    /**
+     * 等待后台回收的已结束事务数，未开启后台回收时为0
+     * @return
+     */
+    public int getPendingReapCount() {
+        return reaper == null ? 0 : reaper.getQueueSize();
+    }
+
+    /**
+     * 事务存在性验证命中本地缓存的次数
+     * @return
+     */
+    public long getExistsCacheHitCount() {
+        return liveCache.getHitCount();
+    }
+
+    /**
+     * 事务存在性验证未命中本地缓存（访问协调中心）的次数
+     * @return
+     */
+    public long getExistsCacheMissCount() {
+        return liveCache.getMissCount();
+    }
+
+    /**
+     * 事务结果查询命中已结束事务缓存的次数
+     * @return
+     */
+    public long getResultCacheHitCount() {
+        return resultReader.getHitCount();
+    }
+
+    /**
+     * 事务结果查询未命中缓存（访问协调中心）的次数
+     * @return
+     */
+    public long getResultCacheMissCount() {
+        return resultReader.getMissCount();
+    }
+
+    /**
+     * 组提交平均每次请求写入的状态数，未开启组提交时为0
+     * @return
+     */
+    public double getGroupCommitAverageBatch() {
+        if(batcher == null || batcher.getRequestCount() == 0){
+            return 0;
+        }
+        return (double) batcher.getWriteCount() / batcher.getRequestCount();
+    }
+
     @Override
     public void close() {
+        if(batcher != null){
+            batcher.shutdown();
+        }
+        if(reaper != null){
+            reaper.shutdown();
+        }
+        if(stateCache != null){
+            stateCache.close();
+        }
         client.close();
     }
 
+    /**
+     * 一组按序发出的后台请求，全部返回后完成future，任一失败则以第一个异常完成
+     */
+    private class BackgroundPipeline {
+
+        private final String transactionId;
+
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        /**
+         * 初始为1，seal时扣除，防止请求未全部发出前提前完成
+         */
+        private final AtomicInteger pending = new AtomicInteger(1);
+
+        BackgroundPipeline(String transactionId) {
+            this.transactionId = transactionId;
+        }
+
+        /**
+         * @param ignored 可忽略的返回码，如创建时的NodeExists、删除时的NoNode
+         */
+        BackgroundCallback step(final KeeperException.Code ignored) {
+            pending.incrementAndGet();
+            return new BackgroundCallback() {
+                @Override
+                public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+                    KeeperException.Code code = KeeperException.Code.get(event.getResultCode());
+                    if(code == ignored){
+                        // ignore
+                    }else if(code == KeeperException.Code.NONODE){
+                        fail(new InvalidChainException(transactionId));
+                    }else if(event.getType() == CuratorEventType.EXISTS && event.getStat() == null){
+                        fail(new InvalidChainException(transactionId));
+                    }else if(code != KeeperException.Code.OK){
+                        fail(KeeperException.create(code, event.getPath()));
+                    }
+                    arrive();
+                }
+            };
+        }
+
+        /**
+         * 一个不经过 Curator 回调的步骤（如异步multi），完成时调用 {@link #complete(Throwable)}
+         */
+        void expect() {
+            pending.incrementAndGet();
+        }
+
+        /**
+         * @param e 为null时成功
+         */
+        void complete(Throwable e) {
+            if(e != null){
+                fail(e);
+            }
+            arrive();
+        }
+
+        void fail(Throwable e) {
+            knownPeers.remove(transactionId);
+            liveCache.invalidate(transactionId);
+            if(!(e instanceof IllegalStateException)){
+                e = new IllegalStateException(e.getMessage(), e);
+            }
+            future.completeExceptionally(e);
+        }
+
+        private void arrive() {
+            if(pending.decrementAndGet() == 0){
+                future.complete(null);
+            }
+        }
+
+        CompletableFuture<Void> seal() {
+            arrive();
+            return future;
+        }
+    }
+
+    /**
+     * 异步multi结果
+     */
+    interface MultiResult {
+        /**
+         * @param failedPath 失败时为第一个失败操作的路径
+         */
+        void done(KeeperException.Code code, String failedPath);
+    }
+
+    /**
+     * 一次异步加入的参数，重新提交时沿用
+     */
+    private static class JoinMulti {
+
+        final String transactionId;
+
+        final String group;
+
+        final String txGroup;
+
+        final String txPeer;
+
+        /**
+         * 尚未创建的index节点，已存在的在重新提交前移除
+         */
+        final List<CreateOp> indexNodes;
+
+        final boolean groupGuessed;
+
+        final BackgroundPipeline pipeline;
+
+        JoinMulti(String transactionId, String group, String txGroup, String txPeer, List<CreateOp> indexNodes, boolean groupGuessed, BackgroundPipeline pipeline) {
+            this.transactionId = transactionId;
+            this.group = group;
+            this.txGroup = txGroup;
+            this.txPeer = txPeer;
+            this.indexNodes = indexNodes;
+            this.groupGuessed = groupGuessed;
+            this.pipeline = pipeline;
+        }
+
+        /**
+         * 移除已存在的index节点
+         * @return path不是待创建的index节点时返回false
+         */
+        boolean removeIndex(String path) {
+            for (int i = 0; i < indexNodes.size(); i++) {
+                if(indexNodes.get(i).path.equals(path)){
+                    indexNodes.remove(i);
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    static class CreateOp {
+
+        final String path;
+
+        final byte[] data;
+
+        CreateOp(String path, byte[] data) {
+            this.path = path;
+            this.data = data;
+        }
+    }
+
+    /**
+     * 事务链不存在（伪造的id或事务已结束）
+     */
+    static class InvalidChainException extends IllegalStateException {
+
+        private static final long serialVersionUID = 1L;
+
+        InvalidChainException(String transactionId) {
+            super("Transaction join failed, invalid id [" + transactionId + "] in chain");
+        }
+    }
+
     private class CuratorWatcherImpl implements CuratorWatcher {
 
         @Override
         public void process(WatchedEvent event) throws Exception {
-            if (listener != null) {
-                String path = event.getPath() == null ? "" : event.getPath();
-                if(path.length() > 0){
-                    watcherMap.remove(path);
-                    int lastIndex = path.lastIndexOf(TransactionContext.NODE_SPLIT_CHAR);
-                    listener.change(path.substring(lastIndex + 1),
-                            // if path is null, curator using watcher will throw NullPointerException.
-                            // if client connect or disconnect to server, zookeeper will queue
-                            // watched event(Watcher.Event.EventType.None, .., path = null).
-                            new String(client.getData().forPath(path)));
+            // if path is null, curator using watcher will throw NullPointerException.
+            // if client connect or disconnect to server, zookeeper will queue
+            // watched event(Watcher.Event.EventType.None, .., path = null).
+            if (listener != null && event.getPath() != null && event.getPath().length() > 0) {
+                String path = event.getPath();
+                String data;
+                try {
+                    data = PayloadCodec.decodeState(client.getData().forPath(path));
+                } catch (NoNodeException e) {
+                    // 状态节点已被删除
+                    data = null;
                 }
+                notifyState(path, data);
             }
         }
     }
-
 }
@@ -22,6 +22,10 @@ import net.ewant.rolling.transaction.concert.URL;
 
 public class CuratorZookeeperTransporter implements MediatorTransporter {
 
+    @Override
+    public String getProtocol() {
+        return "zk";
+    }
 
     @Override
     public MediatorClient connect(URL url) {
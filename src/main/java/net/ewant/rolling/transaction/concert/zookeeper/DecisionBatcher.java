@@ -0,0 +1,170 @@
+package net.ewant.rolling.transaction.concert.zookeeper;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.transaction.CuratorTransaction;
+import org.apache.curator.framework.api.transaction.CuratorTransactionFinal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 全局提交/回滚状态写入的组提交。写请求入队后由单独线程在一个很短的时间窗口内（或攒够N条）
+ * 合并为一个multi请求写入，每个调用方通过自己的future获得结果；
+ * multi失败时（如其中某个事务状态节点已被清理）逐条重写，只让真正失败的请求失败
+ */
+class DecisionBatcher {
+
+    private static Logger logger = LoggerFactory.getLogger(DecisionBatcher.class);
+
+    /**
+     * 单个multi请求的最大操作数，避免超过zookeeper请求包大小限制（jute.maxbuffer）
+     */
+    private static final int MAX_OPS_PER_MULTI = 1000;
+
+    private final CuratorFramework client;
+
+    private final int batchSize;
+
+    private final long windowNanos;
+
+    private final BlockingQueue<Decision> queue = new LinkedBlockingQueue<>();
+
+    private final LongAdder writes = new LongAdder();
+
+    private final LongAdder requests = new LongAdder();
+
+    private final Thread flusher;
+
+    private volatile boolean running = true;
+
+    /**
+     * @param client
+     * @param batchSize 每个multi请求最多合并的写入数
+     * @param windowMicros 第一条写入到达后最多等待的时间（微秒）
+     */
+    DecisionBatcher(CuratorFramework client, int batchSize, long windowMicros) {
+        if(batchSize <= 0 || windowMicros < 0){
+            throw new IllegalArgumentException("group commit size must be positive and window must not be negative");
+        }
+        this.client = client;
+        this.batchSize = Math.min(batchSize, MAX_OPS_PER_MULTI);
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+        this.flusher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, "rolling-tx-group-commit");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    CompletableFuture<Void> submit(String path, byte[] data) {
+        Decision decision = new Decision(path, data);
+        if(!running){
+            decision.future.completeExceptionally(new IllegalStateException("group commit stopped, path [" + path + "]"));
+            return decision.future;
+        }
+        queue.offer(decision);
+        return decision.future;
+    }
+
+    long getWriteCount() {
+        return writes.sum();
+    }
+
+    long getRequestCount() {
+        return requests.sum();
+    }
+
+    private void loop() {
+        List<Decision> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()){
+            try {
+                Decision first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if(first == null){
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < batchSize){
+                    if(queue.drainTo(batch, batchSize - batch.size()) > 0){
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if(remaining <= 0){
+                        break;
+                    }
+                    Decision next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if(next == null){
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                if(!running){
+                    flush(batch);
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<Decision> batch) {
+        if(batch.isEmpty()){
+            return;
+        }
+        if(batch.size() > 1){
+            try {
+                CuratorTransaction transaction = client.inTransaction();
+                for (Decision decision : batch){
+                    transaction = transaction.setData().forPath(decision.path, decision.data).and();
+                }
+                ((CuratorTransactionFinal) transaction).commit();
+                requests.increment();
+                writes.add(batch.size());
+                for (Decision decision : batch){
+                    decision.future.complete(null);
+                }
+                return;
+            } catch (Exception e) {
+                logger.warn("group commit of {} decisions failed, fallback to single write. {}", batch.size(), e.getMessage());
+            }
+        }
+        for (Decision decision : batch){
+            try {
+                client.setData().forPath(decision.path, decision.data);
+                requests.increment();
+                writes.increment();
+                decision.future.complete(null);
+            } catch (Exception e) {
+                decision.future.completeExceptionally(new IllegalStateException(e.getMessage(), e));
+            }
+        }
+    }
+
+    void shutdown() {
+        running = false;
+        flusher.interrupt();
+    }
+
+    static class Decision {
+
+        final String path;
+
+        final byte[] data;
+
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Decision(String path, byte[] data) {
+            this.path = path;
+            this.data = data;
+        }
+    }
+}
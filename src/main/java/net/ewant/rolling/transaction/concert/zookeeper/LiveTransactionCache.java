@@ -0,0 +1,88 @@
+package net.ewant.rolling.transaction.concert.zookeeper;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 本地已确认存在的事务id缓存，同一事务在本节点重复加入时跳过事务链存在性验证。
+ * 容量有界（超出时淘汰最久未访问的事务），条目超过有效期后失效；事务状态变更或清理时由监听主动失效。
+ * 容量为0时不启用
+ */
+class LiveTransactionCache {
+
+    private final int maxSize;
+
+    private final long ttlMillis;
+
+    /**
+     * 事务id -> 过期时间，按访问顺序排列，读写均在锁内
+     */
+    private final Map<String, Long> expiries;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param maxSize 最大缓存事务数
+     * @param ttlMillis 有效期（毫秒）
+     */
+    LiveTransactionCache(final int maxSize, long ttlMillis) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        this.expiries = maxSize <= 0 ? null : new LinkedHashMap<String, Long>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    boolean contains(String transactionId) {
+        if(expiries == null){
+            return false;
+        }
+        boolean live;
+        synchronized (expiries){
+            Long expiry = expiries.get(transactionId);
+            live = expiry != null && expiry > System.currentTimeMillis();
+            if(expiry != null && !live){
+                expiries.remove(transactionId);
+            }
+        }
+        if(live){
+            hits.increment();
+        }else{
+            misses.increment();
+        }
+        return live;
+    }
+
+    void put(String transactionId) {
+        if(expiries == null){
+            return;
+        }
+        long expiry = System.currentTimeMillis() + ttlMillis;
+        synchronized (expiries){
+            expiries.put(transactionId, expiry);
+        }
+    }
+
+    void invalidate(String transactionId) {
+        if(expiries == null){
+            return;
+        }
+        synchronized (expiries){
+            expiries.remove(transactionId);
+        }
+    }
+
+    long getHitCount() {
+        return hits.sum();
+    }
+
+    long getMissCount() {
+        return misses.sum();
+    }
+}
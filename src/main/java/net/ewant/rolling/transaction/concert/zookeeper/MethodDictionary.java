@@ -0,0 +1,164 @@
+package net.ewant.rolling.transaction.concert.zookeeper;
+
+import net.ewant.rolling.transaction.TransactionContext;
+import net.ewant.rolling.transaction.concert.PayloadCodec;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.BackgroundCallback;
+import org.apache.curator.framework.api.CuratorEvent;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.NoNodeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 应用组方法签名字典 /rolling-tx/dict/{group}/{methodId}。
+ * 方法id由精简签名哈希得到，各节点无需协调即可得出相同的id；登记成功（或确认已由同组其他节点登记）后，
+ * 事务链中只传递方法id，签名仅在查询事务结果等需要时按需解析
+ */
+class MethodDictionary {
+
+    private static Logger logger = LoggerFactory.getLogger(MethodDictionary.class);
+
+    private final CuratorFramework client;
+
+    /**
+     * 已登记：group -> (签名 -> id)
+     */
+    private final ConcurrentMap<String, ConcurrentMap<String, Integer>> registered = new ConcurrentHashMap<>();
+
+    /**
+     * 已解析：group -> (id -> 签名)
+     */
+    private final ConcurrentMap<String, ConcurrentMap<Integer, String>> resolved = new ConcurrentHashMap<>();
+
+    /**
+     * 登记中的签名，避免重复请求
+     */
+    private final ConcurrentMap<String, Boolean> registering = new ConcurrentHashMap<>();
+
+    MethodDictionary(CuratorFramework client) {
+        this.client = client;
+    }
+
+    static int methodId(String compactSignature) {
+        int h = compactSignature.hashCode() & Integer.MAX_VALUE;
+        // 0 保留为“未登记，携带签名”
+        return h == 0 ? 1 : h;
+    }
+
+    /**
+     * @return 已登记的方法id，未登记时返回0并在后台登记
+     */
+    int idOf(String group, String signature) {
+        ConcurrentMap<String, Integer> ids = registered.get(group);
+        Integer id = ids == null ? null : ids.get(signature);
+        if(id != null){
+            return id;
+        }
+        register(group, signature);
+        return 0;
+    }
+
+    void register(String group, Collection<String> signatures) {
+        for (String signature : signatures){
+            register(group, signature);
+        }
+    }
+
+    private void register(final String group, final String signature) {
+        final String key = group + TransactionContext.NODE_SPLIT_CHAR + signature;
+        if(registering.putIfAbsent(key, Boolean.TRUE) != null){
+            return;
+        }
+        final String compact = PayloadCodec.compactSignature(signature);
+        final int id = methodId(compact);
+        final String path = TransactionContext.TRANSACTION_DICT_ROOT + TransactionContext.NODE_SPLIT_CHAR + group + TransactionContext.NODE_SPLIT_CHAR + id;
+        try {
+            client.create().creatingParentsIfNeeded().inBackground(new BackgroundCallback() {
+                @Override
+                public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+                    int code = event.getResultCode();
+                    if(code == KeeperException.Code.OK.intValue()){
+                        registered(group, signature, compact, id);
+                    }else if(code == KeeperException.Code.NODEEXISTS.intValue()){
+                        // 同组其他节点已登记，确认不是哈希冲突
+                        verify(group, signature, compact, id, path);
+                    }else{
+                        registering.remove(key);
+                        logger.warn("method [{}] register failed, code {}", signature, code);
+                    }
+                }
+            }).forPath(path, compact.getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            registering.remove(key);
+            logger.warn("method [{}] register failed. {}", signature, e.getMessage());
+        }
+    }
+
+    private void verify(final String group, final String signature, final String compact, final int id, String path) throws Exception {
+        client.getData().inBackground(new BackgroundCallback() {
+            @Override
+            public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+                if(event.getResultCode() == KeeperException.Code.OK.intValue() && compact.equals(new String(event.getData(), StandardCharsets.UTF_8))){
+                    registered(group, signature, compact, id);
+                }else{
+                    // 哈希冲突，该方法始终携带签名
+                    logger.warn("method [{}] id {} conflict in group [{}], signature will be sent inline", signature, id, group);
+                }
+            }
+        }).forPath(path);
+    }
+
+    private void registered(String group, String signature, String compact, int id) {
+        ConcurrentMap<String, Integer> ids = registered.get(group);
+        if(ids == null){
+            registered.putIfAbsent(group, new ConcurrentHashMap<String, Integer>());
+            ids = registered.get(group);
+        }
+        ids.put(signature, id);
+        resolvedMap(group).put(id, compact);
+    }
+
+    /**
+     * 按需解析方法签名，本地未缓存时读取字典节点
+     */
+    String resolve(String group, int id) {
+        ConcurrentMap<Integer, String> signatures = resolvedMap(group);
+        String signature = signatures.get(id);
+        if(signature != null){
+            return signature;
+        }
+        try {
+            signature = new String(client.getData().forPath(TransactionContext.TRANSACTION_DICT_ROOT + TransactionContext.NODE_SPLIT_CHAR + group + TransactionContext.NODE_SPLIT_CHAR + id), StandardCharsets.UTF_8);
+            signatures.put(id, signature);
+            return signature;
+        } catch (NoNodeException e) {
+            return null;
+        } catch (Exception e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    PayloadCodec.MethodResolver resolver(final String group) {
+        return new PayloadCodec.MethodResolver() {
+            @Override
+            public String resolve(int methodId) {
+                return MethodDictionary.this.resolve(group, methodId);
+            }
+        };
+    }
+
+    private ConcurrentMap<Integer, String> resolvedMap(String group) {
+        ConcurrentMap<Integer, String> signatures = resolved.get(group);
+        if(signatures == null){
+            resolved.putIfAbsent(group, new ConcurrentHashMap<Integer, String>());
+            signatures = resolved.get(group);
+        }
+        return signatures;
+    }
+}
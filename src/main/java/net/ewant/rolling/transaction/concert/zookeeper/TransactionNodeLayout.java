@@ -0,0 +1,95 @@
+package net.ewant.rolling.transaction.concert.zookeeper;
+
+import net.ewant.rolling.transaction.TransactionContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 事务链、状态节点在zookeeper中的布局。
+ * 分桶数为0时为平铺布局 /rolling-tx/state/{id}；大于0时为分桶布局 /rolling-tx/state/{hash(id) mod N}/{id}，
+ * 使根节点的子节点数量保持有界。分桶布局下兼容读取平铺布局的旧事务（由未开启分桶的节点发起）
+ */
+class TransactionNodeLayout {
+
+    private final int buckets;
+
+    /**
+     * 确认为平铺布局的旧事务
+     */
+    private final Set<String> legacyIds = ConcurrentHashMap.newKeySet();
+
+    TransactionNodeLayout(int buckets) {
+        if(buckets < 0){
+            throw new IllegalArgumentException("mediator buckets must not be negative: " + buckets);
+        }
+        this.buckets = buckets;
+    }
+
+    boolean isBucketed() {
+        return buckets > 0;
+    }
+
+    /**
+     * 所有节点使用相同算法，只依赖事务id即可定位到同一个桶
+     */
+    String bucket(String transactionId) {
+        int h = transactionId.hashCode();
+        h ^= (h >>> 16);
+        return String.valueOf((h & Integer.MAX_VALUE) % buckets);
+    }
+
+    String chainPath(String transactionId) {
+        return path(TransactionContext.TRANSACTION_CHAIN_ROOT, transactionId);
+    }
+
+    String statePath(String transactionId) {
+        return path(TransactionContext.TRANSACTION_STATE_ROOT, transactionId);
+    }
+
+    String legacyChainPath(String transactionId) {
+        return TransactionContext.TRANSACTION_CHAIN_ROOT + TransactionContext.NODE_SPLIT_CHAR + transactionId;
+    }
+
+    private String path(String root, String transactionId) {
+        if(!isBucketed() || legacyIds.contains(transactionId)){
+            return root + TransactionContext.NODE_SPLIT_CHAR + transactionId;
+        }
+        return root + TransactionContext.NODE_SPLIT_CHAR + bucket(transactionId) + TransactionContext.NODE_SPLIT_CHAR + transactionId;
+    }
+
+    /**
+     * 分桶路径下找不到，且是否存在平铺布局的事务还未确认时，返回true
+     */
+    boolean mayBeLegacy(String transactionId) {
+        return isBucketed() && !legacyIds.contains(transactionId);
+    }
+
+    void markLegacy(String transactionId) {
+        legacyIds.add(transactionId);
+    }
+
+    void forget(String transactionId) {
+        legacyIds.remove(transactionId);
+    }
+
+    /**
+     * 需要预先创建的桶节点
+     */
+    List<String> bucketPaths(String root) {
+        List<String> paths = new ArrayList<>(buckets);
+        for (int i = 0; i < buckets; i++) {
+            paths.add(root + TransactionContext.NODE_SPLIT_CHAR + i);
+        }
+        return paths;
+    }
+
+    /**
+     * 状态根节点下事务状态节点的深度
+     */
+    int stateDepth() {
+        return isBucketed() ? 2 : 1;
+    }
+}
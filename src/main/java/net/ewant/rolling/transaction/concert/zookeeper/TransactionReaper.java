@@ -0,0 +1,288 @@
+package net.ewant.rolling.transaction.concert.zookeeper;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.BackgroundCallback;
+import org.apache.curator.framework.api.CuratorEvent;
+import org.apache.curator.framework.api.transaction.CuratorTransaction;
+import org.apache.curator.framework.api.transaction.CuratorTransactionFinal;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.NoNodeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 已结束事务的后台回收。清理请求只入队，由单独线程按固定频率批量取出，
+ * 批内各事务的子树以后台请求并行读取，节点按子先父后的顺序合并为multi请求删除，不占用通知线程，也不与在途事务的协调请求争抢。
+ * 读取或删除失败（连接断开、会话过期等）的事务重新入队，下次回收时重试
+ */
+class TransactionReaper {
+
+    private static Logger logger = LoggerFactory.getLogger(TransactionReaper.class);
+
+    /**
+     * 单个multi请求的最大操作数，避免超过zookeeper请求包大小限制（jute.maxbuffer）
+     */
+    private static final int MAX_OPS_PER_MULTI = 1000;
+
+    /**
+     * 等待一批子树读取完成的最长时间，超时的事务重新入队
+     */
+    private static final long COLLECT_TIMEOUT_MILLIS = 10000;
+
+    /**
+     * 子节点路径总比父节点长，按长度降序即为子先父后
+     */
+    private static final Comparator<String> CHILDREN_FIRST = new Comparator<String>() {
+        @Override
+        public int compare(String o1, String o2) {
+            return o2.length() - o1.length();
+        }
+    };
+
+    private final CuratorFramework client;
+
+    private final int batchSize;
+
+    private final Queue<String[]> queue = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final LongAdder reaped = new LongAdder();
+
+    private final LongAdder multiRequests = new LongAdder();
+
+    private final LongAdder retries = new LongAdder();
+
+    private final ScheduledExecutorService executor;
+
+    /**
+     * @param client
+     * @param batchSize 每次最多回收的事务数
+     * @param intervalMillis 回收间隔
+     */
+    TransactionReaper(CuratorFramework client, int batchSize, long intervalMillis) {
+        if(batchSize <= 0 || intervalMillis <= 0){
+            throw new IllegalArgumentException("reaper batch size and interval must be positive");
+        }
+        this.client = client;
+        this.batchSize = batchSize;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "rolling-tx-reaper");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    reap();
+                } catch (Throwable e) {
+                    logger.error("transaction reap failed. " + e.getMessage(), e);
+                }
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param paths 需要删除的子树根路径（事务链、状态节点）
+     */
+    void enqueue(String... paths) {
+        queue.offer(paths);
+        queued.incrementAndGet();
+    }
+
+    /**
+     * 等待回收的事务数
+     */
+    int getQueueSize() {
+        return queued.get();
+    }
+
+    long getReapedCount() {
+        return reaped.sum();
+    }
+
+    long getMultiRequestCount() {
+        return multiRequests.sum();
+    }
+
+    /**
+     * 因读取、删除失败重新入队的次数
+     */
+    long getRetryCount() {
+        return retries.sum();
+    }
+
+    private void reap() throws InterruptedException {
+        List<Subtree> batch = new ArrayList<>(batchSize);
+        String[] paths;
+        while (batch.size() < batchSize && (paths = queue.poll()) != null){
+            queued.decrementAndGet();
+            batch.add(new Subtree(paths));
+        }
+        if(batch.isEmpty()){
+            return;
+        }
+        for (Subtree subtree : batch){
+            subtree.collect();
+        }
+        long deadline = System.currentTimeMillis() + COLLECT_TIMEOUT_MILLIS;
+        List<Subtree> collected = new ArrayList<>(batch.size());
+        List<String> deletes = new ArrayList<>();
+        for (Subtree subtree : batch){
+            if(subtree.await(deadline - System.currentTimeMillis())){
+                collected.add(subtree);
+                deletes.addAll(subtree.deletes());
+            }else{
+                retry(subtree);
+            }
+        }
+        try {
+            for (int from = 0; from < deletes.size(); from += MAX_OPS_PER_MULTI) {
+                // 子节点总在父节点之前，分段提交不会出现NotEmpty
+                commitDelete(deletes.subList(from, Math.min(from + MAX_OPS_PER_MULTI, deletes.size())));
+            }
+            reaped.add(collected.size());
+        } catch (Exception e) {
+            // 节点被并发修改或连接异常，逐个事务回退为递归删除
+            logger.warn("transaction batch reap failed, fallback to single delete. {}", e.getMessage());
+            for (Subtree subtree : collected){
+                if(deleteRecursive(subtree.roots)){
+                    reaped.increment();
+                }else{
+                    retry(subtree);
+                }
+            }
+        }
+    }
+
+    private void retry(Subtree subtree) {
+        retries.increment();
+        logger.warn("transaction reap failed, retry later, path {}. {}", Arrays.toString(subtree.roots), subtree.failure == null ? "timeout" : subtree.failure.getMessage());
+        enqueue(subtree.roots);
+    }
+
+    private void commitDelete(List<String> paths) throws Exception {
+        if(paths.isEmpty()){
+            return;
+        }
+        CuratorTransaction transaction = client.inTransaction();
+        for (String path : paths){
+            transaction = transaction.delete().forPath(path).and();
+        }
+        ((CuratorTransactionFinal) transaction).commit();
+        multiRequests.increment();
+    }
+
+    /**
+     * @return 全部删除（或已不存在）时返回true
+     */
+    private boolean deleteRecursive(String[] roots) {
+        for (String root : roots){
+            try {
+                client.delete().deletingChildrenIfNeeded().forPath(root);
+            } catch (NoNodeException e) {
+            } catch (Exception e) {
+                logger.error("transaction reap failed, path [{}]. {}", root, e.getMessage());
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 一个事务需要删除的子树，以后台getChildren并行读取
+     */
+    private class Subtree {
+
+        final String[] roots;
+
+        final List<String> paths = Collections.synchronizedList(new ArrayList<String>());
+
+        /**
+         * 初始为1，请求全部发出后扣除
+         */
+        final AtomicInteger pending = new AtomicInteger(1);
+
+        final CountDownLatch done = new CountDownLatch(1);
+
+        volatile Throwable failure;
+
+        Subtree(String[] roots) {
+            this.roots = roots;
+        }
+
+        void collect() {
+            for (String root : roots){
+                list(root);
+            }
+            arrive();
+        }
+
+        private void list(final String path) {
+            pending.incrementAndGet();
+            try {
+                client.getChildren().inBackground(new BackgroundCallback() {
+                    @Override
+                    public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+                        try {
+                            KeeperException.Code code = KeeperException.Code.get(event.getResultCode());
+                            if(code == KeeperException.Code.OK){
+                                for (String child : event.getChildren()){
+                                    list(path + "/" + child);
+                                }
+                                paths.add(path);
+                            }else if(code != KeeperException.Code.NONODE){
+                                failure = KeeperException.create(code, path);
+                            }
+                        } finally {
+                            arrive();
+                        }
+                    }
+                }).forPath(path);
+            } catch (Exception e) {
+                failure = e;
+                arrive();
+            }
+        }
+
+        private void arrive() {
+            if(pending.decrementAndGet() == 0){
+                done.countDown();
+            }
+        }
+
+        /**
+         * @return 读取成功时返回true，失败或超时返回false
+         */
+        boolean await(long timeoutMillis) throws InterruptedException {
+            return done.await(Math.max(timeoutMillis, 0), TimeUnit.MILLISECONDS) && failure == null;
+        }
+
+        List<String> deletes() {
+            List<String> deletes = new ArrayList<>(paths);
+            Collections.sort(deletes, CHILDREN_FIRST);
+            return deletes;
+        }
+    }
+
+    void shutdown() {
+        executor.shutdown();
+        if(!queue.isEmpty()){
+            logger.warn("transaction reaper shutdown, {} finished transactions left in mediator", queued.get());
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package net.ewant.rolling.transaction.concert.zookeeper;
+
+import net.ewant.rolling.transaction.TransactionContext;
+import net.ewant.rolling.transaction.concert.PayloadCodec;
+import net.ewant.rolling.transaction.concert.TransactionResult;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.BackgroundCallback;
+import org.apache.curator.framework.api.CuratorEvent;
+import org.apache.zookeeper.KeeperException;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 读取事务结果：事务链根节点、状态节点、chain/{id}/{group}/{peer}/{index} 子树全部以后台请求并行发出，
+ * 调用线程只等待最慢的一层往返。已结束（全局提交或回滚）的事务结果不会再变化，放入容量有界的LRU缓存，
+ * 运维工具反复查询同一事务时不再访问协调中心。容量为0时不缓存
+ */
+class TransactionResultReader {
+
+    /**
+     * 等待读取完成的最长时间
+     */
+    private static final long READ_TIMEOUT_MILLIS = 10000;
+
+    private final CuratorFramework client;
+
+    /**
+     * 方法签名字典，仅在compact格式下存在
+     */
+    private final MethodDictionary dictionary;
+
+    private final Map<String, TransactionResult> finished;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param client
+     * @param dictionary 可为null
+     * @param cacheSize 已结束事务结果缓存容量
+     */
+    TransactionResultReader(CuratorFramework client, MethodDictionary dictionary, final int cacheSize) {
+        this.client = client;
+        this.dictionary = dictionary;
+        this.finished = cacheSize <= 0 ? null : new LinkedHashMap<String, TransactionResult>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TransactionResult> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * @return 事务链不存在时返回null
+     */
+    TransactionResult read(String transactionId, String chainPath, String statePath) {
+        if(finished != null){
+            TransactionResult cached;
+            synchronized (finished){
+                cached = finished.get(transactionId);
+            }
+            if(cached != null){
+                hits.increment();
+                return cached;
+            }
+            misses.increment();
+        }
+        Snapshot snapshot = new Snapshot(chainPath);
+        try {
+            snapshot.getData(chainPath, new Step() {
+                @Override
+                void onResult(Snapshot snapshot, CuratorEvent event) {
+                    snapshot.chain = event.getData();
+                }
+            });
+            snapshot.getData(statePath, new Step() {
+                @Override
+                void onResult(Snapshot snapshot, CuratorEvent event) {
+                    snapshot.stateModified = event.getStat().getMtime();
+                    snapshot.state = event.getData();
+                }
+            });
+            snapshot.getChildren(chainPath, 0);
+        } catch (Exception e) {
+            snapshot.fail(e);
+        }
+        try {
+            snapshot.seal().get(READ_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Transaction results read failed. id [" + transactionId + "]. " + e.getCause().getMessage(), e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Transaction results read timeout. id [" + transactionId + "]", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Transaction results read interrupted. id [" + transactionId + "]", e);
+        }
+        if(snapshot.chain == null){
+            return null;
+        }
+        return build(transactionId, snapshot);
+    }
+
+    /**
+     * 在调用线程上解码（方法id解析可能同步读取字典节点，不能在后台回调线程中执行）
+     */
+    private TransactionResult build(String transactionId, Snapshot snapshot) {
+        Map<String, String> executeChain = new TreeMap<>();
+        for (Map.Entry<String, byte[]> entry : snapshot.participants.entrySet()){
+            String node = entry.getKey();
+            String group = node.substring(0, node.indexOf(TransactionContext.NODE_SPLIT_CHAR));
+            executeChain.put(node, PayloadCodec.decodeParticipant(entry.getValue(), dictionary == null ? null : dictionary.resolver(group)));
+        }
+        String state = PayloadCodec.decodeState(snapshot.state);
+        boolean done = state != null && !state.isEmpty() && !PayloadCodec.STATE_PENDING_TEXT.equals(state);
+        boolean rollback = done && !PayloadCodec.STATE_COMMIT_TEXT.equals(state);
+        TransactionResult result = new TransactionResult(transactionId, rollback ? state : null, Collections.unmodifiableMap(executeChain));
+        String[] chain = PayloadCodec.decodeChain(snapshot.chain);
+        try {
+            result.setStartTime(Long.parseLong(chain[2]));
+        } catch (NumberFormatException e) {
+            // 旧格式数据无开始时间
+        }
+        if(done){
+            result.setEndTime(snapshot.stateModified);
+            if(finished != null){
+                synchronized (finished){
+                    finished.put(transactionId, result);
+                }
+            }
+        }
+        return result;
+    }
+
+    long getHitCount() {
+        return hits.sum();
+    }
+
+    long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * 一次读取中的所有后台请求，全部返回后完成
+     */
+    private class Snapshot {
+
+        private final String chainPath;
+
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        /**
+         * 初始为1，seal时扣除，防止请求未全部发出前提前完成
+         */
+        private final AtomicInteger pending = new AtomicInteger(1);
+
+        /**
+         * {group}/{peer}/{index} -> 参与节点数据
+         */
+        private final ConcurrentMap<String, byte[]> participants = new ConcurrentHashMap<>();
+
+        private volatile byte[] chain;
+
+        private volatile byte[] state;
+
+        private volatile long stateModified;
+
+        Snapshot(String chainPath) {
+            this.chainPath = chainPath;
+        }
+
+        void getData(String path, Step step) throws Exception {
+            pending.incrementAndGet();
+            client.getData().inBackground(step.bind(this)).forPath(path);
+        }
+
+        /**
+         * @param depth 0 事务链根节点（子节点为group），1 group（子节点为peer），2 peer（子节点为index）
+         */
+        void getChildren(String path, final int depth) throws Exception {
+            pending.incrementAndGet();
+            client.getChildren().inBackground(new Step() {
+                @Override
+                void onResult(Snapshot snapshot, CuratorEvent event) throws Exception {
+                    for (String child : event.getChildren()){
+                        String childPath = event.getPath() + TransactionContext.NODE_SPLIT_CHAR + child;
+                        if(depth < 2){
+                            getChildren(childPath, depth + 1);
+                        }else{
+                            final String node = childPath.substring(chainPath.length() + 1);
+                            getData(childPath, new Step() {
+                                @Override
+                                void onResult(Snapshot snapshot, CuratorEvent event) {
+                                    snapshot.participants.put(node, event.getData());
+                                }
+                            });
+                        }
+                    }
+                }
+            }.bind(this)).forPath(path);
+        }
+
+        void fail(Throwable e) {
+            future.completeExceptionally(e);
+        }
+
+        void arrive() {
+            if(pending.decrementAndGet() == 0){
+                future.complete(null);
+            }
+        }
+
+        CompletableFuture<Void> seal() {
+            arrive();
+            return future;
+        }
+    }
+
+    private abstract static class Step {
+
+        abstract void onResult(Snapshot snapshot, CuratorEvent event) throws Exception;
+
+        BackgroundCallback bind(final Snapshot snapshot) {
+            return new BackgroundCallback() {
+                @Override
+                public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+                    try {
+                        KeeperException.Code code = KeeperException.Code.get(event.getResultCode());
+                        if(code == KeeperException.Code.OK){
+                            onResult(snapshot, event);
+                        }else if(code != KeeperException.Code.NONODE){
+                            // NoNode：读取期间事务已被清理，按已读到的部分返回
+                            snapshot.fail(KeeperException.create(code, event.getPath()));
+                        }
+                    } catch (Exception e) {
+                        snapshot.fail(e);
+                    } finally {
+                        snapshot.arrive();
+                    }
+                }
+            };
+        }
+    }
+}
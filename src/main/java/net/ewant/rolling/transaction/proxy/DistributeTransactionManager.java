@@ -21,6 +21,9 @@ public class DistributeTransactionManager extends DataSourceTransactionManager {
 	@Override
 	protected void doRollback(DefaultTransactionStatus status) {
 		super.doRollback(status);
-		TransactionContext.getContext().markRollback();
+		TransactionContext context = TransactionContext.currentContext();
+		if(context != null){// 不在分布式事务内的本地回滚无需创建上下文
+			context.markRollback();
+		}
 	}
 }
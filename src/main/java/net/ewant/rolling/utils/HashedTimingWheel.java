@@ -0,0 +1,312 @@
+package net.ewant.rolling.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 哈希时间轮定时器。定时任务按到期tick散列到固定数量的槽中，每个槽为双向链表，
+ * 添加、取消均为O(1)，大量定时任务（如每个事务一个超时）的开销与任务数无关，只与tick精度有关。
+ * 添加与取消先进入无锁队列，由工作线程在每个tick统一处理，调用线程不加锁。
+ * 到期任务在工作线程上执行，任务本身必须简短，耗时操作应转交其他线程
+ */
+public class HashedTimingWheel {
+
+    private static Logger logger = LoggerFactory.getLogger(HashedTimingWheel.class);
+
+    /**
+     * 每个tick最多从添加队列转入时间轮的任务数，防止工作线程被大量添加阻塞
+     */
+    private static final int MAX_TRANSFER_PER_TICK = 100000;
+
+    private final String name;
+
+    private final long tickNanos;
+
+    private final Bucket[] wheel;
+
+    private final int mask;
+
+    private final Queue<Timeout> additions = new ConcurrentLinkedQueue<>();
+
+    private final Queue<Timeout> cancellations = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    private final AtomicLong pending = new AtomicLong();
+
+    private volatile boolean stopped;
+
+    private final long startTime = System.nanoTime();
+
+    private long tick;
+
+    private Thread worker;
+
+    /**
+     * @param name 工作线程名
+     * @param tickMillis tick间隔（毫秒），即超时精度
+     * @param wheelSize 槽数，调整为2的幂
+     */
+    public HashedTimingWheel(String name, long tickMillis, int wheelSize) {
+        if(tickMillis <= 0){
+            throw new IllegalArgumentException("tickMillis must be greater than 0: " + tickMillis);
+        }
+        int size = 1;
+        while (size < wheelSize){
+            size <<= 1;
+        }
+        this.name = name;
+        this.tickNanos = tickMillis * 1000000;
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * 添加定时任务，首次添加时启动工作线程
+     * @param task 到期时在工作线程上执行
+     * @param delayMillis
+     * @return 可用于取消的句柄
+     */
+    public Timeout newTimeout(Runnable task, long delayMillis) {
+        if(stopped){
+            throw new IllegalStateException("Timing wheel [" + name + "] stopped");
+        }
+        start();
+        long deadline = System.nanoTime() - startTime + Math.max(delayMillis, 0) * 1000000;
+        Timeout timeout = new Timeout(this, task, deadline);
+        pending.incrementAndGet();
+        additions.offer(timeout);
+        return timeout;
+    }
+
+    /**
+     * 等待执行（未到期、未取消）的任务数
+     * @return
+     */
+    public long getPendingCount() {
+        return pending.get();
+    }
+
+    public void stop() {
+        stopped = true;
+        if(worker != null){
+            worker.interrupt();
+        }
+    }
+
+    private void start() {
+        if(started.get() || !started.compareAndSet(false, true)){
+            return;
+        }
+        worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                work();
+            }
+        }, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void work() {
+        while (!stopped){
+            long deadline = tickNanos * (tick + 1);
+            if(!sleepUntil(deadline)){
+                break;
+            }
+            Bucket bucket = wheel[(int) (tick & mask)];
+            removeCancelled();
+            transferAdditions();
+            bucket.expire(deadline);
+            tick++;
+        }
+    }
+
+    /**
+     * @return 被停止时返回false
+     */
+    private boolean sleepUntil(long deadline) {
+        while (true){
+            long sleepNanos = deadline - (System.nanoTime() - startTime);
+            if(sleepNanos <= 0){
+                return true;
+            }
+            try {
+                Thread.sleep((sleepNanos + 999999) / 1000000);
+            } catch (InterruptedException e) {
+                if(stopped){
+                    return false;
+                }
+            }
+        }
+    }
+
+    private void transferAdditions() {
+        for (int i = 0; i < MAX_TRANSFER_PER_TICK; i++) {
+            Timeout timeout = additions.poll();
+            if(timeout == null){
+                break;
+            }
+            if(timeout.state.get() != Timeout.INIT){
+                continue;
+            }
+            long expireTick = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (expireTick - tick) / wheel.length;
+            // 已过期的放入当前槽，本tick内执行
+            long ticks = Math.max(expireTick, tick);
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancellations.poll()) != null){
+            if(timeout.bucket != null){
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    /**
+     * 定时任务句柄
+     */
+    public static final class Timeout {
+
+        private static final int INIT = 0;
+
+        private static final int CANCELLED = 1;
+
+        private static final int EXPIRED = 2;
+
+        private final HashedTimingWheel timer;
+
+        private final Runnable task;
+
+        private final long deadline;
+
+        private final AtomicInteger state = new AtomicInteger(INIT);
+
+        /**
+         * 以下字段只由工作线程访问
+         */
+        private long remainingRounds;
+
+        private Timeout next;
+
+        private Timeout prev;
+
+        private Bucket bucket;
+
+        Timeout(HashedTimingWheel timer, Runnable task, long deadline) {
+            this.timer = timer;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * 取消定时任务
+         * @return 任务已执行或已取消时返回false
+         */
+        public boolean cancel() {
+            if(!state.compareAndSet(INIT, CANCELLED)){
+                return false;
+            }
+            timer.pending.decrementAndGet();
+            timer.cancellations.offer(this);
+            return true;
+        }
+
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        private void expire() {
+            if(!state.compareAndSet(INIT, EXPIRED)){
+                return;
+            }
+            timer.pending.decrementAndGet();
+            try {
+                task.run();
+            } catch (Throwable e) {
+                logger.error("timing wheel [" + timer.name + "] task failed. " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * 时间轮的一个槽，双向链表
+     */
+    private static final class Bucket {
+
+        private Timeout head;
+
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if(head == null){
+                head = tail = timeout;
+            }else{
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void expire(long deadline) {
+            Timeout timeout = head;
+            while (timeout != null){
+                Timeout next = timeout.next;
+                if(timeout.remainingRounds <= 0){
+                    remove(timeout);
+                    if(timeout.deadline <= deadline){
+                        timeout.expire();
+                    }else{
+                        // 不应出现：放错槽
+                        logger.warn("timing wheel task placed in wrong bucket, deadline {} > {}", timeout.deadline, deadline);
+                    }
+                }else if(timeout.isCancelled()){
+                    remove(timeout);
+                }else{
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        void remove(Timeout timeout) {
+            if(timeout.bucket != this){
+                return;
+            }
+            Timeout next = timeout.next;
+            if(timeout.prev != null){
+                timeout.prev.next = next;
+            }
+            if(next != null){
+                next.prev = timeout.prev;
+            }
+            if(timeout == head){
+                head = next;
+            }
+            if(timeout == tail){
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+-- rolling-tx jdbc 协调中心表结构（MySQL / H2）
+
+create table if not exists rtx_chain (
+    tx_id varchar(64) not null primary key,
+    tx_group varchar(128) not null,
+    peer varchar(128) not null,
+    state varchar(1024) not null,
+    start_time bigint not null,
+    end_time bigint not null
+);
+
+create table if not exists rtx_participant (
+    tx_id varchar(64) not null,
+    node varchar(320) not null,
+    data varchar(1024) not null,
+    primary key (tx_id, node)
+);
+
+create table if not exists rtx_event (
+    event_id bigint not null auto_increment primary key,
+    tx_id varchar(64) not null,
+    data varchar(1024) not null,
+    create_time bigint not null
+);
+
+create index idx_rtx_event_time on rtx_event (create_time);
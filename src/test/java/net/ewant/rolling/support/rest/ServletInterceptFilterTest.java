@@ -0,0 +1,199 @@
+package net.ewant.rolling.support.rest;
+
+import net.ewant.rolling.transaction.TestTransactions;
+import net.ewant.rolling.transaction.TransactionContext;
+import net.ewant.rolling.transaction.TransactionToken;
+import net.ewant.rolling.transaction.concert.URL;
+import net.ewant.rolling.transaction.concert.memory.InMemoryMediatorClient;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ServletInterceptFilterTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(ServletInterceptFilterTest.class);
+
+    private static final int WARMUP = 20000;
+
+    private static final int REQUESTS = 200000;
+
+    private final ServletInterceptFilter filter = new ServletInterceptFilter();
+
+    @Before
+    public void init() throws Exception {
+        TestTransactions.configure();
+        filter.init(null);
+        TransactionContext.clearContext();
+    }
+
+    /**
+     * 请求桩：过滤器访问的方法均直接返回，不经过动态代理（代理调用会分配参数数组）
+     */
+    private static HttpServletRequest request(final String transactionId, final String queryString) {
+        HttpServletRequest delegate = (HttpServletRequest) Proxy.newProxyInstance(ServletInterceptFilterTest.class.getClassLoader(),
+                new Class<?>[]{HttpServletRequest.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        return new HttpServletRequestWrapper(delegate) {
+            @Override
+            public String getParameter(String name) {
+                return TransactionContext.TRANSACTION_ID_PARAMETER_NAME.equals(name) ? transactionId : null;
+            }
+
+            @Override
+            public String getScheme() {
+                return "http";
+            }
+
+            @Override
+            public String getServerName() {
+                return "order.example.com";
+            }
+
+            @Override
+            public int getServerPort() {
+                return 8080;
+            }
+
+            @Override
+            public String getRequestURI() {
+                return "/orders";
+            }
+
+            @Override
+            public String getQueryString() {
+                return queryString;
+            }
+        };
+    }
+
+    /**
+     * 记录业务处理时线程上的事务上下文
+     */
+    static class RecordingChain implements FilterChain {
+
+        TransactionContext context;
+
+        int requests;
+
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response) {
+            context = TransactionContext.currentContext();
+            requests++;
+        }
+    }
+
+    /**
+     * 非事务请求（不带事务id参数）经过过滤器不产生任何分配
+     */
+    @Test
+    public void nonTransactionalRequestAllocatesNothing() throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        HttpServletRequest request = request(null, "id=1");
+        RecordingChain chain = new RecordingChain();
+
+        for (int i = 0; i < WARMUP; i++){
+            filter.doFilter(request, null, chain);
+            chain.doFilter(request, null);
+        }
+        long start = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < REQUESTS; i++){
+            chain.doFilter(request, null);
+        }
+        long baseline = threads.getThreadAllocatedBytes(threadId) - start;
+        start = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < REQUESTS; i++){
+            filter.doFilter(request, null, chain);
+        }
+        long filtered = threads.getThreadAllocatedBytes(threadId) - start;
+
+        double perRequest = (double) (filtered - baseline) / REQUESTS;
+        logger.info("non-transactional request through filter: {} bytes allocated over {} requests ({} bytes/request)",
+                filtered - baseline, REQUESTS, perRequest);
+        assertNull(chain.context);
+        assertNull(TransactionContext.currentContext());
+        assertTrue("allocated " + perRequest + " bytes/request", perRequest < 1);
+    }
+
+    /**
+     * 带事务id参数的请求加入已有全局事务，入口地址取自当前请求，请求结束后上下文不留在线程上
+     */
+    @Test
+    public void propagatedTransactionJoinsAndIsCleared() throws Exception {
+        String transactionId = "servlet-" + System.nanoTime();
+        new InMemoryMediatorClient(URL.valueOf(TestTransactions.MEDIATOR)).startChain(transactionId, "caller", "caller-1", 0, "start");
+        RecordingChain chain = new RecordingChain();
+
+        filter.doFilter(request(" " + transactionId + " ", "id=1"), null, chain);
+
+        assertNotNull(chain.context);
+        assertEquals(transactionId, chain.context.getTransactionId());
+        assertEquals("http://order.example.com:8080/orders?id=1", chain.context.getHttpEnterUrl());
+        assertNull(TransactionContext.currentContext());
+    }
+
+    /**
+     * 协调中心不存在的事务id被拒绝，业务不执行，上下文同样被清理
+     */
+    @Test
+    public void unknownTransactionIsRejected() throws Exception {
+        RecordingChain chain = new RecordingChain();
+        try {
+            filter.doFilter(request("servlet-unknown", null), null, chain);
+            fail("unknown transaction id accepted");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(0, chain.requests);
+        assertNull(TransactionContext.currentContext());
+    }
+
+    /**
+     * 带签名令牌、未执行事务方法也未发生远程调用的请求：本节点未加入事务链，请求结束后撤销登记，不留在登记表中等待通知
+     */
+    @Test
+    public void signedRequestWithoutExecutionIsUntracked() throws Exception {
+        final String transactionId = "servlet-signed-" + System.nanoTime();
+        String token = TransactionToken.sign(transactionId, "caller-1", TestTransactions.TOKEN_SECRET.getBytes(StandardCharsets.UTF_8));
+        final boolean[] tracked = new boolean[1];
+        RecordingChain chain = new RecordingChain() {
+            @Override
+            public void doFilter(ServletRequest request, ServletResponse response) {
+                super.doFilter(request, response);
+                tracked[0] = TransactionContext.isActive(transactionId);
+            }
+        };
+
+        filter.doFilter(request(token, null), null, chain);
+
+        assertNotNull(chain.context);
+        assertEquals(transactionId, chain.context.getTransactionId());
+        assertEquals(token, chain.context.getTransactionToken());
+        assertTrue(tracked[0]);
+        assertFalse(TransactionContext.isActive(transactionId));
+        assertNull(TransactionContext.currentContext());
+    }
+}
@@ -0,0 +1,63 @@
+package net.ewant.rolling.transaction;
+
+import org.junit.Test;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 以较短的迭代在当前JVM中运行 {@link ExecutionChainBenchmark}，校验每个请求的分配量。
+ * 耗时较长，只在 benchmark profile 下运行：mvn test -Pbenchmark -Dtest=ExecutionChainAllocationTest
+ */
+public class ExecutionChainAllocationTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExecutionChainAllocationTest.class);
+
+    private static final String ALLOC_RATE_NORM = "·gc.alloc.rate.norm";
+
+    /**
+     * 同一基准方法在改用数组之前（933b093）的分配量（字节/请求）
+     */
+    private static final double BASELINE_LOCAL_BYTES = 1289;
+
+    private static final double BASELINE_REMOTE_BYTES = 1504;
+
+    @Test
+    public void arrayChainDoesNotAllocatePerRequest() throws Exception {
+        Options options = new OptionsBuilder()
+                .include(ExecutionChainBenchmark.class.getName())
+                .addProfiler(GCProfiler.class)
+                .forks(0)
+                .warmupIterations(3)
+                .warmupTime(TimeValue.milliseconds(300))
+                .measurementIterations(3)
+                .measurementTime(TimeValue.milliseconds(300))
+                .shouldFailOnError(true)
+                .build();
+        Collection<RunResult> results = new Runner(options).run();
+        Map<String, Double> bytesPerRequest = new HashMap<>();
+        for (RunResult result : results){
+            String benchmark = result.getParams().getBenchmark();
+            Result allocation = result.getSecondaryResults().get(ALLOC_RATE_NORM);
+            bytesPerRequest.put(benchmark.substring(benchmark.lastIndexOf('.') + 1), allocation.getScore());
+        }
+        logger.info("bytes allocated per request: {}", bytesPerRequest);
+
+        assertTrue(bytesPerRequest.toString(), bytesPerRequest.get("arrayChain") < 16);
+        assertTrue(bytesPerRequest.toString(), bytesPerRequest.get("localTransaction") < bytesPerRequest.get("remoteTransaction"));
+        assertTrue(bytesPerRequest.toString(), bytesPerRequest.get("localTransaction") < BASELINE_LOCAL_BYTES / 4);
+        assertTrue(bytesPerRequest.toString(), bytesPerRequest.get("remoteTransaction") < BASELINE_REMOTE_BYTES);
+    }
+}
@@ -0,0 +1,92 @@
+package net.ewant.rolling.transaction;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每个请求的执行链与事务上下文分配量，配合 GCProfiler 查看 gc.alloc.rate.norm（字节/请求）。
+ * 改用数组之前（933b093）的对照数据：localTransaction、remoteTransaction 两个方法原样在该提交上运行（forks(1)，mem 协调中心），
+ * 分别为 1289、1504 字节/请求；改用数组后（0a9db2c）为 1041、1340。
+ * 独立运行：java -cp target/test-classes:... net.ewant.rolling.transaction.ExecutionChainBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ExecutionChainBenchmark {
+
+    /**
+     * 每个请求中的执行节点数：本地事务方法、远程调用、嵌套的本地方法
+     */
+    static final int EXECUTIONS = 3;
+
+    private final Object target = new Object();
+
+    private final Object[] args = new Object[0];
+
+    private Method method;
+
+    public void work() {
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        method = ExecutionChainBenchmark.class.getMethod("work");
+        TestTransactions.configure();
+    }
+
+    @Benchmark
+    public void arrayChain(Blackhole blackhole) {
+        ExecutionChain chain = ExecutionChain.acquire();
+        for (int i = 0; i < EXECUTIONS; i++) {
+            chain.add(i == 1 ? false : true, target, method, args);
+        }
+        for (int i = 0; i < EXECUTIONS; i++) {
+            blackhole.consume(chain.get(i));
+        }
+        chain.recycle();
+    }
+
+    /**
+     * 只有本地事务方法，未发起全局事务
+     */
+    @Benchmark
+    public void localTransaction() {
+        TransactionContext context = TransactionContext.getContext();
+        context.prepareTransaction(target, method, args);
+        TransactionContext.getContext().completeTransaction(null, null);
+    }
+
+    /**
+     * 本地事务方法内发起一次远程调用，在协调中心（mem）创建全局事务并提交
+     */
+    @Benchmark
+    public void remoteTransaction() {
+        TransactionContext context = TransactionContext.getContext();
+        context.prepareTransaction(target, method, args);
+        context.beforeRemoter(target, method, args);
+        context.afterRemoter(null, null);
+        context.completeTransaction(null, null);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(ExecutionChainBenchmark.class.getName())
+                .addProfiler(GCProfiler.class)
+                .forks(1)
+                .build();
+        new Runner(options).run();
+    }
+}
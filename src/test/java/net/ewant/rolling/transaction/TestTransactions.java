@@ -0,0 +1,46 @@
+package net.ewant.rolling.transaction;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 测试共用的事务配置：进程内协调中心（mem），事务id按序生成。TransactionContext 的全局事务令牌签名开启（兼容原始事务id）。配置为全局状态，只初始化一次
+ */
+public final class TestTransactions {
+
+    public static final String MEDIATOR = "mem://rolling-tx-test";
+
+    public static final String TOKEN_SECRET = "rolling-tx-test-secret";
+
+    private static final AtomicLong IDS = new AtomicLong();
+
+    private static boolean configured;
+
+    private TestTransactions() {
+    }
+
+    public static synchronized void configure() {
+        if(configured){
+            return;
+        }
+        configured = true;
+        TransactionConfiguration configuration = new TransactionConfiguration();
+        configuration.setMediator(MEDIATOR);
+        configuration.setGroup("test");
+        configuration.setPeer("test-1");
+        configuration.setTokenSecret(TOKEN_SECRET);
+        TransactionContext.setChecker(new ExecutionFailedChecker() {
+            @Override
+            public boolean executionFailed(Object returnVal, Throwable throwable) {
+                return throwable != null;
+            }
+        });
+        TransactionContext.setIdGenerator(new TransactionIdGenerator() {
+            @Override
+            public String generateTransactionId(Method method, Object[] args) {
+                return "test-" + IDS.incrementAndGet();
+            }
+        });
+        TransactionContext.setConfiguration(configuration);
+    }
+}
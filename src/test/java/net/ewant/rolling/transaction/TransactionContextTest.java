@@ -0,0 +1,69 @@
+package net.ewant.rolling.transaction;
+
+import net.ewant.rolling.transaction.annotation.GlobalTimeout;
+import org.junit.Test;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.lang.reflect.Method;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class TransactionContextTest {
+
+    static class LocalTimeoutService {
+        @Transactional(timeout = 1)
+        public void shortStatement() {
+        }
+
+        @GlobalTimeout(30000)
+        @Transactional(timeout = 1)
+        public void globalTimeout() {
+        }
+    }
+
+    @GlobalTimeout(45000)
+    static class GlobalTimeoutService {
+        public void inherited() {
+        }
+
+        @GlobalTimeout(5000)
+        public void overridden() {
+        }
+    }
+
+    /**
+     * 全局事务超时只取 @GlobalTimeout，@Transactional(timeout) 是本地数据库事务超时，不影响全局事务
+     */
+    @Test
+    public void methodTimeoutComesFromGlobalTimeoutOnly() throws Exception {
+        assertEquals(0, TransactionContext.methodTimeout(LocalTimeoutService.class.getMethod("shortStatement")));
+        assertEquals(30000, TransactionContext.methodTimeout(LocalTimeoutService.class.getMethod("globalTimeout")));
+        assertEquals(45000, TransactionContext.methodTimeout(GlobalTimeoutService.class.getMethod("inherited")));
+        assertEquals(5000, TransactionContext.methodTimeout(GlobalTimeoutService.class.getMethod("overridden")));
+    }
+
+    /**
+     * 嵌套的本地事务方法结束时回到外层方法，只有最外层结束才算一个仅本地完成的事务
+     */
+    @Test
+    public void nestedLocalTransactionCountsOnce() throws Exception {
+        TestTransactions.configure();
+        Object target = new LocalTimeoutService();
+        Method outer = LocalTimeoutService.class.getMethod("shortStatement");
+        Method inner = LocalTimeoutService.class.getMethod("globalTimeout");
+        long before = TransactionContext.getLocalOnlyCount();
+
+        TransactionContext context = TransactionContext.getContext();
+        context.prepareTransaction(target, outer, null);
+        TransactionContext.getContext().prepareTransaction(target, inner, null);
+        TransactionContext.getContext().completeTransaction(null, null);
+        assertSame(context, TransactionContext.currentContext());
+        assertEquals(before, TransactionContext.getLocalOnlyCount());
+
+        TransactionContext.getContext().completeTransaction(null, null);
+        assertNull(TransactionContext.currentContext());
+        assertEquals(before + 1, TransactionContext.getLocalOnlyCount());
+    }
+}
@@ -0,0 +1,109 @@
+package net.ewant.rolling.transaction;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TransactionTokenTest {
+
+    private static final byte[] SECRET = "token-secret".getBytes(StandardCharsets.UTF_8);
+
+    private static final String TRANSACTION_ID = "order-20180301-0001";
+
+    private static final String PEER = "order-service:10.0.0.1";
+
+    @Test
+    public void signAndVerify() {
+        long before = System.currentTimeMillis();
+        String token = TransactionToken.sign(TRANSACTION_ID, PEER, SECRET);
+
+        assertTrue(TransactionToken.isToken(token));
+        assertFalse(TransactionToken.isToken(TRANSACTION_ID));
+        TransactionToken verified = TransactionToken.verify(token, SECRET, 60000);
+        assertEquals(TRANSACTION_ID, verified.getTransactionId());
+        assertEquals(PEER, verified.getPeer());
+        assertTrue(verified.getIssueTime() >= before && verified.getIssueTime() <= System.currentTimeMillis());
+    }
+
+    /**
+     * 事务id本身含分隔符时按最后三个分隔符拆分
+     */
+    @Test
+    public void transactionIdMayContainSeparator() {
+        String token = TransactionToken.sign("a~b", PEER, SECRET);
+        assertEquals("a~b", TransactionToken.verify(token, SECRET, 0).getTransactionId());
+    }
+
+    @Test
+    public void wrongSecretIsRejected() {
+        String token = TransactionToken.sign(TRANSACTION_ID, PEER, SECRET);
+        assertRejected(token, "other-secret".getBytes(StandardCharsets.UTF_8), 0, "signature mismatch");
+    }
+
+    @Test
+    public void tamperedSignatureIsRejected() {
+        String token = TransactionToken.sign(TRANSACTION_ID, PEER, SECRET);
+        // 末位字符只有部分比特有效，改签名的首字符
+        int first = token.lastIndexOf('~') + 1;
+        String tampered = token.substring(0, first) + (token.charAt(first) == 'A' ? 'B' : 'A') + token.substring(first + 1);
+        assertRejected(tampered, SECRET, 0, "signature mismatch");
+    }
+
+    @Test
+    public void tamperedTransactionIdIsRejected() {
+        String token = TransactionToken.sign(TRANSACTION_ID, PEER, SECRET);
+        assertRejected("order-20180301-0002" + token.substring(TRANSACTION_ID.length()), SECRET, 0, "signature mismatch");
+    }
+
+    @Test
+    public void tamperedPeerIsRejected() {
+        String token = TransactionToken.sign(TRANSACTION_ID, PEER, SECRET);
+        String[] parts = token.split("~");
+        String forged = TransactionToken.sign(TRANSACTION_ID, "attacker", SECRET).split("~")[1];
+        assertRejected(parts[0] + "~" + forged + "~" + parts[2] + "~" + parts[3], SECRET, 0, "signature mismatch");
+    }
+
+    @Test
+    public void tamperedIssueTimeIsRejected() {
+        String token = TransactionToken.sign(TRANSACTION_ID, PEER, SECRET);
+        String[] parts = token.split("~");
+        String later = Long.toString(Long.parseLong(parts[2], 36) + 60000, 36);
+        assertRejected(parts[0] + "~" + parts[1] + "~" + later + "~" + parts[3], SECRET, 0, "signature mismatch");
+    }
+
+    @Test
+    public void expiredTokenIsRejected() throws Exception {
+        String token = TransactionToken.sign(TRANSACTION_ID, PEER, SECRET);
+        Thread.sleep(20);
+        assertRejected(token, SECRET, 10, "expired");
+        // 0 为不限制有效期
+        assertEquals(TRANSACTION_ID, TransactionToken.verify(token, SECRET, 0).getTransactionId());
+    }
+
+    @Test
+    public void malformedTokenIsRejected() {
+        assertFalse(TransactionToken.isToken("id~peer~time"));
+        assertFalse(TransactionToken.isToken("~peer~time~sig"));
+        assertRejected(TRANSACTION_ID, SECRET, 0, "malformed");
+        assertRejected("id~peer~time", SECRET, 0, "malformed");
+        assertRejected("~peer~time~sig", SECRET, 0, "malformed");
+        // 签名不是Base64
+        assertRejected("id~cGVlcg~jd2x3s~!!!", SECRET, 0, "malformed");
+        // 签发时间不是36进制数
+        assertRejected("id~cGVlcg~***~c2ln", SECRET, 0, "malformed");
+    }
+
+    private static void assertRejected(String token, byte[] secret, long ttlMillis, String reason) {
+        try {
+            TransactionToken.verify(token, secret, ttlMillis);
+            fail("token accepted: " + token);
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(reason));
+        }
+    }
+}
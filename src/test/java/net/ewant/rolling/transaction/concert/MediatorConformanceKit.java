@@ -0,0 +1,326 @@
+package net.ewant.rolling.transaction.concert;
+
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 协调中心传输实现的一致性与吞吐测试套件。
+ * 每种传输（mem、zk、jdbc、rtx...）继承本类并提供协调中心地址，客户端通过 META-INF/services 注册的 {@link MediatorTransporter} 创建，
+ * 与 TransactionContext 的加载方式一致。发起方与参与方使用两个独立客户端，验证跨客户端的事务链与决议通知语义
+ */
+public abstract class MediatorConformanceKit {
+
+    protected static final Logger logger = LoggerFactory.getLogger(MediatorConformanceKit.class);
+
+    /**
+     * 吞吐测试的事务数，可通过 -Drolling-tx.kit.transactions 调整
+     */
+    static final int THROUGHPUT_TRANSACTIONS = Integer.getInteger("rolling-tx.kit.transactions", 1000);
+
+    /**
+     * 吞吐测试同时在途的事务数
+     */
+    static final int THROUGHPUT_IN_FLIGHT = 128;
+
+    protected static final long AWAIT_SECONDS = 10;
+
+    static final String GROUP = "kit";
+
+    private final List<MediatorClient> clients = new ArrayList<>();
+
+    /**
+     * @return 协调中心地址，如 mem://kit、zk://127.0.0.1:2181
+     */
+    protected abstract String mediatorUrl();
+
+    /**
+     * 客户端连接后、开始测试前的等待，如等待根节点创建完成
+     */
+    protected void awaitReady(MediatorClient client) throws Exception {
+    }
+
+    @After
+    public void closeClients() {
+        for (MediatorClient client : clients){
+            client.close();
+        }
+        clients.clear();
+    }
+
+    protected AsyncMediatorClient connect(RecordingWatcher watcher) throws Exception {
+        URL url = URL.valueOf(mediatorUrl());
+        MediatorTransporter transporter = null;
+        for (MediatorTransporter candidate : ServiceLoader.load(MediatorTransporter.class, MediatorConformanceKit.class.getClassLoader())){
+            if(candidate.getProtocol().equals(url.getProtocol())){
+                transporter = candidate;
+            }
+        }
+        assertNotNull("no transporter registered for " + url.getProtocol(), transporter);
+        AsyncMediatorClient client = BlockingAsyncMediatorClient.wrap(transporter.connect(url));
+        clients.add(client);
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(AWAIT_SECONDS);
+        while (!client.isConnected()){
+            if(System.currentTimeMillis() > deadline){
+                fail("mediator not connected: " + url);
+            }
+            Thread.sleep(20);
+        }
+        awaitReady(client);
+        client.addWatcher(watcher);
+        return client;
+    }
+
+    protected static String newTransactionId() {
+        return UUID.randomUUID().toString().replace("-", "");
+    }
+
+    @Test
+    public void startChainRegistersInitiator() throws Exception {
+        AsyncMediatorClient initiator = connect(new RecordingWatcher());
+        String transactionId = newTransactionId();
+        initiator.startChain(transactionId, GROUP, "a", 0, "start");
+
+        assertTrue(initiator.transactionExists(transactionId));
+        TransactionResult result = initiator.getResults(transactionId);
+        assertNotNull(result);
+        assertNull(result.getRollback());
+        assertEquals(1, result.getExecuteChain().size());
+        assertTrue(result.getExecuteChain().containsValue("start"));
+    }
+
+    @Test
+    public void joinChainAddsParticipant() throws Exception {
+        AsyncMediatorClient initiator = connect(new RecordingWatcher());
+        AsyncMediatorClient participant = connect(new RecordingWatcher());
+        String transactionId = newTransactionId();
+        initiator.startChain(transactionId, GROUP, "a", 0, "start");
+        participant.joinChain(transactionId, GROUP, "b", 1, "join");
+
+        assertTrue(participant.transactionExists(transactionId));
+        Map<String, String> chain = initiator.getResults(transactionId).getExecuteChain();
+        assertEquals(2, chain.size());
+        assertTrue(chain.containsValue("join"));
+    }
+
+    @Test
+    public void batchJoinAddsAllParticipants() throws Exception {
+        AsyncMediatorClient initiator = connect(new RecordingWatcher());
+        AsyncMediatorClient participant = connect(new RecordingWatcher());
+        String transactionId = newTransactionId();
+        initiator.startChain(transactionId, GROUP, "a", 0, "start");
+        await(participant.joinChainBatchAsync(transactionId, GROUP, "b", new int[]{1, 2, 3}, new String[]{"j1", "j2", "j3"}));
+
+        Map<String, String> chain = initiator.getResults(transactionId).getExecuteChain();
+        assertEquals(4, chain.size());
+        assertTrue(chain.containsValue("j1") && chain.containsValue("j2") && chain.containsValue("j3"));
+    }
+
+    @Test
+    public void joinUnknownTransactionFails() throws Exception {
+        AsyncMediatorClient participant = connect(new RecordingWatcher());
+        try {
+            participant.joinChain(newTransactionId(), GROUP, "b", 1, "join");
+            fail("join of an unknown transaction must fail");
+        } catch (RuntimeException e) {
+            assertFalse("invalid id is not a mediator fault", participant.isMediatorFault(e));
+        }
+    }
+
+    @Test
+    public void duplicateStartFails() throws Exception {
+        AsyncMediatorClient initiator = connect(new RecordingWatcher());
+        String transactionId = newTransactionId();
+        initiator.startChain(transactionId, GROUP, "a", 0, "start");
+        try {
+            initiator.startChain(transactionId, GROUP, "a", 0, "again");
+            fail("duplicate start must fail");
+        } catch (RuntimeException e) {
+            assertFalse("duplicate id is not a mediator fault", initiator.isMediatorFault(e));
+        }
+    }
+
+    @Test
+    public void commitNotifiesParticipant() throws Exception {
+        AsyncMediatorClient initiator = connect(new RecordingWatcher());
+        RecordingWatcher watcher = new RecordingWatcher();
+        AsyncMediatorClient participant = connect(watcher);
+        String transactionId = newTransactionId();
+        initiator.startChain(transactionId, GROUP, "a", 0, "start");
+        participant.joinChain(transactionId, GROUP, "b", 1, "join");
+        initiator.commit(transactionId, GROUP, "a");
+
+        assertEquals(PayloadCodec.STATE_COMMIT_TEXT, watcher.await(transactionId));
+        assertNull(initiator.getResults(transactionId).getRollback());
+    }
+
+    @Test
+    public void rollbackNotifiesParticipant() throws Exception {
+        AsyncMediatorClient initiator = connect(new RecordingWatcher());
+        RecordingWatcher watcher = new RecordingWatcher();
+        AsyncMediatorClient participant = connect(watcher);
+        String transactionId = newTransactionId();
+        String rollback = "a:kit.Service#call():boom";
+        initiator.startChain(transactionId, GROUP, "a", 0, "start");
+        participant.joinChain(transactionId, GROUP, "b", 1, "join");
+        initiator.rollback(transactionId, GROUP, "a", rollback);
+
+        assertEquals(rollback, watcher.await(transactionId));
+        assertEquals(rollback, initiator.getResults(transactionId).getRollback());
+    }
+
+    @Test
+    public void lateJoinReceivesExistingDecision() throws Exception {
+        AsyncMediatorClient initiator = connect(new RecordingWatcher());
+        RecordingWatcher watcher = new RecordingWatcher();
+        AsyncMediatorClient participant = connect(watcher);
+        String transactionId = newTransactionId();
+        String rollback = "a:kit.Service#call():late";
+        initiator.startChain(transactionId, GROUP, "a", 0, "start");
+        initiator.rollback(transactionId, GROUP, "a", rollback);
+        // 等待决议事件在参与方客户端上被处理过一次，再加入
+        Thread.sleep(300);
+        participant.joinChain(transactionId, GROUP, "b", 1, "join");
+
+        assertEquals(rollback, watcher.await(transactionId));
+    }
+
+    @Test
+    public void clearRemovesTransaction() throws Exception {
+        AsyncMediatorClient initiator = connect(new RecordingWatcher());
+        String transactionId = newTransactionId();
+        initiator.startChain(transactionId, GROUP, "a", 0, "start");
+        initiator.commit(transactionId, GROUP, "a");
+        initiator.clear(transactionId);
+
+        assertFalse(initiator.transactionExists(transactionId));
+        assertNull(initiator.getResults(transactionId));
+    }
+
+    /**
+     * 完整事务（发起、跨客户端加入、提交、参与方收到决议、清理）的吞吐，最多 THROUGHPUT_IN_FLIGHT 个事务同时在途
+     */
+    @Test
+    public void throughput() throws Exception {
+        final AsyncMediatorClient initiator = connect(new RecordingWatcher());
+        final RecordingWatcher watcher = new RecordingWatcher();
+        final AsyncMediatorClient participant = connect(watcher);
+        final Semaphore inFlight = new Semaphore(THROUGHPUT_IN_FLIGHT);
+        final ConcurrentMap<String, Throwable> failures = new ConcurrentHashMap<>();
+        List<CompletableFuture<Void>> transactions = new ArrayList<>(THROUGHPUT_TRANSACTIONS);
+        long start = System.nanoTime();
+        for (int i = 0; i < THROUGHPUT_TRANSACTIONS; i++){
+            inFlight.acquire();
+            final String transactionId = newTransactionId();
+            CompletableFuture<Void> transaction = initiator.startChainAsync(transactionId, GROUP, "a", 0, "start")
+                    .thenCompose(new Function<Void, CompletableFuture<Void>>() {
+                        @Override
+                        public CompletableFuture<Void> apply(Void ignored) {
+                            return participant.joinChainAsync(transactionId, GROUP, "b", 1, "join");
+                        }
+                    }).thenCompose(new Function<Void, CompletableFuture<Void>>() {
+                        @Override
+                        public CompletableFuture<Void> apply(Void ignored) {
+                            return initiator.commitAsync(transactionId, GROUP, "a");
+                        }
+                    }).thenCompose(new Function<Void, CompletableFuture<String>>() {
+                        @Override
+                        public CompletableFuture<String> apply(Void ignored) {
+                            return watcher.decision(transactionId);
+                        }
+                    }).thenCompose(new Function<String, CompletableFuture<Void>>() {
+                        @Override
+                        public CompletableFuture<Void> apply(String data) {
+                            return initiator.clearAsync(transactionId);
+                        }
+                    });
+            transaction.whenComplete(new BiConsumer<Void, Throwable>() {
+                @Override
+                public void accept(Void ignored, Throwable throwable) {
+                    if(throwable != null){
+                        failures.put(transactionId, throwable);
+                    }
+                    inFlight.release();
+                }
+            });
+            transactions.add(transaction);
+        }
+        try {
+            CompletableFuture.allOf(transactions.toArray(new CompletableFuture<?>[transactions.size()])).get(AWAIT_SECONDS * 6, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            // 逐个失败记录在 failures 中
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("failed transactions: " + failures, failures.isEmpty());
+        logger.info("[{}] throughput: {} transactions in {} ms, {} tx/s", URL.valueOf(mediatorUrl()).getProtocol(),
+                THROUGHPUT_TRANSACTIONS, elapsed, elapsed == 0 ? THROUGHPUT_TRANSACTIONS : THROUGHPUT_TRANSACTIONS * 1000L / elapsed);
+    }
+
+    protected static void await(CompletableFuture<Void> future) throws Exception {
+        try {
+            future.get(AWAIT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof RuntimeException){
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 按事务记录收到的决议，先到的通知与后注册的等待都能得到结果
+     */
+    protected static class RecordingWatcher implements MediatorWatcher {
+
+        private final ConcurrentMap<String, CompletableFuture<String>> decisions = new ConcurrentHashMap<>();
+
+        @Override
+        public void change(String transactionId, String data) {
+            decision(transactionId).complete(data);
+        }
+
+        public CompletableFuture<String> decision(String transactionId) {
+            CompletableFuture<String> decision = decisions.get(transactionId);
+            if(decision == null){
+                CompletableFuture<String> created = new CompletableFuture<>();
+                decision = decisions.putIfAbsent(transactionId, created);
+                if(decision == null){
+                    decision = created;
+                }
+            }
+            return decision;
+        }
+
+        public String await(String transactionId) throws Exception {
+            try {
+                return decision(transactionId).get(AWAIT_SECONDS, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                throw new AssertionError("no decision delivered for transaction [" + transactionId + "]");
+            }
+        }
+    }
+}
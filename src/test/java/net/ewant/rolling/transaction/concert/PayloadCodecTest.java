@@ -0,0 +1,107 @@
+package net.ewant.rolling.transaction.concert;
+
+import net.ewant.rolling.transaction.TransactionContext;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PayloadCodecTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(PayloadCodecTest.class);
+
+    private static final int METHOD_ID = 7;
+
+    private final PayloadCodec text = new PayloadCodec(false);
+
+    private final PayloadCodec compact = new PayloadCodec(true);
+
+    interface OrderService {
+        Map<String, List<Long>> placeOrder(String orderNo, List<Map<String, Object>> items, BigDecimal amount) throws IOException;
+    }
+
+    private static String signature() throws NoSuchMethodException {
+        return TransactionContext.signature(OrderService.class.getMethod("placeOrder", String.class, List.class, BigDecimal.class));
+    }
+
+    private static PayloadCodec.MethodResolver resolver(final String signature) {
+        return new PayloadCodec.MethodResolver() {
+            @Override
+            public String resolve(int methodId) {
+                return methodId == METHOD_ID ? PayloadCodec.compactSignature(signature) : null;
+            }
+        };
+    }
+
+    @Test
+    public void participantRoundTrip() throws Exception {
+        String signature = signature();
+        String compactSignature = PayloadCodec.compactSignature(signature);
+
+        assertEquals(signature, PayloadCodec.decodeParticipant(text.encodeParticipant(0, signature), null));
+        assertEquals(compactSignature, PayloadCodec.decodeParticipant(compact.encodeParticipant(0, signature), null));
+        assertEquals(compactSignature, PayloadCodec.decodeParticipant(compact.encodeParticipant(METHOD_ID, signature), resolver(signature)));
+    }
+
+    @Test
+    public void stateRoundTrip() throws Exception {
+        String rollback = signature() + TransactionContext.FIELD_SPLIT_CHAR + IllegalStateException.class.getName();
+        String expected = PayloadCodec.compactSignature(signature()) + TransactionContext.FIELD_SPLIT_CHAR + IllegalStateException.class.getName();
+
+        assertEquals(PayloadCodec.STATE_PENDING_TEXT, PayloadCodec.decodeState(compact.encodePending()));
+        assertEquals(PayloadCodec.STATE_COMMIT_TEXT, PayloadCodec.decodeState(compact.encodeCommit()));
+        assertEquals(PayloadCodec.STATE_COMMIT_TEXT, PayloadCodec.decodeState(text.encodeCommit()));
+        assertEquals(rollback, PayloadCodec.decodeState(text.encodeRollback(rollback)));
+        assertEquals(expected, PayloadCodec.decodeState(compact.encodeRollback(rollback)));
+        assertEquals(expected, PayloadCodec.decodeState(compact.encodeRollback(METHOD_ID, rollback), resolver(signature())));
+    }
+
+    @Test
+    public void chainRoundTrip() {
+        assertArrayEquals(new String[]{"order", "order-1", "1500000000000"}, PayloadCodec.decodeChain(text.encodeChain("order", "order-1", 1500000000000L)));
+        assertArrayEquals(new String[]{"order", "order-1", "1500000000000"}, PayloadCodec.decodeChain(compact.encodeChain("order", "order-1", 1500000000000L)));
+    }
+
+    @Test
+    public void formatsAreDistinguishable() throws Exception {
+        assertTrue(PayloadCodec.isBinary(compact.encodeParticipant(0, signature())));
+        assertFalse(PayloadCodec.isBinary(text.encodeParticipant(0, signature())));
+        assertFalse(PayloadCodec.isBinary(text.encodeCommit()));
+    }
+
+    /**
+     * 各格式下单个参与节点、回滚状态、链根节点的数据大小
+     */
+    @Test
+    public void compactPayloadsAreSmaller() throws Exception {
+        String signature = signature();
+        String rollback = signature + TransactionContext.FIELD_SPLIT_CHAR + IllegalStateException.class.getName();
+
+        int textParticipant = text.encodeParticipant(0, signature).length;
+        int compactParticipant = compact.encodeParticipant(0, signature).length;
+        int idParticipant = compact.encodeParticipant(METHOD_ID, signature).length;
+        int textRollback = text.encodeRollback(rollback).length;
+        int compactRollback = compact.encodeRollback(rollback).length;
+        int idRollback = compact.encodeRollback(METHOD_ID, rollback).length;
+        int textChain = text.encodeChain("order", "order-1", System.currentTimeMillis()).length;
+        int compactChain = compact.encodeChain("order", "order-1", System.currentTimeMillis()).length;
+        logger.info("participant bytes: text {}, compact {}, compact with method id {}", textParticipant, compactParticipant, idParticipant);
+        logger.info("rollback state bytes: text {}, compact {}, compact with method id {}", textRollback, compactRollback, idRollback);
+        logger.info("chain bytes: text {}, compact {}", textChain, compactChain);
+
+        assertTrue(compactParticipant < textParticipant);
+        assertTrue(idParticipant <= 3);
+        assertTrue(compactRollback < textRollback);
+        assertTrue(idRollback * 3 < textRollback);
+        assertTrue(compactChain < textChain);
+    }
+}
@@ -0,0 +1,119 @@
+package net.ewant.rolling.transaction.concert;
+
+import net.ewant.rolling.transaction.concert.memory.InMemoryMediatorClient;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ShardedMediatorClientTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardedMediatorClientTest.class);
+
+    private static final int TRANSACTIONS = 30000;
+
+    private static final String[] ENSEMBLES = {
+            "zk://192.168.1.101:2181,192.168.1.102:2181",
+            "zk://192.168.2.101:2181,192.168.2.102:2181",
+            "zk://192.168.3.101:2181,192.168.3.102:2181"
+    };
+
+    private final Map<String, AsyncMediatorClient> clients = new HashMap<>();
+
+    private AsyncMediatorClient client(String ensemble) {
+        AsyncMediatorClient client = clients.get(ensemble);
+        if(client == null){
+            client = new InMemoryMediatorClient(URL.valueOf("mem://shard-" + clients.size()));
+            clients.put(ensemble, client);
+        }
+        return client;
+    }
+
+    private ShardedMediatorClient sharded(String... ensembles) {
+        Map<String, AsyncMediatorClient> map = new LinkedHashMap<>();
+        for (String ensemble : ensembles){
+            map.put(ensemble, client(ensemble));
+        }
+        return new ShardedMediatorClient(map);
+    }
+
+    private static String id(int i) {
+        return "order-" + i;
+    }
+
+    @Test
+    public void ensembleKeyIgnoresAddressOrder() {
+        assertEquals(ShardedMediatorClient.ensembleKey(URL.valueOf("zk://192.168.1.102:2181?backup=192.168.1.101:2181")),
+                ShardedMediatorClient.ensembleKey(URL.valueOf("zk://192.168.1.101:2181?backup=192.168.1.102:2181")));
+    }
+
+    /**
+     * 哈希只由字符计算（64位 FNV-1a 加 murmur3 混合），与JVM无关，各节点对同一事务id路由一致
+     */
+    @Test
+    public void hashIsStable() {
+        assertEquals(ShardedMediatorClient.hash("order-1"), ShardedMediatorClient.hash(new String("order-1")));
+        assertEquals(5267876955464718757L, ShardedMediatorClient.hash("order-1"));
+    }
+
+    /**
+     * 各节点配置的集群书写顺序不同时，同一事务id路由到同一集群
+     */
+    @Test
+    public void routingIsIndependentOfConfigurationOrder() {
+        ShardedMediatorClient first = sharded(ENSEMBLES[0], ENSEMBLES[1], ENSEMBLES[2]);
+        ShardedMediatorClient second = sharded(ENSEMBLES[2], ENSEMBLES[0], ENSEMBLES[1]);
+        for (int i = 0; i < TRANSACTIONS; i++){
+            assertSame(first.route(id(i)), second.route(id(i)));
+            assertSame(first.route(id(i)), first.route(id(i)));
+        }
+    }
+
+    @Test
+    public void transactionsAreSpreadEvenly() {
+        ShardedMediatorClient sharded = sharded(ENSEMBLES);
+        Map<AsyncMediatorClient, Integer> counts = new IdentityHashMap<>();
+        for (int i = 0; i < TRANSACTIONS; i++){
+            AsyncMediatorClient client = sharded.route(id(i));
+            Integer count = counts.get(client);
+            counts.put(client, count == null ? 1 : count + 1);
+        }
+        assertEquals(ENSEMBLES.length, counts.size());
+        int expected = TRANSACTIONS / ENSEMBLES.length;
+        for (String ensemble : ENSEMBLES){
+            int count = counts.get(client(ensemble));
+            logger.info("{}: {} of {} transactions", ensemble, count, TRANSACTIONS);
+            assertTrue(ensemble + " got " + count, Math.abs(count - expected) < expected * 0.2);
+        }
+    }
+
+    /**
+     * 新增集群后，被重新映射的事务id只会移到新集群（已有集群之间不互相迁移），比例约为 1/集群数。
+     * 这部分id上的在途事务在新集群没有事务链，调整集群前必须排空
+     */
+    @Test
+    public void addingEnsembleRemapsOnlyToTheNewEnsemble() {
+        ShardedMediatorClient before = sharded(ENSEMBLES);
+        String added = "zk://192.168.4.101:2181,192.168.4.102:2181";
+        ShardedMediatorClient after = sharded(ENSEMBLES[0], ENSEMBLES[1], ENSEMBLES[2], added);
+        int moved = 0;
+        for (int i = 0; i < TRANSACTIONS; i++){
+            AsyncMediatorClient target = after.route(id(i));
+            if(target != before.route(id(i))){
+                assertSame(client(added), target);
+                moved++;
+            }
+        }
+        double fraction = (double) moved / TRANSACTIONS;
+        logger.info("adding a 4th ensemble remapped {} of {} transaction ids ({})", moved, TRANSACTIONS, fraction);
+        assertTrue("remapped " + fraction, fraction > 0.15 && fraction < 0.35);
+    }
+}
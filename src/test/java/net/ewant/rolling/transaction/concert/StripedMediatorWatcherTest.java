@@ -0,0 +1,78 @@
+package net.ewant.rolling.transaction.concert;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StripedMediatorWatcherTest {
+
+    private static final int THRESHOLD = 4;
+
+    private static final int NOTIFICATIONS = 50;
+
+    @Test
+    public void fullStripeNeverBlocksTheEventThread() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(NOTIFICATIONS);
+        final List<String> handled = Collections.synchronizedList(new ArrayList<String>());
+        StripedMediatorWatcher dispatcher = new StripedMediatorWatcher(new MediatorWatcher() {
+            @Override
+            public void change(String transactionId, String data) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                handled.add(data);
+                done.countDown();
+            }
+        }, 1, THRESHOLD);
+        try {
+            // 处理线程被卡住时，事件线程提交远超阈值的通知也必须立即返回
+            long start = System.nanoTime();
+            for (int i = 0; i < NOTIFICATIONS; i++) {
+                dispatcher.change("tx-1", String.valueOf(i));
+            }
+            assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 1);
+            assertTrue(dispatcher.getBackloggedCount() > 0);
+            assertTrue(dispatcher.getMaxQueueDepth() > THRESHOLD);
+
+            release.countDown();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(NOTIFICATIONS, handled.size());
+            for (int i = 0; i < NOTIFICATIONS; i++) {
+                assertEquals(String.valueOf(i), handled.get(i));
+            }
+        } finally {
+            release.countDown();
+            dispatcher.shutdown();
+        }
+    }
+
+    @Test
+    public void belowThresholdIsNotBacklogged() throws Exception {
+        final CountDownLatch done = new CountDownLatch(THRESHOLD);
+        StripedMediatorWatcher dispatcher = new StripedMediatorWatcher(new MediatorWatcher() {
+            @Override
+            public void change(String transactionId, String data) {
+                done.countDown();
+            }
+        }, 2, THRESHOLD);
+        try {
+            for (int i = 0; i < THRESHOLD; i++) {
+                dispatcher.change("tx-" + i, "commit");
+            }
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(0, dispatcher.getBackloggedCount());
+        } finally {
+            dispatcher.shutdown();
+        }
+    }
+}
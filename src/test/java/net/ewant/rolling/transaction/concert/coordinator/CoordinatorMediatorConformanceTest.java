@@ -0,0 +1,33 @@
+package net.ewant.rolling.transaction.concert.coordinator;
+
+import net.ewant.rolling.transaction.concert.MediatorConformanceKit;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+
+public class CoordinatorMediatorConformanceTest extends MediatorConformanceKit {
+
+    private static CoordinatorServer server;
+
+    private static File logFile;
+
+    @BeforeClass
+    public static void startServer() throws Exception {
+        logFile = File.createTempFile("rolling-tx-coordinator", ".log");
+        server = new CoordinatorServer(new InetSocketAddress("127.0.0.1", 0), logFile);
+        server.start();
+    }
+
+    @AfterClass
+    public static void stopServer() {
+        server.stop();
+        logFile.delete();
+    }
+
+    @Override
+    protected String mediatorUrl() {
+        return "rtx://127.0.0.1:" + server.getPort();
+    }
+}
@@ -0,0 +1,131 @@
+package net.ewant.rolling.transaction.concert.jdbc;
+
+import net.ewant.rolling.transaction.concert.MediatorWatcher;
+import net.ewant.rolling.transaction.concert.PayloadCodec;
+import net.ewant.rolling.transaction.concert.URL;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 基于嵌入式H2的端到端测试，直接检查表中的数据
+ */
+public class JdbcMediatorClientTest {
+
+    private static int databases;
+
+    private JdbcDataSource dataSource;
+
+    private final List<JdbcMediatorClient> clients = new ArrayList<>();
+
+    @Before
+    public void createDatabase() {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:rtx-jdbc-" + (databases++) + ";DB_CLOSE_DELAY=-1");
+    }
+
+    @After
+    public void closeClients() {
+        for (JdbcMediatorClient client : clients){
+            client.close();
+        }
+    }
+
+    private JdbcMediatorClient connect(String parameters) {
+        final DataSource ds = dataSource;
+        JdbcMediatorClient client = new JdbcMediatorClient(URL.valueOf("jdbc://mediator?initSchema=true&pollInterval=20" + parameters), new Supplier<DataSource>() {
+            @Override
+            public DataSource get() {
+                return ds;
+            }
+        });
+        clients.add(client);
+        return client;
+    }
+
+    private long count(String sql) throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery(sql)){
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    @Test
+    public void schemaInitIsIdempotent() throws Exception {
+        connect("").transactionExists("none");
+        connect("").transactionExists("none");
+
+        assertEquals(1, count("select count(*) from information_schema.indexes where index_name = 'IDX_RTX_EVENT_TIME'"));
+    }
+
+    @Test
+    public void transactionLifecycleIsStoredAndNotified() throws Exception {
+        JdbcMediatorClient initiator = connect("");
+        JdbcMediatorClient participant = connect("");
+        final CompletableFuture<String> decision = new CompletableFuture<>();
+        participant.addWatcher(new MediatorWatcher() {
+            @Override
+            public void change(String transactionId, String data) {
+                decision.complete(data);
+            }
+        });
+
+        initiator.startChain("tx-1", "g", "a", 0, "start");
+        participant.joinChainBatchAsync("tx-1", "g", "b", new int[]{1, 2}, new String[]{"j1", "j2"}).get(5, TimeUnit.SECONDS);
+        assertEquals(3, count("select count(*) from rtx_participant where tx_id = 'tx-1'"));
+        assertEquals(1, count("select count(*) from rtx_chain where tx_id = 'tx-1' and state = '" + PayloadCodec.STATE_PENDING_TEXT + "'"));
+
+        initiator.rollback("tx-1", "g", "a", "a:boom");
+        assertEquals("a:boom", decision.get(5, TimeUnit.SECONDS));
+        assertEquals(1, count("select count(*) from rtx_event where tx_id = 'tx-1'"));
+        assertEquals("a:boom", initiator.getResults("tx-1").getRollback());
+
+        initiator.clear("tx-1");
+        assertFalse(initiator.transactionExists("tx-1"));
+        assertEquals(0, count("select count(*) from rtx_participant where tx_id = 'tx-1'"));
+    }
+
+    @Test
+    public void writesAreBatched() throws Exception {
+        JdbcMediatorClient client = connect("&batch=50");
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        for (int i = 0; i < 200; i++){
+            writes.add(client.startChainAsync("tx-" + i, "g", "a", 0, "start"));
+            writes.add(client.joinChainAsync("tx-" + i, "g", "a", 1, "join"));
+        }
+        CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[writes.size()])).get(10, TimeUnit.SECONDS);
+
+        assertEquals(200, count("select count(*) from rtx_chain"));
+        assertEquals(400, count("select count(*) from rtx_participant"));
+    }
+
+    @Test
+    public void expiredEventsArePurged() throws Exception {
+        JdbcMediatorClient client = connect("&eventRetention=1");
+        client.startChain("tx-1", "g", "a", 0, "start");
+        client.commit("tx-1", "g", "a");
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (count("select count(*) from rtx_event") > 0 && System.currentTimeMillis() < deadline){
+            Thread.sleep(20);
+        }
+        assertEquals(0, count("select count(*) from rtx_event"));
+        assertTrue(client.transactionExists("tx-1"));
+    }
+}
@@ -0,0 +1,30 @@
+package net.ewant.rolling.transaction.concert.jdbc;
+
+import net.ewant.rolling.transaction.TransactionContext;
+import net.ewant.rolling.transaction.concert.MediatorConformanceKit;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+public class JdbcMediatorConformanceTest extends MediatorConformanceKit {
+
+    @BeforeClass
+    public static void registerDataSource() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:rtx-conformance;DB_CLOSE_DELAY=-1");
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        beanFactory.addBean("mediatorDataSource", dataSource);
+        TransactionContext.setBeanFactory(beanFactory);
+    }
+
+    @AfterClass
+    public static void unregisterDataSource() {
+        TransactionContext.setBeanFactory(null);
+    }
+
+    @Override
+    protected String mediatorUrl() {
+        return "jdbc://mediatorDataSource?initSchema=true&pollInterval=20";
+    }
+}
@@ -0,0 +1,11 @@
+package net.ewant.rolling.transaction.concert.memory;
+
+import net.ewant.rolling.transaction.concert.MediatorConformanceKit;
+
+public class InMemoryMediatorConformanceTest extends MediatorConformanceKit {
+
+    @Override
+    protected String mediatorUrl() {
+        return "mem://conformance";
+    }
+}
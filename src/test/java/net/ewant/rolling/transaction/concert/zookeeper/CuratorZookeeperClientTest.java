@@ -0,0 +1,144 @@
+package net.ewant.rolling.transaction.concert.zookeeper;
+
+import net.ewant.rolling.transaction.TransactionContext;
+import net.ewant.rolling.transaction.concert.URL;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryNTimes;
+import org.apache.curator.test.TestingServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 异步发起、加入以一个multi请求原子写入：失败时不留下部分节点，之后的加入不会因本地记录而跳过父节点
+ */
+public class CuratorZookeeperClientTest {
+
+    private static final String CHAIN = TransactionContext.TRANSACTION_CHAIN_ROOT + TransactionContext.NODE_SPLIT_CHAR;
+
+    private TestingServer server;
+
+    private CuratorFramework probe;
+
+    private CuratorZookeeperClient initiator;
+
+    private CuratorZookeeperClient participant;
+
+    @Before
+    public void start() throws Exception {
+        server = new TestingServer(true);
+        probe = CuratorFrameworkFactory.newClient(server.getConnectString(), new RetryNTimes(3, 100));
+        probe.start();
+        initiator = new CuratorZookeeperClient(URL.valueOf("zk://" + server.getConnectString()));
+        participant = new CuratorZookeeperClient(URL.valueOf("zk://" + server.getConnectString()));
+        initiator.init();
+        participant.init();
+        long deadline = System.currentTimeMillis() + 10000;
+        while (probe.checkExists().forPath(TransactionContext.TRANSACTION_CHAIN_ROOT) == null
+                || probe.checkExists().forPath(TransactionContext.TRANSACTION_STATE_ROOT) == null){
+            if(System.currentTimeMillis() > deadline){
+                fail("mediator root nodes not created");
+            }
+            Thread.sleep(20);
+        }
+    }
+
+    @After
+    public void stop() throws Exception {
+        initiator.close();
+        participant.close();
+        probe.close();
+        server.close();
+    }
+
+    @Test
+    public void asyncStartCreatesChainStateAndParticipant() throws Exception {
+        await(initiator.startChainAsync("tx-start", "order", "order-1", 0, "start"));
+
+        assertNotNull(probe.checkExists().forPath(CHAIN + "tx-start/order/order-1/0"));
+        assertNotNull(probe.checkExists().forPath(TransactionContext.TRANSACTION_STATE_ROOT + TransactionContext.NODE_SPLIT_CHAR + "tx-start"));
+        // 已记录本节点，再次加入只写index节点
+        await(initiator.joinChainAsync("tx-start", "order", "order-1", 2, "nested"));
+        assertNotNull(probe.checkExists().forPath(CHAIN + "tx-start/order/order-1/2"));
+    }
+
+    /**
+     * 重复的事务id整体失败，不会在已有事务链下写入参与节点
+     */
+    @Test
+    public void duplicateAsyncStartWritesNothing() throws Exception {
+        await(initiator.startChainAsync("tx-dup", "order", "order-1", 0, "start"));
+
+        assertFails(participant.startChainAsync("tx-dup", "stock", "stock-1", 0, "start"), "duplicate id");
+        assertNull(probe.checkExists().forPath(CHAIN + "tx-dup/stock"));
+    }
+
+    /**
+     * 事务链不存在时加入整体失败，不留下group、peer节点；事务创建后同一节点再次加入仍会创建父节点
+     */
+    @Test
+    public void failedAsyncJoinDoesNotSkipParentsLater() throws Exception {
+        assertFails(participant.joinChainAsync("tx-late", "stock", "stock-1", 1, "deduct"), "invalid id");
+        assertNull(probe.checkExists().forPath(CHAIN + "tx-late"));
+
+        await(initiator.startChainAsync("tx-late", "order", "order-1", 0, "start"));
+        await(participant.joinChainAsync("tx-late", "stock", "stock-1", 1, "deduct"));
+        assertNotNull(probe.checkExists().forPath(CHAIN + "tx-late/stock/stock-1/1"));
+    }
+
+    /**
+     * 同组的第二个节点加入时group已存在，去掉group重新提交；之后同组加入直接不带group提交
+     */
+    @Test
+    public void asyncJoinIntoExistingGroup() throws Exception {
+        CuratorZookeeperClient sibling = new CuratorZookeeperClient(URL.valueOf("zk://" + server.getConnectString()));
+        sibling.init();
+        try {
+            for (String id : new String[]{"tx-group-1", "tx-group-2"}){
+                await(initiator.startChainAsync(id, "order", "order-1", 0, "start"));
+                await(participant.joinChainAsync(id, "stock", "stock-1", 1, "deduct"));
+                await(sibling.joinChainAsync(id, "stock", "stock-2", 2, "deduct"));
+                assertNotNull(probe.checkExists().forPath(CHAIN + id + "/stock/stock-1/1"));
+                assertNotNull(probe.checkExists().forPath(CHAIN + id + "/stock/stock-2/2"));
+            }
+        } finally {
+            sibling.close();
+        }
+    }
+
+    /**
+     * 批量加入时部分index已注册，其余节点仍全部写入
+     */
+    @Test
+    public void asyncBatchJoinSkipsRegisteredIndexes() throws Exception {
+        await(initiator.startChainAsync("tx-batch", "order", "order-1", 0, "start"));
+        await(participant.joinChainAsync("tx-batch", "stock", "stock-1", 2, "deduct"));
+
+        await(participant.joinChainBatchAsync("tx-batch", "stock", "stock-1", new int[]{1, 2, 3}, new String[]{"a", "b", "c"}));
+        assertEquals(3, probe.getChildren().forPath(CHAIN + "tx-batch/stock/stock-1").size());
+    }
+
+    private static void await(CompletableFuture<Void> future) throws Exception {
+        future.get(10, TimeUnit.SECONDS);
+    }
+
+    private static void assertFails(CompletableFuture<Void> future, String reason) throws Exception {
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("expected failure: " + reason);
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().getMessage(), e.getCause().getMessage().contains(reason));
+        }
+    }
+}
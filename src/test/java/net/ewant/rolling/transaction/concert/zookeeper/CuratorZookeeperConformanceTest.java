@@ -0,0 +1,55 @@
+package net.ewant.rolling.transaction.concert.zookeeper;
+
+import net.ewant.rolling.transaction.TransactionContext;
+import net.ewant.rolling.transaction.concert.MediatorClient;
+import net.ewant.rolling.transaction.concert.MediatorConformanceKit;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryNTimes;
+import org.apache.curator.test.TestingServer;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.fail;
+
+public class CuratorZookeeperConformanceTest extends MediatorConformanceKit {
+
+    private static TestingServer server;
+
+    private static CuratorFramework probe;
+
+    @BeforeClass
+    public static void startServer() throws Exception {
+        server = new TestingServer(true);
+        probe = CuratorFrameworkFactory.newClient(server.getConnectString(), new RetryNTimes(3, 100));
+        probe.start();
+    }
+
+    @AfterClass
+    public static void stopServer() throws Exception {
+        probe.close();
+        server.close();
+    }
+
+    @Override
+    protected String mediatorUrl() {
+        return "zk://" + server.getConnectString();
+    }
+
+    /**
+     * 根节点在连接事件回调中异步创建，等待创建完成
+     */
+    @Override
+    protected void awaitReady(MediatorClient client) throws Exception {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(AWAIT_SECONDS);
+        while (probe.checkExists().forPath(TransactionContext.TRANSACTION_CHAIN_ROOT) == null
+                || probe.checkExists().forPath(TransactionContext.TRANSACTION_STATE_ROOT) == null){
+            if(System.currentTimeMillis() > deadline){
+                fail("mediator root nodes not created");
+            }
+            Thread.sleep(20);
+        }
+    }
+}
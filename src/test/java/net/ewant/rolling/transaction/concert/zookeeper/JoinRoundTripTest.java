@@ -0,0 +1,212 @@
+package net.ewant.rolling.transaction.concert.zookeeper;
+
+import net.ewant.rolling.transaction.TransactionContext;
+import net.ewant.rolling.transaction.concert.URL;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.api.CuratorWatcher;
+import org.apache.curator.retry.RetryNTimes;
+import org.apache.curator.test.TestingServer;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 每次加入事务链的同步往返次数与发往zookeeper的请求数，
+ * 与改为multi之前的加入流程（exists、逐个create、逐级检查父节点、getData监听）对比。
+ * 客户端经由固定单向延迟的代理连接，往返次数 = 耗时 / 往返延迟；请求数取服务端 srvr 统计
+ */
+public class JoinRoundTripTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(JoinRoundTripTest.class);
+
+    private static final int TRANSACTIONS = 20;
+
+    /**
+     * 代理的单向延迟（毫秒）
+     */
+    private static final long DELAY_MILLIS = 10;
+
+    private static final long ROUND_TRIP_MILLIS = DELAY_MILLIS * 2;
+
+    private TestingServer server;
+
+    private TcpProxy proxy;
+
+    private CuratorFramework curator;
+
+    private CuratorZookeeperClient initiator;
+
+    private CuratorZookeeperClient participant;
+
+    @Before
+    public void start() throws Exception {
+        server = new TestingServer(true);
+        proxy = new TcpProxy(server.getPort(), DELAY_MILLIS);
+        String connectString = "127.0.0.1:" + proxy.getPort();
+        curator = CuratorFrameworkFactory.newClient(connectString, new RetryNTimes(3, 100));
+        curator.start();
+        curator.blockUntilConnected();
+        initiator = new CuratorZookeeperClient(URL.valueOf("zk://" + connectString));
+        participant = new CuratorZookeeperClient(URL.valueOf("zk://" + connectString));
+        long deadline = System.currentTimeMillis() + 10000;
+        while (curator.checkExists().forPath(TransactionContext.TRANSACTION_STATE_ROOT) == null || !participant.isConnected()){
+            if(System.currentTimeMillis() > deadline){
+                fail("mediator root nodes not created");
+            }
+            Thread.sleep(20);
+        }
+    }
+
+    @After
+    public void stop() throws Exception {
+        initiator.close();
+        participant.close();
+        curator.close();
+        proxy.close();
+        server.close();
+    }
+
+    @Test
+    public void joinTakesOneRoundTrip() throws Exception {
+        Measure start = new Measure();
+        for (int i = 0; i < TRANSACTIONS; i++){
+            initiator.startChain("rt-" + i, "g", "a", 0, "start");
+        }
+        start.stop();
+        Measure join = new Measure();
+        for (int i = 0; i < TRANSACTIONS; i++){
+            participant.joinChain("rt-" + i, "g", "b", 1, "join");
+        }
+        join.stop();
+        Measure asyncJoin = new Measure();
+        for (int i = 0; i < TRANSACTIONS; i++){
+            participant.joinChainAsync("rt-" + i, "g", "c", 1, "join").get(10, TimeUnit.SECONDS);
+        }
+        asyncJoin.stop();
+
+        String legacyChain = TransactionContext.TRANSACTION_CHAIN_ROOT + "-legacy";
+        String legacyState = TransactionContext.TRANSACTION_STATE_ROOT + "-legacy";
+        curator.create().creatingParentsIfNeeded().forPath(legacyChain);
+        curator.create().creatingParentsIfNeeded().forPath(legacyState);
+        Measure legacyStart = new Measure();
+        for (int i = 0; i < TRANSACTIONS; i++){
+            legacyJoin(legacyChain, legacyState, "rt-" + i, "g", "a", 0, "start");
+        }
+        legacyStart.stop();
+        Measure legacyJoin = new Measure();
+        for (int i = 0; i < TRANSACTIONS; i++){
+            legacyJoin(legacyChain, legacyState, "rt-" + i, "g", "b", 1, "join");
+        }
+        legacyJoin.stop();
+
+        logger.info("per start: {}, per join: {}, per async join: {}; before multi, per start: {}, per join: {}", start, join, asyncJoin, legacyStart, legacyJoin);
+        // 首次加入某应用组时可能多一次往返（group节点已由同组其他节点创建），其后均为一次
+        assertTrue("start: " + start, start.roundTrips < 2);
+        assertTrue("join: " + join, join.roundTrips < 2);
+        assertTrue("async join: " + asyncJoin, asyncJoin.roundTrips < 2);
+        assertTrue("legacy join: " + legacyJoin, legacyJoin.roundTrips >= 5);
+    }
+
+    /**
+     * 一组操作的平均同步往返次数与服务端请求数
+     */
+    private class Measure {
+
+        private final long requestsBefore;
+
+        private final long startNanos;
+
+        double roundTrips;
+
+        double requests;
+
+        Measure() throws Exception {
+            requestsBefore = receivedRequests();
+            startNanos = System.nanoTime();
+        }
+
+        void stop() throws Exception {
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            roundTrips = elapsed / (double) (ROUND_TRIP_MILLIS * TRANSACTIONS);
+            requests = (receivedRequests() - requestsBefore) / (double) TRANSACTIONS;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.1f round trips / %.1f requests", roundTrips, requests);
+        }
+    }
+
+    /**
+     * 改为multi之前的加入流程，每一步都是一次同步往返
+     */
+    private void legacyJoin(String chainRoot, String stateRoot, String transactionId, String group, String peer, int index, String data) throws Exception {
+        String txChain = chainRoot + "/" + transactionId;
+        String txState = stateRoot + "/" + transactionId;
+        boolean exists = curator.checkExists().forPath(txChain) != null;
+        if(index > 0 && !exists){
+            throw new IllegalStateException("invalid id " + transactionId);
+        }
+        if(index == 0){
+            createPersistent(txChain, group + ":" + peer + ":" + System.currentTimeMillis());
+            createPersistent(txState, "0");
+        }
+        createRecursive(txChain + "/" + group + "/" + peer + "/" + index, data);
+        curator.getData().usingWatcher(new CuratorWatcher() {
+            @Override
+            public void process(WatchedEvent event) {
+            }
+        }).forPath(txState);
+    }
+
+    private void createRecursive(String path, String data) throws Exception {
+        String parent = path.substring(0, path.lastIndexOf('/'));
+        if(curator.checkExists().forPath(parent) == null){
+            createRecursive(parent, "");
+        }
+        createPersistent(path, data);
+    }
+
+    private void createPersistent(String path, String data) throws Exception {
+        try {
+            curator.create().forPath(path, data.getBytes(StandardCharsets.UTF_8));
+        } catch (KeeperException.NodeExistsException e) {
+            // 与原流程一致，忽略已存在
+        }
+    }
+
+    /**
+     * 服务端累计收到的请求数（srvr 四字命令的 Received，直连服务端不经代理），等待后台请求完成后读取
+     */
+    private long receivedRequests() throws Exception {
+        Thread.sleep(200);
+        try (Socket socket = new Socket("127.0.0.1", server.getPort())){
+            OutputStream out = socket.getOutputStream();
+            out.write("srvr".getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            String line;
+            while ((line = reader.readLine()) != null){
+                if(line.startsWith("Received:")){
+                    return Long.parseLong(line.substring("Received:".length()).trim());
+                }
+            }
+        }
+        throw new IllegalStateException("srvr output has no Received line");
+    }
+}
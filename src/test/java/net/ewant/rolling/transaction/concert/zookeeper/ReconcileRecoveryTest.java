@@ -0,0 +1,163 @@
+package net.ewant.rolling.transaction.concert.zookeeper;
+
+import net.ewant.rolling.transaction.concert.MediatorWatcher;
+import net.ewant.rolling.transaction.concert.PayloadCodec;
+import net.ewant.rolling.transaction.concert.URL;
+import org.apache.curator.test.TestingServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 断线期间部分在途事务被决议或清理，重连后恢复全部在途事务监听的耗时。
+ * 参与方经由代理连接，断开代理模拟网络分区，发起方直连服务端继续决议
+ */
+public class ReconcileRecoveryTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReconcileRecoveryTest.class);
+
+    /**
+     * 在途事务数，可通过 -Drolling-tx.reconcile.transactions 调整
+     */
+    private static final int TRANSACTIONS = Integer.getInteger("rolling-tx.reconcile.transactions", 900);
+
+    private static final String LOST = "<lost>";
+
+    private TestingServer server;
+
+    private TcpProxy proxy;
+
+    private CuratorZookeeperClient initiator;
+
+    private CuratorZookeeperClient participant;
+
+    private final ConcurrentMap<String, String> notified = new ConcurrentHashMap<>();
+
+    @Before
+    public void start() throws Exception {
+        server = new TestingServer(true);
+        proxy = new TcpProxy(server.getPort(), 0);
+        initiator = new CuratorZookeeperClient(URL.valueOf("zk://" + server.getConnectString()));
+        participant = new CuratorZookeeperClient(URL.valueOf("zk://127.0.0.1:" + proxy.getPort()));
+        participant.addWatcher(new MediatorWatcher() {
+            @Override
+            public void change(String transactionId, String data) {
+                notified.put(transactionId, data == null ? LOST : data);
+            }
+        });
+        awaitCondition("mediator connected", new Condition() {
+            @Override
+            public boolean met() {
+                return initiator.isConnected() && participant.isConnected();
+            }
+        }, 10000);
+        // 根节点在连接事件回调中异步创建
+        Thread.sleep(300);
+    }
+
+    @After
+    public void stop() throws Exception {
+        initiator.close();
+        participant.close();
+        proxy.close();
+        server.close();
+    }
+
+    @Test
+    public void pendingTransactionsRecoverAfterReconnect() throws Exception {
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        for (int i = 0; i < TRANSACTIONS; i++){
+            writes.add(initiator.startChainAsync(id(i), "g", "a", 0, "start"));
+        }
+        await(writes);
+        for (int i = 0; i < TRANSACTIONS; i++){
+            writes.add(participant.joinChainAsync(id(i), "g", "b", 1, "join"));
+        }
+        await(writes);
+
+        proxy.block();
+        awaitCondition("participant disconnected", new Condition() {
+            @Override
+            public boolean met() {
+                return !participant.isConnected();
+            }
+        }, 10000);
+        // 断线期间：前1/3提交，中间1/3结束并清理，其余仍在途
+        final int third = TRANSACTIONS / 3;
+        for (int i = 0; i < third; i++){
+            writes.add(initiator.commitAsync(id(i), "g", "a"));
+        }
+        await(writes);
+        for (int i = third; i < third * 2; i++){
+            initiator.clear(id(i));
+        }
+
+        long reconnectStart = System.nanoTime();
+        proxy.unblock();
+        awaitCondition("decisions made while disconnected delivered", new Condition() {
+            @Override
+            public boolean met() {
+                return notified.size() >= third * 2 && participant.getLastReconcileMillis() > 0;
+            }
+        }, 30000);
+        long recovered = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - reconnectStart);
+        logger.info("{} pending transactions reconciled in {} ms, all decisions delivered {} ms after the partition healed",
+                TRANSACTIONS, participant.getLastReconcileMillis(), recovered);
+        for (int i = 0; i < third; i++){
+            assertEquals(PayloadCodec.STATE_COMMIT_TEXT, notified.get(id(i)));
+        }
+        for (int i = third; i < third * 2; i++){
+            assertEquals(LOST, notified.get(id(i)));
+        }
+
+        // 仍在途的事务重连后监听有效
+        for (int i = third * 2; i < TRANSACTIONS; i++){
+            assertTrue(notified.get(id(i)) == null);
+            writes.add(initiator.rollbackAsync(id(i), "g", "a", "a:late"));
+        }
+        await(writes);
+        awaitCondition("decisions made after reconnect delivered", new Condition() {
+            @Override
+            public boolean met() {
+                return notified.size() == TRANSACTIONS;
+            }
+        }, 30000);
+        assertEquals("a:late", notified.get(id(TRANSACTIONS - 1)));
+    }
+
+    private static String id(int i) {
+        return "rc-" + i;
+    }
+
+    private static void await(List<CompletableFuture<Void>> futures) throws Exception {
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).get(30, TimeUnit.SECONDS);
+        futures.clear();
+    }
+
+    interface Condition {
+        boolean met() throws Exception;
+    }
+
+    private static void awaitCondition(String description, Condition condition, long timeoutMillis) throws Exception {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!condition.met()){
+            if(System.currentTimeMillis() > deadline){
+                fail("timed out waiting for: " + description);
+            }
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package net.ewant.rolling.transaction.concert.zookeeper;
+
+import net.ewant.rolling.transaction.concert.MediatorWatcher;
+import net.ewant.rolling.transaction.concert.URL;
+import org.apache.curator.test.TestingServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 共享状态监听模式下，只分发监听方声明持有的事务，过滤条件由监听方提供
+ */
+public class StateCacheWatchTest {
+
+    private TestingServer server;
+
+    private CuratorZookeeperClient initiator;
+
+    private CuratorZookeeperClient participant;
+
+    private final ConcurrentMap<String, String> notified = new ConcurrentHashMap<>();
+
+    private final CountDownLatch delivered = new CountDownLatch(1);
+
+    @Before
+    public void start() throws Exception {
+        server = new TestingServer(true);
+        initiator = new CuratorZookeeperClient(URL.valueOf("zk://" + server.getConnectString()));
+        participant = new CuratorZookeeperClient(URL.valueOf("zk://" + server.getConnectString() + "?" + CuratorZookeeperClient.WATCH_MODE_KEY + "=" + CuratorZookeeperClient.WATCH_MODE_CACHE));
+        participant.addWatcher(new MediatorWatcher() {
+            @Override
+            public boolean isWatching(String transactionId) {
+                return "tx-mine".equals(transactionId);
+            }
+
+            @Override
+            public void change(String transactionId, String data) {
+                notified.put(transactionId, data);
+                delivered.countDown();
+            }
+        });
+        initiator.init();
+        participant.init();
+    }
+
+    @After
+    public void stop() throws Exception {
+        initiator.close();
+        participant.close();
+        server.close();
+    }
+
+    @Test
+    public void onlyWatchedTransactionsAreDelivered() throws Exception {
+        await(initiator.startChainAsync("tx-other", "order", "order-1", 0, "start"));
+        await(initiator.startChainAsync("tx-mine", "order", "order-1", 0, "start"));
+        // 先决议未持有的事务，持有的事务送达时前者的事件已处理完
+        await(initiator.commitAsync("tx-other", "order", "order-1"));
+        await(initiator.commitAsync("tx-mine", "order", "order-1"));
+
+        assertTrue(delivered.await(10, TimeUnit.SECONDS));
+        assertEquals("1", notified.get("tx-mine"));
+        assertFalse(notified.containsKey("tx-other"));
+    }
+
+    private static void await(CompletableFuture<Void> future) throws Exception {
+        future.get(10, TimeUnit.SECONDS);
+    }
+}
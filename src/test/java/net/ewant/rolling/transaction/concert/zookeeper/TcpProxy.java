@@ -0,0 +1,144 @@
+package net.ewant.rolling.transaction.concert.zookeeper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 测试用TCP代理：双向按固定延迟转发（保持各方向上的字节顺序），可断开所有连接并拒绝新连接以模拟网络分区
+ */
+class TcpProxy implements Closeable {
+
+    private final ServerSocket serverSocket;
+
+    private final int targetPort;
+
+    private final long delayMillis;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private final List<Socket> sockets = new ArrayList<>();
+
+    private volatile boolean blocked;
+
+    private volatile boolean closed;
+
+    TcpProxy(int targetPort, long delayMillis) throws IOException {
+        this.targetPort = targetPort;
+        this.delayMillis = delayMillis;
+        serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress("127.0.0.1", 0));
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        }, "tcp-proxy");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    private void accept() {
+        while (!closed){
+            try {
+                Socket downstream = serverSocket.accept();
+                if(blocked){
+                    closeQuietly(downstream);
+                    continue;
+                }
+                Socket upstream = new Socket("127.0.0.1", targetPort);
+                downstream.setTcpNoDelay(true);
+                upstream.setTcpNoDelay(true);
+                synchronized (sockets){
+                    sockets.add(downstream);
+                    sockets.add(upstream);
+                }
+                pump(downstream, upstream);
+                pump(upstream, downstream);
+            } catch (IOException e) {
+                // 代理已关闭或目标不可达
+            }
+        }
+    }
+
+    private void pump(final Socket from, final Socket to) {
+        Thread pump = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                byte[] buffer = new byte[8192];
+                try {
+                    InputStream in = from.getInputStream();
+                    final OutputStream out = to.getOutputStream();
+                    int read;
+                    while ((read = in.read(buffer)) >= 0){
+                        final byte[] chunk = Arrays.copyOf(buffer, read);
+                        scheduler.schedule(new Runnable() {
+                            @Override
+                            public void run() {
+                                try {
+                                    out.write(chunk);
+                                    out.flush();
+                                } catch (IOException e) {
+                                    closeQuietly(to);
+                                }
+                            }
+                        }, delayMillis, TimeUnit.MILLISECONDS);
+                    }
+                } catch (IOException e) {
+                    // 连接已断开
+                }
+                closeQuietly(from);
+                closeQuietly(to);
+            }
+        }, "tcp-proxy-pump");
+        pump.setDaemon(true);
+        pump.start();
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * 断开所有连接，并拒绝新连接直到 {@link #unblock()}
+     */
+    void block() {
+        blocked = true;
+        synchronized (sockets){
+            for (Socket socket : sockets){
+                closeQuietly(socket);
+            }
+            sockets.clear();
+        }
+    }
+
+    void unblock() {
+        blocked = false;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        closeQuietly(serverSocket);
+        block();
+        scheduler.shutdownNow();
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+}
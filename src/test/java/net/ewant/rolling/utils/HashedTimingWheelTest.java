@@ -0,0 +1,169 @@
+package net.ewant.rolling.utils;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HashedTimingWheelTest {
+
+    private static final long TICK_MILLIS = 10;
+
+    private HashedTimingWheel wheel;
+
+    @After
+    public void stop() {
+        if(wheel != null){
+            wheel.stop();
+        }
+    }
+
+    /**
+     * 到期时间点记录
+     */
+    static class Recorder implements Runnable {
+
+        final long start = System.nanoTime();
+
+        final CountDownLatch fired = new CountDownLatch(1);
+
+        volatile long elapsedMillis = -1;
+
+        @Override
+        public void run() {
+            elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            fired.countDown();
+        }
+    }
+
+    @Test
+    public void firesOnTick() throws Exception {
+        wheel = new HashedTimingWheel("wheel-test-tick", TICK_MILLIS, 8);
+        Recorder recorder = new Recorder();
+        HashedTimingWheel.Timeout timeout = wheel.newTimeout(recorder, 50);
+        assertEquals(1, wheel.getPendingCount());
+
+        assertTrue(recorder.fired.await(5, TimeUnit.SECONDS));
+        assertTrue("fired early after " + recorder.elapsedMillis + "ms", recorder.elapsedMillis >= 50);
+        assertTrue(timeout.isExpired());
+        assertFalse(timeout.cancel());
+        assertEquals(0, wheel.getPendingCount());
+    }
+
+    /**
+     * 超时超过一圈（槽数 * tick）的任务按剩余圈数等待，不在同一槽的前几圈提前执行
+     */
+    @Test
+    public void waitsRemainingRounds() throws Exception {
+        // 一圈 40ms
+        wheel = new HashedTimingWheel("wheel-test-rounds", TICK_MILLIS, 4);
+        Recorder firstRound = new Recorder();
+        Recorder thirdRound = new Recorder();
+        Recorder fifthRound = new Recorder();
+        // 同一个槽，分别在第1、3、5圈到期
+        wheel.newTimeout(firstRound, 30);
+        wheel.newTimeout(thirdRound, 110);
+        wheel.newTimeout(fifthRound, 190);
+
+        assertTrue(fifthRound.fired.await(5, TimeUnit.SECONDS));
+        assertTrue(firstRound.fired.await(0, TimeUnit.SECONDS));
+        assertTrue(thirdRound.fired.await(0, TimeUnit.SECONDS));
+        assertTrue("fired early after " + firstRound.elapsedMillis + "ms", firstRound.elapsedMillis >= 30);
+        assertTrue("fired early after " + thirdRound.elapsedMillis + "ms", thirdRound.elapsedMillis >= 110);
+        assertTrue("fired early after " + fifthRound.elapsedMillis + "ms", fifthRound.elapsedMillis >= 190);
+        assertTrue(firstRound.elapsedMillis < thirdRound.elapsedMillis && thirdRound.elapsedMillis < fifthRound.elapsedMillis);
+    }
+
+    @Test
+    public void firesInDeadlineOrder() throws Exception {
+        wheel = new HashedTimingWheel("wheel-test-order", TICK_MILLIS, 8);
+        final List<Integer> order = new CopyOnWriteArrayList<>();
+        final CountDownLatch fired = new CountDownLatch(3);
+        int[] delays = {120, 20, 60};
+        for (final int delay : delays){
+            wheel.newTimeout(new Runnable() {
+                @Override
+                public void run() {
+                    order.add(delay);
+                    fired.countDown();
+                }
+            }, delay);
+        }
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+        assertEquals(20, (int) order.get(0));
+        assertEquals(60, (int) order.get(1));
+        assertEquals(120, (int) order.get(2));
+    }
+
+    @Test
+    public void cancelledBeforeExpiryNeverFires() throws Exception {
+        wheel = new HashedTimingWheel("wheel-test-cancel", TICK_MILLIS, 8);
+        final AtomicInteger runs = new AtomicInteger();
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+            }
+        };
+        HashedTimingWheel.Timeout cancelled = wheel.newTimeout(task, 50);
+        // 已转入时间轮槽中的任务同样可取消
+        HashedTimingWheel.Timeout later = wheel.newTimeout(task, 100);
+        Recorder after = new Recorder();
+        wheel.newTimeout(after, 150);
+        assertTrue(cancelled.cancel());
+        assertFalse(cancelled.cancel());
+        Thread.sleep(30);
+        assertTrue(later.cancel());
+        assertEquals(1, wheel.getPendingCount());
+
+        assertTrue(after.fired.await(5, TimeUnit.SECONDS));
+        assertEquals(0, runs.get());
+        assertTrue(cancelled.isCancelled());
+        assertFalse(cancelled.isExpired());
+        assertEquals(0, wheel.getPendingCount());
+    }
+
+    @Test
+    public void stopDiscardsPendingAndRejectsNewTimeouts() throws Exception {
+        final String name = "wheel-test-stop";
+        wheel = new HashedTimingWheel(name, TICK_MILLIS, 8);
+        Recorder recorder = new Recorder();
+        HashedTimingWheel.Timeout timeout = wheel.newTimeout(recorder, 100);
+        assertTrue(workerAlive(name));
+
+        wheel.stop();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (workerAlive(name)){
+            if(System.currentTimeMillis() > deadline){
+                fail("worker thread still running after stop");
+            }
+            Thread.sleep(10);
+        }
+        assertFalse(recorder.fired.await(200, TimeUnit.MILLISECONDS));
+        assertFalse(timeout.isExpired());
+        try {
+            wheel.newTimeout(recorder, 10);
+            fail("timeout accepted after stop");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    private static boolean workerAlive(String name) {
+        for (Thread thread : Thread.getAllStackTraces().keySet()){
+            if(name.equals(thread.getName()) && thread.isAlive()){
+                return true;
+            }
+        }
+        return false;
+    }
+}